@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.network.RetryAfterInterceptor;
+import com.pay360.sdk.library.payment.DecorrelatedJitterBackoff;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BackoffTest extends TestCase {
+
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    public void testJitterWithinBounds() {
+        DecorrelatedJitterBackoff backoff = new DecorrelatedJitterBackoff(1000, 5000);
+
+        long previous = 0;
+
+        for (int retry = 0; retry < ITERATIONS; retry++) {
+            long delay = backoff.getDelayMillis(retry, previous);
+
+            Assert.assertTrue(delay >= 1000);
+            Assert.assertTrue(delay <= 5000);
+            Assert.assertTrue(delay <= Math.max(1000, previous) * 3);
+
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void testJitterSpreadsDelays() {
+        DecorrelatedJitterBackoff backoff = new DecorrelatedJitterBackoff(1000, 5000);
+
+        long first = backoff.getDelayMillis(0, 0);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (backoff.getDelayMillis(0, 0) != first) {
+                return;
+            }
+        }
+
+        Assert.fail("Delays are not jittered");
+    }
+
+    @Test
+    public void testInvalidDelays() {
+        try {
+            new DecorrelatedJitterBackoff(5000, 1000);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRetryAfterSeconds() {
+        Assert.assertEquals(2000, RetryAfterInterceptor.parseRetryAfter("2", 0));
+        Assert.assertEquals(0, RetryAfterInterceptor.parseRetryAfter(" 0 ", 0));
+    }
+
+    @Test
+    public void testRetryAfterCapped() {
+        Assert.assertEquals(30000, RetryAfterInterceptor.parseRetryAfter("3600", 0));
+    }
+
+    @Test
+    public void testRetryAfterDate() {
+        // Sun, 06 Nov 1994 08:49:37 GMT
+        long now = 784111777000L - 3000;
+
+        Assert.assertEquals(3000, RetryAfterInterceptor.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", now));
+        Assert.assertEquals(0, RetryAfterInterceptor.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", now + 10000));
+    }
+
+    @Test
+    public void testRetryAfterInvalid() {
+        Assert.assertEquals(-1, RetryAfterInterceptor.parseRetryAfter("-1", 0));
+        Assert.assertEquals(-1, RetryAfterInterceptor.parseRetryAfter("soon", 0));
+    }
+
+    @Test
+    public void testRetryAfterHintsBounded() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+
+        try {
+            RetryAfterInterceptor interceptor = new RetryAfterInterceptor();
+
+            OkHttpClient client = new OkHttpClient();
+            client.interceptors().add(interceptor);
+
+            // hints nobody takes e.g. for operations whose session has ended
+            for (int i = 0; i < 40; i++) {
+                server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+
+                client.newCall(new Request.Builder()
+                        .url(server.getUrl("/"))
+                        .header("AP-Operation-ID", "operation-" + i)
+                        .build())
+                        .execute().body().close();
+            }
+
+            // the oldest are evicted
+            Assert.assertEquals(-1, interceptor.takeDelayMillis("operation-0"));
+            Assert.assertEquals(-1, interceptor.takeDelayMillis("operation-7"));
+            Assert.assertEquals(1000, interceptor.takeDelayMillis("operation-8"));
+            Assert.assertEquals(1000, interceptor.takeDelayMillis("operation-39"));
+
+            // taken once
+            Assert.assertEquals(-1, interceptor.takeDelayMillis("operation-39"));
+        } finally {
+            server.shutdown();
+        }
+    }
+}
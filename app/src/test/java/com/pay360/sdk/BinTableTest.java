@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.utils.BinTable;
+import com.pay360.sdk.library.utils.CardInputValidator;
+import com.pay360.sdk.library.utils.CardScheme;
+import com.pay360.sdk.library.utils.Cv2Utils;
+import com.pay360.sdk.library.utils.PanUtils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class BinTableTest {
+
+    @Test
+    public void testLookup() {
+        BinTable table = BinTable.getDefault();
+
+        Assert.assertEquals(CardScheme.VISA, table.lookup("4").getScheme());
+        Assert.assertEquals(CardScheme.VISA, table.lookup("4111 1111 1111 1111").getScheme());
+        Assert.assertEquals(CardScheme.MASTERCARD, table.lookup("5555555555554444").getScheme());
+        Assert.assertEquals(CardScheme.MASTERCARD, table.lookup("2221000000000009").getScheme());
+        Assert.assertEquals(CardScheme.MASTERCARD, table.lookup("2720").getScheme());
+        Assert.assertEquals(CardScheme.AMEX, table.lookup("37").getScheme());
+        Assert.assertEquals(CardScheme.JCB, table.lookup("3530111333300000").getScheme());
+        Assert.assertEquals(CardScheme.MAESTRO, table.lookup("6759").getScheme());
+    }
+
+    @Test
+    public void testLookupUnknownOrAmbiguous() {
+        BinTable table = BinTable.getDefault();
+
+        Assert.assertNull(table.lookup("9900000000005159"));
+        Assert.assertNull(table.lookup("2721 00"));
+        Assert.assertNull(table.lookup(""));
+        Assert.assertNull(table.lookup((CharSequence) null));
+
+        // AMEX, DINERS or JCB
+        Assert.assertNull(table.lookup("3"));
+        Assert.assertEquals(CardScheme.DINERS, table.lookup("30").getScheme());
+    }
+
+    @Test
+    public void testRules() {
+        BinTable.Range amex = BinTable.getDefault().lookup("34");
+
+        Assert.assertTrue(amex.isValidPanLength(15));
+        Assert.assertFalse(amex.isValidPanLength(16));
+        Assert.assertEquals(15, amex.getPanLengthMax());
+        Assert.assertEquals(4, amex.getCv2Length());
+
+        BinTable.Range visa = BinTable.getDefault().lookup("4");
+
+        Assert.assertTrue(visa.isValidPanLength(13));
+        Assert.assertFalse(visa.isValidPanLength(15));
+        Assert.assertTrue(visa.isValidPanLength(19));
+    }
+
+    @Test
+    public void testSchemeAwareValidation() {
+        // valid Luhn but 15 digits is not a Visa length
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("411111111111116"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("378282246310005"));
+
+        // unknown scheme uses the generic 13-19 digit rule
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("990000000005159"));
+
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("1234", BinTable.getDefault().lookup("37")));
+        Assert.assertFalse(Cv2Utils.isValidCv2Number("123", BinTable.getDefault().lookup("37")));
+        Assert.assertFalse(Cv2Utils.isValidCv2Number("1234", BinTable.getDefault().lookup("4")));
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("1234", null));
+    }
+
+    @Test
+    public void testInputValidatorScheme() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertNull(validator.getScheme());
+        validator.insertPan(0, '3');
+        Assert.assertNull(validator.getScheme());
+        validator.insertPan(1, '7');
+        Assert.assertEquals(CardScheme.AMEX, validator.getScheme());
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setPan("3782 822463 10005"));
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.insertPan(17, '0'));
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.setCv2("123"));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertCv2(3, '4'));
+
+        validator.deletePan(0);
+        Assert.assertNull(validator.getScheme());
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        BinTable table = BinTable.load(new StringReader(
+                "# test\n" +
+                "\n" +
+                "654321 JCB 16 3\n" +
+                "1-2 VISA 13-16,19 3\n"));
+
+        Assert.assertEquals(CardScheme.JCB, table.lookup("6543").getScheme());
+        Assert.assertNull(table.lookup("65433"));
+        Assert.assertEquals(CardScheme.VISA, table.lookup("2999").getScheme());
+        Assert.assertTrue(table.lookup("1").isValidPanLength(14));
+        Assert.assertFalse(table.lookup("1").isValidPanLength(17));
+    }
+
+    @Test
+    public void testLoadInvalid() throws IOException {
+        try {
+            BinTable.load(new StringReader("4 VISA 16 3\n41 VISA 16 3\n"));
+            Assert.fail("Overlapping ranges loaded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            BinTable.load(new StringReader("4 NOT_A_SCHEME 16 3\n"));
+            Assert.fail("Unknown scheme loaded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            BinTable.load(new StringReader("41-5 VISA 16 3\n"));
+            Assert.fail("Invalid range loaded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
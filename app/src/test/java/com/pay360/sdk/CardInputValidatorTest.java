@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.utils.CardInputValidator;
+import com.pay360.sdk.library.utils.PanUtils;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+public class CardInputValidatorTest extends TestCase {
+
+    @Test
+    public void testPanTyped() {
+        CardInputValidator validator = new CardInputValidator();
+        String pan = "4444 3333 2222 1111";
+
+        for (int i = 0; i < pan.length() - 1; i++) {
+            Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertPan(i, pan.charAt(i)));
+        }
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID,
+                validator.insertPan(pan.length() - 1, pan.charAt(pan.length() - 1)));
+        Assert.assertNull(validator.getPanError());
+
+        // delete the check digit and type a wrong one
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.deletePan(pan.length() - 1));
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertPan(pan.length() - 1, '2'));
+        Assert.assertEquals(PaymentValidationException.ErrorCode.CARD_PAN_INVALID_LUHN, validator.getPanError());
+    }
+
+    @Test
+    public void testPanEditedInMiddle() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.setPan("444433332221111"));
+
+        // insert the missing digit so every digit after it changes parity
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertPan(8, '2'));
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.deletePan(0));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertPan(0, '4'));
+    }
+
+    @Test
+    public void testPanTextChanged() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE,
+                validator.onPanTextChanged("4111", 0, 0, 4));
+
+        // paste replacing the whole field
+        Assert.assertEquals(CardInputValidator.STATE_VALID,
+                validator.onPanTextChanged("4111-1111-1111-1111", 0, 4, 19));
+    }
+
+    @Test
+    public void testPanOverflowThenDeleted() {
+        CardInputValidator validator = new CardInputValidator();
+        String pan = "4111 1111 1111 1111";
+        StringBuilder text = new StringBuilder(pan);
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setPan(text));
+
+        // keep typing spaces past the 40 characters the validator holds
+        while (text.length() <= 40) {
+            text.append(' ');
+            validator.onPanTextChanged(text, text.length() - 1, 0, 1);
+        }
+
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.getPanState());
+
+        // delete back down to the card number
+        while (text.length() > pan.length()) {
+            text.deleteCharAt(text.length() - 1);
+            validator.onPanTextChanged(text, text.length(), 1, 0);
+        }
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.getPanState());
+
+        // single character edits are tracked again
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.deletePan(pan.length() - 1));
+    }
+
+    @Test
+    public void testCv2OverflowThenDeleted() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INVALID,
+                validator.onCv2TextChanged("123456789", 0, 0, 9));
+
+        // paste replaced by the CV2 alone
+        Assert.assertEquals(CardInputValidator.STATE_VALID,
+                validator.onCv2TextChanged("123", 0, 9, 3));
+    }
+
+    @Test
+    public void testSeparatorsAsFinalValidation() {
+        CardInputValidator validator = new CardInputValidator();
+
+        // whatever the final validation skips e.g. pasted with tabs or no-break spaces
+        String[] pans = {"4111\t1111\t1111\t1111", "4111\u00a01111\u00a01111\u00a01111",
+                "4111\u20031111\n1111-1111", "4111/1111/1111/1111", "4111_1111_1111_1111"};
+
+        for (String pan : pans) {
+            boolean valid = PanUtils.validate(pan) == PanUtils.PAN_VALID;
+
+            Assert.assertEquals(pan, valid, validator.setPan(pan) == CardInputValidator.STATE_VALID);
+            Assert.assertEquals(pan, valid, validator.getPanError() == null);
+        }
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setCv2("12\t3"));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setCv2("\u00a0123"));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setExpiry("12\t99"));
+    }
+
+    @Test
+    public void testPanInvalid() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.setPan("4111A"));
+        Assert.assertEquals(PaymentValidationException.ErrorCode.CARD_PAN_INVALID, validator.getPanError());
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.deletePan(4));
+
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.setPan("41111111111111111112"));
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.setPan("4111111111111111112"));
+    }
+
+    @Test
+    public void testExpiry() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertExpiry(0, '1'));
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.insertExpiry(1, '3'));
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.deleteExpiry(1));
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertExpiry(1, '2'));
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertExpiry(2, '/'));
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.insertExpiry(3, '9'));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertExpiry(4, '9'));
+
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.setExpiry("2"));
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.setExpiry("0115"));
+        Assert.assertEquals(PaymentValidationException.ErrorCode.CARD_EXPIRED, validator.getExpiryError());
+    }
+
+    @Test
+    public void testExpiryCurrentMonth() {
+        Calendar calendar = Calendar.getInstance();
+        String expiry = String.format("%02d%02d", calendar.get(Calendar.MONTH) + 1,
+                calendar.get(Calendar.YEAR) % 100);
+
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.setExpiry(expiry));
+    }
+
+    @Test
+    public void testCv2() {
+        CardInputValidator validator = new CardInputValidator();
+
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.setCv2("12"));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertCv2(2, '3'));
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.insertCv2(3, '4'));
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.insertCv2(4, '5'));
+        Assert.assertEquals(PaymentValidationException.ErrorCode.CARD_CV2_INVALID, validator.getCv2Error());
+    }
+
+    @Test
+    public void testState() {
+        CardInputValidator validator = new CardInputValidator();
+
+        validator.setPan("9900000000005159");
+        validator.setExpiry("1299");
+        Assert.assertEquals(CardInputValidator.STATE_INCOMPLETE, validator.getState());
+        Assert.assertEquals(PaymentValidationException.ErrorCode.CARD_CV2_INVALID, validator.getError());
+
+        validator.setCv2("123");
+        Assert.assertEquals(CardInputValidator.STATE_VALID, validator.getState());
+        Assert.assertNull(validator.getError());
+
+        validator.setExpiry("1399");
+        Assert.assertEquals(CardInputValidator.STATE_INVALID, validator.getState());
+    }
+}
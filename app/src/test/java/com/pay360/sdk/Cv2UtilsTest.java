@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.utils.BinTable;
+import com.pay360.sdk.library.utils.Cv2Utils;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class Cv2UtilsTest extends TestCase {
+
+    @Test
+    public void testWhitespaceIgnored() {
+        BinTable.Range amex = BinTable.getDefault().lookup("37");
+
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("123 ", null));
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("12\t34", amex));
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("\u00a0123\u00a0", null));
+        Assert.assertTrue(Cv2Utils.isValidCv2Number("123\r\n", null));
+
+        // only the digits count towards the length
+        Assert.assertFalse(Cv2Utils.isValidCv2Number("12\t3", amex));
+        Assert.assertFalse(Cv2Utils.isValidCv2Number(" \t ", null));
+        Assert.assertFalse(Cv2Utils.isValidCv2Number("12-3", null));
+    }
+}
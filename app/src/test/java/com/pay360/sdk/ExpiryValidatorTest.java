@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.utils.ExpiryValidator;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+public class ExpiryValidatorTest extends TestCase {
+
+    private static class TestClock implements ExpiryValidator.Clock {
+
+        private long now;
+
+        private void set(int year, int month, int day, int hour, int minute, int second, int millis) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(year, month, day, hour, minute, second);
+            calendar.set(Calendar.MILLISECOND, millis);
+            now = calendar.getTimeInMillis();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        ExpiryValidator validator = new ExpiryValidator(ExpiryValidator.Clock.SYSTEM);
+
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("1299"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("12 99"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("12\t99"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("12\u00a099"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate(" 1299\n"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("12/99"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("1399"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("0099"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("129"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("12999"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate("A299"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate(""));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate(null));
+    }
+
+    @Test
+    public void testMonthBoundary() {
+        TestClock clock = new TestClock();
+        ExpiryValidator validator = new ExpiryValidator(clock);
+
+        // last millisecond of June 2016
+        clock.set(2016, Calendar.JUNE, 30, 23, 59, 59, 999);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("0616"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate("0516"));
+
+        // first millisecond of July - cached month must roll over
+        clock.set(2016, Calendar.JULY, 1, 0, 0, 0, 0);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate("0616"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("0716"));
+    }
+
+    @Test
+    public void testYearBoundary() {
+        TestClock clock = new TestClock();
+        ExpiryValidator validator = new ExpiryValidator(clock);
+
+        clock.set(2016, Calendar.DECEMBER, 31, 23, 59, 59, 999);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("1216"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("0117"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate("1116"));
+
+        clock.set(2017, Calendar.JANUARY, 1, 0, 0, 0, 0);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate("1216"));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("0117"));
+    }
+
+    @Test
+    public void testClockBackwards() {
+        TestClock clock = new TestClock();
+        ExpiryValidator validator = new ExpiryValidator(clock);
+
+        clock.set(2017, Calendar.MARCH, 1, 12, 0, 0, 0);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate("0217"));
+
+        clock.set(2017, Calendar.FEBRUARY, 28, 12, 0, 0, 0);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate("0217"));
+    }
+
+    @Test
+    public void testMonthAndYear() {
+        TestClock clock = new TestClock();
+        ExpiryValidator validator = new ExpiryValidator(clock);
+
+        clock.set(2016, Calendar.FEBRUARY, 29, 12, 0, 0, 0);
+        Assert.assertEquals(ExpiryValidator.EXPIRY_VALID, validator.validate(2, 2016));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate(1, 2016));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_EXPIRED, validator.validate(12, 2015));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate(0, 2017));
+        Assert.assertEquals(ExpiryValidator.EXPIRY_INVALID, validator.validate(13, 2017));
+    }
+}
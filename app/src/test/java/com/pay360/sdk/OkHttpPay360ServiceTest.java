@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.network.OkHttpPay360Service;
+import com.pay360.sdk.library.network.Pay360Service;
+import com.pay360.sdk.library.payment.GsonPaymentCodec;
+import com.pay360.sdk.library.payment.MakePaymentRequest;
+import com.pay360.sdk.library.payment.MakePaymentResponse;
+import com.pay360.sdk.library.payment.ThreeDSResumeRequest;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.ErrorHandler;
+import retrofit.RetrofitError;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+import rx.Observable;
+import rx.Observer;
+
+/**
+ * Checks the hand written service sends the same requests and raises the same errors as the
+ * Retrofit interface, against a local stand-in server
+ */
+public class OkHttpPay360ServiceTest extends TestCase {
+
+    private static final String INSTALLATION_ID = "5300065";
+    private static final String OPERATION_ID = "3c3b8ea5-1cb8-4c5b-a2c6-bd1c6ad4d3a0";
+    private static final String TRANSACTION_ID = "123";
+
+    private static final String TRANSACTIONS_PATH = "/acceptor/rest/mobile/transactions/" + INSTALLATION_ID;
+
+    private static final String SUCCESS = "{\"transaction\":{\"transactionId\":\"123\"}," +
+            "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0}}";
+    private static final String DECLINED = "{\"outcome\":{\"status\":\"FAILED\",\"reasonCode\":5}}";
+
+    /**
+     * Converter for the payment models as the SDK's own, without the card splicing
+     */
+    private static final Converter CONVERTER = new Converter() {
+
+        private final GsonPaymentCodec codec = new GsonPaymentCodec();
+
+        @Override
+        public Object fromBody(TypedInput body, Type type) throws ConversionException {
+            try {
+                return codec.read(new InputStreamReader(body.in(), "UTF-8"));
+            } catch (IOException e) {
+                throw new ConversionException(e);
+            }
+        }
+
+        @Override
+        public TypedOutput toBody(Object object) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            try {
+                Writer writer = new OutputStreamWriter(body, "UTF-8");
+
+                if (object instanceof MakePaymentRequest) {
+                    codec.write((MakePaymentRequest) object, writer);
+                } else {
+                    codec.write((ThreeDSResumeRequest) object, writer);
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+
+            return new TypedByteArray("application/json; charset=UTF-8", body.toByteArray());
+        }
+    };
+
+    private MockWebServer server;
+    private ExecutorService executor;
+    private Pay360Service service;
+
+    private MakePaymentResponse response;
+    private Throwable error;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        executor = Executors.newSingleThreadExecutor();
+
+        service = new OkHttpPay360Service(new OkHttpClient(), CONVERTER, ErrorHandler.DEFAULT,
+                server.getUrl("/").toString(), executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMakePayment() throws Exception {
+        server.enqueue(new MockResponse().setBody(SUCCESS));
+
+        observe(service.makePayment(new MakePaymentRequest().setSdkVersion("1.0"), "Bearer token",
+                OPERATION_ID, INSTALLATION_ID));
+
+        Assert.assertNull(error);
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals(TRANSACTION_ID, response.getTransactionId());
+
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("POST", request.getMethod());
+        Assert.assertEquals(TRANSACTIONS_PATH + "/payment", request.getPath());
+        Assert.assertEquals("Bearer token", request.getHeader("Authorization"));
+        Assert.assertEquals(OPERATION_ID, request.getHeader("AP-Operation-ID"));
+        Assert.assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+        Assert.assertEquals("{\"sdkVersion\":\"pp_android_sdk:1.0\"}", request.getBody().readUtf8());
+    }
+
+    @Test
+    public void testPaymentStatus() throws Exception {
+        server.enqueue(new MockResponse().setBody(SUCCESS));
+
+        observe(service.paymentStatus("Bearer token", INSTALLATION_ID, OPERATION_ID));
+
+        Assert.assertNull(error);
+        Assert.assertTrue(response.isSuccessful());
+
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("GET", request.getMethod());
+        Assert.assertEquals(TRANSACTIONS_PATH + "/opref/" + OPERATION_ID, request.getPath());
+        Assert.assertEquals("Bearer token", request.getHeader("Authorization"));
+        Assert.assertNull(request.getHeader("AP-Operation-ID"));
+    }
+
+    @Test
+    public void testResume3DS() throws Exception {
+        server.enqueue(new MockResponse().setBody(SUCCESS));
+
+        observe(service.resume3DS(new ThreeDSResumeRequest("PARES"), "Bearer token", OPERATION_ID,
+                INSTALLATION_ID, TRANSACTION_ID));
+
+        Assert.assertNull(error);
+
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("POST", request.getMethod());
+        Assert.assertEquals(TRANSACTIONS_PATH + "/" + TRANSACTION_ID + "/resume", request.getPath());
+        Assert.assertEquals(OPERATION_ID, request.getHeader("AP-Operation-ID"));
+    }
+
+    @Test
+    public void testHttpError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody(DECLINED));
+
+        observe(service.paymentStatus("Bearer token", INSTALLATION_ID, OPERATION_ID));
+
+        Assert.assertNull(response);
+        Assert.assertTrue(error instanceof RetrofitError);
+
+        RetrofitError retrofitError = (RetrofitError) error;
+        Assert.assertEquals(RetrofitError.Kind.HTTP, retrofitError.getKind());
+        Assert.assertEquals(400, retrofitError.getResponse().getStatus());
+
+        // the body is buffered so it can still be decoded
+        MakePaymentResponse body = (MakePaymentResponse) retrofitError.getBodyAs(MakePaymentResponse.class);
+        Assert.assertTrue(body.isFailed());
+        Assert.assertEquals(5, body.getReasonCode());
+    }
+
+    @Test
+    public void testConversionError() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"outcome\":"));
+
+        observe(service.paymentStatus("Bearer token", INSTALLATION_ID, OPERATION_ID));
+
+        Assert.assertTrue(error instanceof RetrofitError);
+        Assert.assertEquals(RetrofitError.Kind.CONVERSION, ((RetrofitError) error).getKind());
+    }
+
+    @Test
+    public void testRequestNotEncoded() throws Exception {
+        Converter converter = new Converter() {
+            @Override
+            public Object fromBody(TypedInput body, Type type) throws ConversionException {
+                return CONVERTER.fromBody(body, type);
+            }
+
+            @Override
+            public TypedOutput toBody(Object object) {
+                throw new IllegalStateException("PaymentCodec failed to write the request");
+            }
+        };
+
+        service = new OkHttpPay360Service(new OkHttpClient(), converter, ErrorHandler.DEFAULT,
+                server.getUrl("/").toString(), executor);
+
+        observe(service.makePayment(new MakePaymentRequest(), "Bearer token", OPERATION_ID,
+                INSTALLATION_ID));
+
+        Assert.assertTrue(error instanceof RetrofitError);
+        Assert.assertEquals(RetrofitError.Kind.CONVERSION, ((RetrofitError) error).getKind());
+        Assert.assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(204));
+
+        observe(service.paymentStatus("Bearer token", INSTALLATION_ID, OPERATION_ID));
+
+        Assert.assertNull(error);
+        Assert.assertNull(response);
+    }
+
+    @Test
+    public void testNetworkError() throws Exception {
+        server.shutdown();
+
+        observe(service.paymentStatus("Bearer token", INSTALLATION_ID, OPERATION_ID));
+
+        Assert.assertTrue(error instanceof RetrofitError);
+        Assert.assertEquals(RetrofitError.Kind.NETWORK, ((RetrofitError) error).getKind());
+    }
+
+    private void observe(Observable<MakePaymentResponse> observable) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        observable.subscribe(new Observer<MakePaymentResponse>() {
+            @Override
+            public void onNext(MakePaymentResponse paymentResponse) {
+                response = paymentResponse;
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error = e;
+                latch.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}
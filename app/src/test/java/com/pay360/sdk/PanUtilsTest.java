@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.utils.PanUtils;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PanUtilsTest extends TestCase {
+
+    @Test
+    public void testValid() {
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900000000005159"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("4111111111111111"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("378282246310005"));
+    }
+
+    @Test
+    public void testSeparatorsIgnored() {
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900 0000 0000 5159"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900-0000-0000-5159"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate(new StringBuilder(" 9900 0000 0000 5159 ")));
+
+        // any whitespace e.g. pasted from a document
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900\t0000\f0000\n5159"));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900\u20030000 0000 5159".toCharArray()));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("9900\u00a00000\u00a00000\u00a05159"));
+    }
+
+    @Test
+    public void testCharArray() {
+        char[] pan = "xx9900 0000 0000 5159xx".toCharArray();
+
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate(pan, 2, pan.length - 4));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate(pan));
+        Assert.assertEquals(PanUtils.PAN_VALID, PanUtils.validate("4111111111111111".toCharArray()));
+    }
+
+    @Test
+    public void testInvalidLuhn() {
+        Assert.assertEquals(PanUtils.PAN_INVALID_LUHN, PanUtils.validate("9900000000005158"));
+        Assert.assertEquals(PanUtils.PAN_INVALID_LUHN, PanUtils.validate("4111 1111 1111 1112"));
+    }
+
+    @Test
+    public void testInvalidLength() {
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate(""));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate((CharSequence) null));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("411111111111"));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("99000000000051591123"));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("    "));
+    }
+
+    @Test
+    public void testInvalidCharacters() {
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("A900000000005159"));
+        Assert.assertEquals(PanUtils.PAN_INVALID, PanUtils.validate("9900.0000.0000.5159"));
+    }
+
+    @Test
+    public void testCheckLuhn() {
+        Assert.assertTrue(PanUtils.checkLuhn("79927398713"));
+        Assert.assertFalse(PanUtils.checkLuhn("79927398710"));
+    }
+
+    @Test
+    public void testDeleteSeparators() {
+        String pan = "9900000000005159";
+
+        Assert.assertSame(pan, PanUtils.deleteSeparators(pan));
+        Assert.assertEquals(pan, PanUtils.deleteSeparators("9900 0000-0000 5159"));
+        Assert.assertEquals(pan, PanUtils.deleteSeparators("9900\t0000\r\n0000 5159"));
+        Assert.assertNull(PanUtils.deleteSeparators(null));
+    }
+}
@@ -11,6 +11,7 @@ import com.pay360.sdk.library.exception.TransactionSuspendedFor3DSException;
 import com.pay360.sdk.library.payment.PaymentError;
 import com.pay360.sdk.library.payment.PaymentManager;
 import com.pay360.sdk.library.payment.PaymentRequest;
+import com.pay360.sdk.library.payment.PaymentSession;
 import com.pay360.sdk.library.payment.PaymentSuccess;
 import com.pay360.sdk.library.payment.BillingAddress;
 import com.pay360.sdk.library.payment.CustomField;
@@ -18,6 +19,7 @@ import com.pay360.sdk.library.payment.CustomerDetails;
 import com.pay360.sdk.library.payment.FinancialServices;
 import com.pay360.sdk.library.payment.PaymentCard;
 import com.pay360.sdk.library.payment.Transaction;
+import com.pay360.sdk.library.payment.ValidationResult;
 import com.pay360.sdk.library.security.Credentials;
 
 import junit.framework.Assert;
@@ -31,6 +33,7 @@ import org.robolectric.annotation.Config;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.UUID;
@@ -262,6 +265,27 @@ public class PaymentManagerTest implements PaymentManager.MakePaymentCallback {
         }
     }
 
+    @Test
+    public void testCardCharArrayPan() throws Exception {
+        char[] pan = "9900 0000 0000 5159".toCharArray();
+        card.setPan(pan).setCv2(new char[] { '1', '2', '3' });
+
+        // the card holds its own copy
+        Arrays.fill(pan, '0');
+
+        Assert.assertTrue(pm.checkPaymentDetails(request).isValid());
+    }
+
+    @Test
+    public void testCardWiped() throws Exception {
+        card.wipe();
+
+        ValidationResult result = pm.checkPaymentDetails(request);
+
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.CARD_PAN_INVALID));
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.CARD_CV2_INVALID));
+    }
+
     @Test
     public void testCardEmptyCV2() throws Exception {
         card.setCv2("");
@@ -298,6 +322,57 @@ public class PaymentManagerTest implements PaymentManager.MakePaymentCallback {
         }
     }
 
+    @Test
+    public void testCheckPaymentDetailsValid() throws Exception {
+        ValidationResult result = pm.checkPaymentDetails(request);
+
+        Assert.assertTrue(result.isValid());
+        Assert.assertTrue(result.getErrors().isEmpty());
+        Assert.assertNull(result.getFirstError());
+    }
+
+    @Test
+    public void testCheckPaymentDetailsAllErrors() throws Exception {
+        transaction.setAmount(0);
+        card.setPan("A900000000005159");
+        card.setCv2("");
+        card.setExpiryDate("1300");
+
+        ValidationResult result = pm.checkPaymentDetails(request);
+
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(4, result.getErrors().size());
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_AMOUNT));
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.CARD_PAN_INVALID));
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.CARD_EXPIRY_INVALID));
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.CARD_CV2_INVALID));
+
+        // same error as the throwing validation
+        Assert.assertEquals(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_AMOUNT,
+                result.getFirstError());
+
+        try {
+            pm.validatePaymentDetails(request);
+            Assert.fail();
+        } catch (PaymentValidationException e) {
+            checkPaymentException(e, result.getFirstError());
+        }
+    }
+
+    @Test
+    public void testCheckPaymentDetailsMissingCard() throws Exception {
+        transaction.setCurrency(null);
+        request.setCard(null);
+
+        ValidationResult result = pm.checkPaymentDetails(request);
+
+        Assert.assertEquals(PaymentValidationException.ErrorCode.INVALID_CARD, result.getFirstError());
+        Assert.assertTrue(result.hasError(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_CURRENCY));
+
+        Assert.assertEquals(PaymentValidationException.ErrorCode.INVALID_REQUEST,
+                pm.checkPaymentDetails(null).getFirstError());
+    }
+
     @Test
     public void testCardNullExpiry() throws Exception {
         card.setExpiryDate(null);
@@ -966,6 +1041,28 @@ public class PaymentManagerTest implements PaymentManager.MakePaymentCallback {
         checkReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
     }
 
+    @Test
+    public void testValidationFailureReleasesSession() throws Exception {
+        PaymentSession session = pm.createSession();
+        session.registerPaymentCallback(this);
+
+        card.setPan("");
+
+        try {
+            session.makePayment(request);
+            Assert.fail();
+        } catch (PaymentValidationException e) {
+            // the session was claimed then released - nothing was sent
+            Assert.assertTrue(session.isIdle());
+        }
+
+        // the session can be used for the next payment
+        card.setPan("9900000000005159");
+
+        Assert.assertNotNull(session.makePayment(request));
+        Assert.assertFalse(session.isIdle());
+    }
+
     private void makePayment() throws Exception {
         success = false;
         responseReceived = false;
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pay360.sdk.library.payment.BillingAddress;
+import com.pay360.sdk.library.payment.CustomField;
+import com.pay360.sdk.library.payment.CustomerDetails;
+import com.pay360.sdk.library.payment.DeviceInfo;
+import com.pay360.sdk.library.payment.FinancialServices;
+import com.pay360.sdk.library.payment.GsonPaymentCodec;
+import com.pay360.sdk.library.payment.MakePaymentRequest;
+import com.pay360.sdk.library.payment.MakePaymentResponse;
+import com.pay360.sdk.library.payment.PaymentCard;
+import com.pay360.sdk.library.payment.PaymentError;
+import com.pay360.sdk.library.payment.PaymentMethod;
+import com.pay360.sdk.library.payment.PaymentTypeAdapterFactory;
+import com.pay360.sdk.library.payment.ThreeDSResumeRequest;
+import com.pay360.sdk.library.payment.Transaction;
+import com.pay360.sdk.library.utils.CardScheme;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class PaymentTypeAdapterFactoryTest {
+
+    private static final String RESPONSE_JSON =
+            "{\"transaction\":{\"transactionId\":\"123\",\"merchantRef\":\"ref\",\"type\":\"PAYMENT\"," +
+            "\"amount\":10.54,\"currency\":\"GBP\",\"transactionTime\":\"2016-01-01T00:00:00\"}," +
+            "\"paymentMethod\":{\"card\":{\"cardUsageType\":\"CREDIT\",\"cardScheme\":\"VISA\"," +
+            "\"lastFour\":\"5159\",\"maskedPan\":\"990000******5159\"}}," +
+            "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0,\"reasonMessage\":null}," +
+            "\"unknownField\":[1,2,{\"a\":\"b\"}]," +
+            "\"threeDSRedirect\":{\"acsUrl\":\"https://acs\",\"pareq\":\"PAREQ\",\"termUrl\":\"https://term\"," +
+            "\"md\":\"MD\",\"sessionTimeout\":60000,\"passiveTimeout\":5000}," +
+            "\"customFields\":{\"fieldState\":[{\"name\":\"n\",\"value\":\"v\",\"transient\":true}]}}";
+
+    private final Gson reflectiveGson = new Gson();
+
+    private final Gson adapterGson = new GsonBuilder()
+            .registerTypeAdapterFactory(new PaymentTypeAdapterFactory())
+            .create();
+
+    /**
+     * Checks the adapters produce the same request JSON as Gson reflection
+     * @throws Exception
+     */
+    @Test
+    public void testMakePaymentRequest() throws Exception {
+        MakePaymentRequest request = createRequest();
+
+        Assert.assertEquals(reflectiveGson.toJson(request), adapterGson.toJson(request));
+    }
+
+    /**
+     * Checks the adapters produce the same resume JSON as Gson reflection
+     * @throws Exception
+     */
+    @Test
+    public void testThreeDSResumeRequest() throws Exception {
+        ThreeDSResumeRequest request = new ThreeDSResumeRequest("PARES");
+
+        Assert.assertEquals(reflectiveGson.toJson(request), adapterGson.toJson(request));
+    }
+
+    /**
+     * Checks the request adapters also decode, as Gson reflection would
+     * @throws Exception
+     */
+    @Test
+    public void testRequestRoundTrip() throws Exception {
+        String json = reflectiveGson.toJson(createRequest());
+
+        MakePaymentRequest request = adapterGson.fromJson(json, MakePaymentRequest.class);
+        Assert.assertEquals(json, adapterGson.toJson(request));
+        Assert.assertEquals(json, reflectiveGson.toJson(request));
+
+        json = reflectiveGson.toJson(new ThreeDSResumeRequest("PARES"));
+        Assert.assertEquals(json, adapterGson.toJson(adapterGson.fromJson(json, ThreeDSResumeRequest.class)));
+
+        Assert.assertNull(adapterGson.fromJson("null", MakePaymentRequest.class));
+        Assert.assertEquals("{}", adapterGson.toJson(adapterGson.fromJson("{\"unknown\":[1]}",
+                MakePaymentRequest.class)));
+    }
+
+    /**
+     * Checks the response adapter also encodes, as Gson reflection would
+     * @throws Exception
+     */
+    @Test
+    public void testResponseRoundTrip() throws Exception {
+        MakePaymentResponse response = adapterGson.fromJson(RESPONSE_JSON, MakePaymentResponse.class);
+
+        String json = reflectiveGson.toJson(reflectiveGson.fromJson(RESPONSE_JSON, MakePaymentResponse.class));
+        Assert.assertEquals(json, adapterGson.toJson(response));
+        Assert.assertEquals(json, reflectiveGson.toJson(response));
+        Assert.assertEquals("{}", adapterGson.toJson(new MakePaymentResponse()));
+    }
+
+    /**
+     * Checks the adapters decode the response, skipping unknown fields
+     * @throws Exception
+     */
+    @Test
+    public void testMakePaymentResponse() throws Exception {
+        MakePaymentResponse response = adapterGson.fromJson(RESPONSE_JSON, MakePaymentResponse.class);
+
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals("123", response.getTransactionId());
+        Assert.assertEquals("ref", response.getMerchantRef());
+        Assert.assertEquals(10.54f, response.getAmount());
+        Assert.assertEquals("GBP", response.getCurrency());
+        Assert.assertEquals("5159", response.getLastFourDigits());
+        Assert.assertEquals("990000******5159", response.getMaskedPan());
+        Assert.assertEquals(CardScheme.VISA, response.getCardScheme());
+        Assert.assertEquals(0, response.getReasonCode());
+        Assert.assertNull(response.getReasonMessage());
+        Assert.assertEquals("PAREQ", response.getThreeDSecure().getPareq());
+        Assert.assertEquals(60000L, response.getThreeDSecure().getSessionTimeout());
+        Assert.assertEquals(1, response.getCustomFields().size());
+        Assert.assertEquals(new CustomField().setName("n").setValue("v").setTransient(true),
+                response.getCustomFields().get(0));
+    }
+
+    /**
+     * Checks the outcome status is decoded case insensitively and unknown values match nothing
+     * @throws Exception
+     */
+    @Test
+    public void testMakePaymentResponseStatus() throws Exception {
+        MakePaymentResponse response = adapterGson.fromJson(
+                "{\"outcome\":{\"status\":\"processing\",\"reasonCode\":0}}", MakePaymentResponse.class);
+
+        Assert.assertTrue(response.isProcessing());
+        Assert.assertFalse(response.isSuccessful());
+        Assert.assertEquals("processing", response.getStatus());
+        Assert.assertNull(response.getCardScheme());
+
+        response = adapterGson.fromJson(
+                "{\"outcome\":{\"status\":\"SUCCEEDED\"}}", MakePaymentResponse.class);
+
+        Assert.assertFalse(response.isSuccessful());
+        Assert.assertFalse(response.isPending());
+        Assert.assertFalse(response.isProcessing());
+        Assert.assertFalse(response.isFailed());
+
+        Assert.assertFalse(adapterGson.fromJson("{}", MakePaymentResponse.class).isFailed());
+    }
+
+    /**
+     * Checks the status and card scheme are decoded when the response is read by another codec
+     * @throws Exception
+     */
+    @Test
+    public void testReflectiveResponseStatus() throws Exception {
+        MakePaymentResponse response = reflectiveGson.fromJson(
+                "{\"paymentMethod\":{\"card\":{\"cardScheme\":\"visa\"}}," +
+                "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0}}", MakePaymentResponse.class);
+
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertFalse(response.isFailed());
+        Assert.assertEquals(CardScheme.VISA, response.getCardScheme());
+
+        response = reflectiveGson.fromJson(
+                "{\"outcome\":{\"status\":\"failed\",\"reasonCode\":5}}", MakePaymentResponse.class);
+
+        Assert.assertTrue(response.isFailed());
+        Assert.assertNull(response.getCardScheme());
+    }
+
+    /**
+     * Checks every reason code is found by its code and gaps fall back to UNEXPECTED
+     * @throws Exception
+     */
+    @Test
+    public void testReasonCodeLookup() throws Exception {
+        int[] codes = { -7, -6, -5, -4, -1, 1, 2, 3, 4, 5, 6, 10 };
+        PaymentError.ReasonCode[] reasonCodes = PaymentError.ReasonCode.values();
+
+        for (int i = 0; i < codes.length; i++) {
+            Assert.assertEquals(reasonCodes[i], PaymentError.ReasonCode.getReasonCode(codes[i]));
+        }
+
+        Assert.assertEquals(PaymentError.ReasonCode.TRANSACTION_DECLINED, PaymentError.ReasonCode.getReasonCode(5));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(0));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(7));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(-8));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(11));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(Integer.MIN_VALUE));
+        Assert.assertEquals(PaymentError.ReasonCode.UNEXPECTED, PaymentError.ReasonCode.getReasonCode(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Checks the default codec produces the same JSON as Gson reflection and decodes the response
+     * @throws Exception
+     */
+    @Test
+    public void testGsonPaymentCodec() throws Exception {
+        GsonPaymentCodec codec = new GsonPaymentCodec();
+
+        MakePaymentRequest request = createRequest();
+        StringWriter writer = new StringWriter();
+        codec.write(request, writer);
+        Assert.assertEquals(reflectiveGson.toJson(request), writer.toString());
+
+        ThreeDSResumeRequest resumeRequest = new ThreeDSResumeRequest("PARES");
+        writer = new StringWriter();
+        codec.write(resumeRequest, writer);
+        Assert.assertEquals(reflectiveGson.toJson(resumeRequest), writer.toString());
+
+        MakePaymentResponse response = codec.read(new StringReader(RESPONSE_JSON));
+        Assert.assertTrue(response.isSuccessful());
+        Assert.assertEquals("123", response.getTransactionId());
+        Assert.assertEquals("PAREQ", response.getThreeDSecure().getPareq());
+
+        Assert.assertNull(codec.read(new StringReader("")));
+    }
+
+    private static MakePaymentRequest createRequest() {
+        List<CustomField> customFields = new ArrayList<CustomField>();
+        customFields.add(new CustomField().setName("name").setValue("<value & \"quoted\">").setTransient(true));
+
+        MakePaymentRequest request = new MakePaymentRequest()
+                .setSdkVersion("1.0.0")
+                .setMerchantAppName("com.example")
+                .setMerchantAppVersion("2.0")
+                .setDeviceInfo(new DeviceInfo()
+                        .setSdkInstallId("067e6162-3b6f-4ae2-a171-2470b63dff00")
+                        .setOsFamily("ANDROID")
+                        .setType("SMARTPHONE")
+                        .setScreenDpi(160))
+                .setTransaction(new Transaction()
+                        .setAmount(10.54f)
+                        .setCurrency("GBP")
+                        .setMerchantReference("ref")
+                        .setAuthorisation())
+                .setPaymentMethod(new PaymentMethod()
+                        .setCard(new PaymentCard()
+                                .setPan("9900000000005159")
+                                .setCv2("123")
+                                .setExpiryDate("0120"))
+                        .setBillingAddress(new BillingAddress()
+                                .setLine1("House")
+                                .setPostcode("BA1 5BG")))
+                .setFinancialServices(new FinancialServices().setSurname("Smith"))
+                .setCustomer(new CustomerDetails().setEmail("test@example.com"))
+                .setCustomFields(customFields);
+
+        return request;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.network.ProtocolMonitor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Runs against a local stand-in server. The JVM running the unit tests has no ALPN so these cover
+ * the HTTP/1.1 fallback - HTTP/2 itself is negotiated on Android 5.0+ devices
+ */
+public class ProtocolMonitorTest extends TestCase {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private ProtocolMonitor monitor;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.start();
+
+        client = new OkHttpClient();
+        monitor = new ProtocolMonitor();
+        monitor.apply(client);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testOffersHttp2WithHttp1Fallback() {
+        Assert.assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), client.getProtocols());
+    }
+
+    @Test
+    public void testFallsBackToHttp1() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        Response response = get();
+
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals(Protocol.HTTP_1_1, response.protocol());
+        Assert.assertEquals(Protocol.HTTP_1_1, monitor.getLastProtocol());
+        Assert.assertEquals(1, monitor.getHttp1RequestCount());
+        Assert.assertEquals(0, monitor.getHttp2RequestCount());
+    }
+
+    @Test
+    public void testReusesConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        get();
+        get();
+
+        Assert.assertEquals(0, server.takeRequest().getSequenceNumber());
+        Assert.assertEquals(1, server.takeRequest().getSequenceNumber());
+        Assert.assertEquals(2, monitor.getHttp1RequestCount());
+    }
+
+    private Response get() throws Exception {
+        Response response = client.newCall(new Request.Builder().url(server.getUrl("/")).build())
+                .execute();
+
+        // release the connection back to the pool
+        response.body().close();
+
+        return response;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.network.StatusEventSource;
+import com.pay360.sdk.library.payment.GsonPaymentCodec;
+import com.pay360.sdk.library.payment.MakePaymentResponse;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observer;
+
+/**
+ * Tests the status push channel against a local stand-in server
+ */
+public class StatusEventSourceTest extends TestCase {
+
+    private static final String INSTALLATION_ID = "5300065";
+    private static final String OPERATION_ID = "3c3b8ea5-1cb8-4c5b-a2c6-bd1c6ad4d3a0";
+
+    private static final String EVENTS_PATH = "/acceptor/rest/mobile/transactions/" +
+            INSTALLATION_ID + "/opref/" + OPERATION_ID + "/events";
+
+    private static final String PROCESSING = "{\"outcome\":{\"status\":\"PROCESSING\"}}";
+    private static final String SUCCESS = "{\"transaction\":{\"transactionId\":\"123\"}," +
+            "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0}}";
+
+    private MockWebServer server;
+    private ExecutorService executor;
+    private StatusEventSource eventSource;
+
+    private MakePaymentResponse outcome;
+    private Throwable error;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        executor = Executors.newSingleThreadExecutor();
+
+        String url = server.getUrl("/").toString();
+
+        eventSource = new StatusEventSource(new OkHttpClient(),
+                new GsonPaymentCodec(),
+                url.substring(0, url.length() - 1),
+                executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOutcomePushed() throws Exception {
+        serveEvents("data: " + PROCESSING + "\n\n" +
+                ": keep alive\n\n" +
+                "data: " + SUCCESS + "\n\n");
+
+        observe();
+
+        Assert.assertNull(error);
+        Assert.assertTrue(outcome.isSuccessful());
+        Assert.assertEquals("123", outcome.getTransactionId());
+
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals(EVENTS_PATH, request.getPath());
+        Assert.assertEquals("Bearer token", request.getHeader("Authorization"));
+        Assert.assertEquals("text/event-stream", request.getHeader("Accept"));
+    }
+
+    @Test
+    public void testPathEncoded() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        observe("5300 065", "op/1?x");
+
+        // as the status endpoint's path
+        Assert.assertEquals("/acceptor/rest/mobile/transactions/5300%20065/opref/op%2F1%3Fx/events",
+                server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testChannelNotSupported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        observe();
+
+        Assert.assertNull(outcome);
+        Assert.assertNotNull(error);
+    }
+
+    @Test
+    public void testClosedBeforeOutcome() throws Exception {
+        serveEvents("data: " + PROCESSING + "\n\n");
+
+        observe();
+
+        Assert.assertNull(outcome);
+        Assert.assertNotNull(error);
+    }
+
+    @Test
+    public void testStalledStream() throws Exception {
+        String url = server.getUrl("/").toString();
+
+        eventSource = new StatusEventSource(new OkHttpClient(),
+                new GsonPaymentCodec(),
+                url.substring(0, url.length() - 1),
+                executor,
+                500);
+
+        // headers and the first byte are sent then the stream is held open
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(": keep alive\n\n")
+                .throttleBody(1, 1, TimeUnit.HOURS));
+
+        long start = System.nanoTime();
+
+        observe();
+
+        // gives up so the session can poll
+        Assert.assertNull(outcome);
+        Assert.assertTrue(error instanceof InterruptedIOException);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    /**
+     * Stand-in for the server's push channel
+     * @param events event stream to send
+     */
+    private void serveEvents(final String events) {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (!EVENTS_PATH.equals(request.getPath())) {
+                    return new MockResponse().setResponseCode(404);
+                }
+
+                return new MockResponse()
+                        .setHeader("Content-Type", "text/event-stream")
+                        .setBody(events);
+            }
+        });
+    }
+
+    private void observe() throws Exception {
+        observe(INSTALLATION_ID, OPERATION_ID);
+    }
+
+    private void observe(String installationId, String operationId) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        eventSource.observeOutcome("Bearer token", installationId, operationId)
+                .subscribe(new Observer<MakePaymentResponse>() {
+                    @Override
+                    public void onNext(MakePaymentResponse response) {
+                        outcome = response;
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        error = e;
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        latch.countDown();
+                    }
+                });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.payment.PaymentError;
+import com.pay360.sdk.library.payment.PaymentManager;
+import com.pay360.sdk.library.payment.PaymentCard;
+import com.pay360.sdk.library.payment.PaymentRequest;
+import com.pay360.sdk.library.payment.PaymentSuccess;
+import com.pay360.sdk.library.payment.Transaction;
+import com.pay360.sdk.library.security.Credentials;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+
+/**
+ * Runs a payment whose outcome is pushed by a local stand-in server, checking a pushed status is
+ * handled as a status response
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class StatusPushTest implements PaymentManager.MakePaymentCallback {
+
+    private static final String INSTALLATION_ID = "5300065";
+
+    private static final String PROCESSING = "{\"outcome\":{\"status\":\"PROCESSING\",\"reasonCode\":0}}";
+    private static final String SUCCESS = "{\"transaction\":{\"transactionId\":\"123\"}," +
+            "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0}}";
+    private static final String SUSPENDED_FOR_3DS = "{\"transaction\":{\"transactionId\":\"123\"}," +
+            "\"outcome\":{\"status\":\"PENDING\",\"reasonCode\":7}," +
+            "\"threeDSRedirect\":{\"acsUrl\":\"https://acs\",\"pareq\":\"PAREQ\"," +
+            "\"termUrl\":\"https://term\",\"md\":\"MD\"}}";
+
+    private MockWebServer server;
+    private PaymentManager pm;
+
+    private volatile PaymentSuccess responseSuccess;
+    private volatile PaymentError responseError;
+
+    @Before
+    public void setUp() throws Exception {
+        // reset singleton for each test
+        Method m = PaymentManager.class.getDeclaredMethod("TEST_resetInstance");
+        m.setAccessible(true);
+        m.invoke(null);
+
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+        Robolectric.getFakeHttpLayer().interceptResponseContent(false);
+
+        server = new MockWebServer();
+        server.start();
+
+        String url = server.getUrl("/").toString();
+
+        pm = PaymentManager.getInstance(Robolectric.application);
+        pm.setStatusPushEnabled(true);
+        pm.setUrl(url.substring(0, url.length() - 1));
+        pm.setCredentials(new Credentials().setInstallationId(INSTALLATION_ID).setToken("VALID_TOKEN"));
+        pm.registerPaymentCallback(this);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testOutcomePushed() throws Exception {
+        serve(SUCCESS);
+
+        makePayment();
+
+        Assert.assertNull(responseError);
+        Assert.assertEquals("123", responseSuccess.getTransactionId());
+    }
+
+    @Test
+    public void testPushedThreeDSNotContinued() throws Exception {
+        serve(SUSPENDED_FOR_3DS);
+
+        makePayment();
+
+        // as the status endpoint returning the same response
+        Assert.assertNull(responseSuccess);
+        Assert.assertEquals(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING,
+                responseError.getReasonCode());
+        Assert.assertNull(Robolectric.shadowOf(Robolectric.application).getNextStartedActivity());
+    }
+
+    @Override
+    public void paymentSucceeded(PaymentSuccess response) {
+        responseSuccess = response;
+    }
+
+    @Override
+    public void paymentFailed(PaymentError response) {
+        responseError = response;
+    }
+
+    /**
+     * Stand-in for the server - the payment is still processing when it responds, then the
+     * outcome is pushed
+     * @param pushed status sent on the push channel
+     */
+    private void serve(final String pushed) {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/payment")) {
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody(PROCESSING);
+                }
+
+                if (request.getPath().endsWith("/events")) {
+                    return new MockResponse()
+                            .setHeader("Content-Type", "text/event-stream")
+                            .setBody("data: " + pushed + "\n\n");
+                }
+
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+    }
+
+    private void makePayment() throws Exception {
+        Calendar expiry = Calendar.getInstance();
+        expiry.add(Calendar.YEAR, 1);
+
+        PaymentRequest request = new PaymentRequest()
+                .setTransaction(new Transaction()
+                        .setAmount(10)
+                        .setCurrency("GBP")
+                        .setMerchantReference("ref"))
+                .setCard(new PaymentCard()
+                        .setPan("9900000000005159")
+                        .setCv2("123")
+                        .setExpiryDate(new SimpleDateFormat("MMyy").format(expiry.getTime())));
+
+        pm.makePayment(request);
+
+        await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return responseSuccess != null || responseError != null;
+            }
+        });
+    }
+}
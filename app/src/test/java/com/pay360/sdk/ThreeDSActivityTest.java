@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.content.LocalBroadcastManager;
+import android.webkit.WebView;
+
+import com.pay360.sdk.library.ThreeDSActivity;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the PaRes passed to the JavaScript interface, from a WebView thread, completes 3D Secure
+ * on the UI thread and only once
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class ThreeDSActivityTest {
+
+    private final List<Intent> broadcasts = new ArrayList<Intent>();
+    private final List<Thread> receiverThreads = new ArrayList<Thread>();
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            broadcasts.add(intent);
+            receiverThreads.add(Thread.currentThread());
+        }
+    };
+
+    private ThreeDSActivity activity;
+
+    @Before
+    public void setUp() throws Exception {
+        // attached but not created - the layout is in the library's resources, so set the
+        // fields onCreate would
+        activity = Robolectric.buildActivity(ThreeDSActivity.class).attach().get();
+
+        setField("webView", new WebView(activity));
+        setField("transactionId", "123");
+
+        LocalBroadcastManager.getInstance(Robolectric.application)
+                .registerReceiver(receiver, new IntentFilter(ThreeDSActivity.ACTION_COMPLETED));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Robolectric.unPauseMainLooper();
+
+        LocalBroadcastManager.getInstance(Robolectric.application).unregisterReceiver(receiver);
+    }
+
+    @Test
+    public void testGetDataOnUiThread() throws Exception {
+        Robolectric.pauseMainLooper();
+
+        final ThreeDSActivity.WebAppInterface webAppInterface = activity.new WebAppInterface();
+
+        // as the WebView calls the interface
+        Thread webViewThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                webAppInterface.getData("PARES", "MD");
+            }
+        });
+
+        webViewThread.start();
+        webViewThread.join();
+
+        // nothing is done until the UI thread runs it
+        Assert.assertTrue(broadcasts.isEmpty());
+        Assert.assertFalse(activity.isFinishing());
+
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals(1, broadcasts.size());
+        Assert.assertSame(Thread.currentThread(), receiverThreads.get(0));
+
+        Intent result = broadcasts.get(0);
+        Assert.assertTrue(result.getBooleanExtra(ThreeDSActivity.EXTRA_SUCCESS, false));
+        Assert.assertEquals("PARES", result.getStringExtra(ThreeDSActivity.EXTRA_PARES));
+        Assert.assertEquals("MD", result.getStringExtra(ThreeDSActivity.EXTRA_MD));
+        Assert.assertEquals("123", result.getStringExtra(ThreeDSActivity.EXTRA_TRANSACTION_ID));
+        Assert.assertTrue(activity.isFinishing());
+    }
+
+    @Test
+    public void testGetDataTwice() throws Exception {
+        ThreeDSActivity.WebAppInterface webAppInterface = activity.new WebAppInterface();
+
+        // e.g. the ACS page hook then the TermUrl page
+        webAppInterface.getData("PARES", "MD");
+        webAppInterface.getData("OTHER", "MD");
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals(1, broadcasts.size());
+        Assert.assertEquals("PARES", broadcasts.get(0).getStringExtra(ThreeDSActivity.EXTRA_PARES));
+    }
+
+    @Test
+    public void testGetDataWithoutPares() throws Exception {
+        activity.new WebAppInterface().getData("", "MD");
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals(1, broadcasts.size());
+        Assert.assertFalse(broadcasts.get(0).getBooleanExtra(ThreeDSActivity.EXTRA_SUCCESS, true));
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = ThreeDSActivity.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(activity, value);
+    }
+}
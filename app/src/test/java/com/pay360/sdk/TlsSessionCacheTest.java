@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk;
+
+import com.pay360.sdk.library.network.TlsSessionCache;
+import com.squareup.okhttp.CipherSuite;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.ConnectionSpec;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.TlsVersion;
+import com.squareup.okhttp.internal.SslContextBuilder;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import static com.jayway.awaitility.Awaitility.await;
+
+/**
+ * Runs HTTPS against a local stand-in server with a self signed certificate. The JVM running the
+ * unit tests has no ALPN so HTTP/1.1 is negotiated - HTTP/2 itself is negotiated on Android 5.0+
+ * devices
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class TlsSessionCacheTest {
+
+    // not the JVM's first choice, so only negotiated if OkHttp configures the socket first
+    private static final CipherSuite CIPHER_SUITE = CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private TlsSessionCache tlsSessionCache;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.useHttps(SslContextBuilder.localhost().getSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.start();
+
+        tlsSessionCache = new TlsSessionCache(Robolectric.application);
+
+        client = new OkHttpClient();
+        client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        client.setSslSocketFactory(tlsSessionCache.getSocketFactory(true));
+        client.setConnectionSpecs(Collections.singletonList(
+                new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                        .tlsVersions(TlsVersion.TLS_1_2)
+                        .cipherSuites(CIPHER_SUITE)
+                        .build()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testConnectionSpecApplied() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        Response response = get();
+
+        // the factory handed OkHttp a socket before the handshake so its spec and ALPN applied
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals(Protocol.HTTP_1_1, response.protocol());
+        Assert.assertEquals("TLS_RSA_WITH_AES_128_CBC_SHA", response.handshake().cipherSuite());
+    }
+
+    @Test
+    public void testHandshakesRecorded() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        get();
+
+        await().atMost(5, TimeUnit.SECONDS).until(handshakes(1));
+        Assert.assertEquals(1, tlsSessionCache.getFullHandshakeCount());
+        Assert.assertFalse(tlsSessionCache.isLastHandshakeResumed());
+
+        // a new connection resumes the session of the first
+        client.setConnectionPool(new ConnectionPool(0, 0));
+        get();
+
+        await().atMost(5, TimeUnit.SECONDS).until(handshakes(2));
+        Assert.assertEquals(1, tlsSessionCache.getResumedHandshakeCount());
+        Assert.assertTrue(tlsSessionCache.isLastHandshakeResumed());
+    }
+
+    @Test
+    public void testHostnameVerified() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        // the certificate is for localhost - OkHttp's verifier rejects any other name
+        Request request = new Request.Builder()
+                .url("https://127.0.0.1:" + server.getPort() + "/")
+                .build();
+
+        try {
+            client.newCall(request).execute();
+            Assert.fail();
+        } catch (SSLPeerUnverifiedException e) {
+            Assert.assertTrue(true);
+        }
+    }
+
+    private Response get() throws Exception {
+        Response response = client.newCall(new Request.Builder().url(server.getUrl("/")).build())
+                .execute();
+        response.body().close();
+        return response;
+    }
+
+    private Callable<Boolean> handshakes(final int count) {
+        return new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                // listeners are notified on a separate thread
+                return tlsSessionCache.getFullHandshakeCount() +
+                       tlsSessionCache.getResumedHandshakeCount() >= count;
+            }
+        };
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.pay360.sdk.CustomRobolectricRunner;
+import com.pay360.sdk.library.network.Pay360Service;
+import com.pay360.sdk.library.security.Credentials;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rx.Observable;
+
+/**
+ * Checks each status in a batch is mapped to the outcome a session returns for the same status.
+ * In the library's package as the lookup is started by {@link PaymentManager}
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class BatchStatusLookupTest {
+
+    private static final String SUCCESS = "{\"transaction\":{\"transactionId\":\"1\"}," +
+            "\"outcome\":{\"status\":\"SUCCESS\",\"reasonCode\":0}}";
+    private static final String PENDING = "{\"transaction\":{\"transactionId\":\"2\"}," +
+            "\"outcome\":{\"status\":\"PENDING\",\"reasonCode\":0}}";
+    private static final String DECLINED = "{\"outcome\":{\"status\":\"FAILED\",\"reasonCode\":5}}";
+    private static final String PROCESSING = "{\"outcome\":{\"status\":\"PROCESSING\",\"reasonCode\":0," +
+            "\"reasonMessage\":\"Processing\"}}";
+    private static final String SUSPENDED_FOR_3DS = "{\"outcome\":{\"status\":\"PENDING\",\"reasonCode\":7}," +
+            "\"threeDSRedirect\":{\"acsUrl\":\"https://acs\",\"pareq\":\"PAREQ\"," +
+            "\"termUrl\":\"https://term\",\"md\":\"MD\"}}";
+    private static final String SUSPENDED_FOR_3DS_INVALID = "{\"outcome\":{\"status\":\"PENDING\"," +
+            "\"reasonCode\":7}}";
+
+    private final Map<String, PaymentSuccess> successes = new HashMap<String, PaymentSuccess>();
+    private final Map<String, PaymentError> errors = new HashMap<String, PaymentError>();
+    private int completions;
+
+    @Test
+    public void testOutcomesMapped() throws Exception {
+        Map<String, String> responses = new LinkedHashMap<String, String>();
+        responses.put("success", SUCCESS);
+        responses.put("pending", PENDING);
+        responses.put("declined", DECLINED);
+        responses.put("processing", PROCESSING);
+        responses.put("3ds", SUSPENDED_FOR_3DS);
+        responses.put("3ds-invalid", SUSPENDED_FOR_3DS_INVALID);
+
+        lookup(responses).start();
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+        Assert.assertEquals(1, completions);
+
+        Assert.assertEquals("1", successes.get("success").getTransactionId());
+
+        // pending is a success to a session, not a timeout
+        Assert.assertEquals("2", successes.get("pending").getTransactionId());
+
+        Assert.assertEquals(PaymentError.ReasonCode.TRANSACTION_DECLINED,
+                errors.get("declined").getReasonCode());
+
+        // the outcome is still not known after the lookup
+        Assert.assertEquals(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT,
+                errors.get("processing").getReasonCode());
+        Assert.assertEquals("Processing", errors.get("processing").getReasonMessage());
+
+        // 3D Secure only continues from the payment itself
+        Assert.assertEquals(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING,
+                errors.get("3ds").getReasonCode());
+        Assert.assertEquals(PaymentError.ReasonCode.SERVER_ERROR,
+                errors.get("3ds-invalid").getReasonCode());
+    }
+
+    @Test
+    public void testRequestFailed() throws Exception {
+        lookup(Collections.singletonMap("offline", (String) null)).start();
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+        Assert.assertEquals(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING,
+                errors.get("offline").getReasonCode());
+        Assert.assertEquals(1, completions);
+    }
+
+    @Test
+    public void testDuplicatesLookedUpOnce() throws Exception {
+        final int[] requests = new int[1];
+
+        BatchStatusLookup lookup = new BatchStatusLookup(new StatusService(
+                Collections.singletonMap("success", SUCCESS)) {
+            @Override
+            public Observable<MakePaymentResponse> paymentStatus(String token, String installationId,
+                                                                 String operationId) {
+                requests[0]++;
+                return super.paymentStatus(token, installationId, operationId);
+            }
+        }, credentials(), Arrays.asList("success", "success", "success"), new RecordingCallback());
+
+        lookup.start();
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+        Assert.assertEquals(1, requests[0]);
+        Assert.assertEquals(0, lookup.getRemainingCount());
+        Assert.assertEquals(1, completions);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Robolectric.pauseMainLooper();
+
+        lookup(Collections.<String, String>emptyMap()).start();
+
+        // not called back from within start
+        Assert.assertEquals(0, completions);
+
+        Robolectric.unPauseMainLooper();
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals(1, completions);
+        Assert.assertTrue(successes.isEmpty());
+        Assert.assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testEmptyCancelled() throws Exception {
+        Robolectric.pauseMainLooper();
+
+        BatchStatusLookup lookup = lookup(Collections.<String, String>emptyMap());
+        lookup.start();
+        lookup.cancel();
+
+        Robolectric.unPauseMainLooper();
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals(0, completions);
+    }
+
+    private BatchStatusLookup lookup(Map<String, String> responses) {
+        return new BatchStatusLookup(new StatusService(responses), credentials(), responses.keySet(),
+                new RecordingCallback());
+    }
+
+    private static Credentials credentials() {
+        return new Credentials().setInstallationId("5300065").setToken("token");
+    }
+
+    /**
+     * Returns the status body set for each operation, or a network failure if there is none
+     */
+    private static class StatusService implements Pay360Service {
+
+        private final GsonPaymentCodec codec = new GsonPaymentCodec();
+        private final Map<String, String> responses;
+
+        private StatusService(Map<String, String> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public Observable<MakePaymentResponse> paymentStatus(String token, String installationId,
+                                                             String operationId) {
+            String body = responses.get(operationId);
+
+            if (body == null) {
+                return Observable.error(new IOException("offline"));
+            }
+
+            try {
+                return Observable.just(codec.read(new StringReader(body)));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public Observable<MakePaymentResponse> makePayment(MakePaymentRequest request, String token,
+                                                           String operationId, String installationId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Observable<MakePaymentResponse> resume3DS(ThreeDSResumeRequest request, String token,
+                                                         String operationId, String installationId,
+                                                         String transactionId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class RecordingCallback implements PaymentManager.TransactionStatusCallback {
+
+        @Override
+        public void statusSucceeded(String operationId, PaymentSuccess success) {
+            successes.put(operationId, success);
+        }
+
+        @Override
+        public void statusFailed(String operationId, PaymentError error) {
+            errors.put(operationId, error);
+        }
+
+        @Override
+        public void statusLookupCompleted() {
+            completions++;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks operations survive reopening the journal, including after compaction and with torn or
+ * corrupt records. In the library's package as the journal is internal to {@link PaymentManager}
+ */
+public class OperationJournalTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("operations", ".journal");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+        journal.record(OperationJournal.TYPE_STARTED, "b");
+        journal.record(OperationJournal.TYPE_SUSPENDED, "a");
+        journal.record(OperationJournal.TYPE_STARTED, "c");
+        journal.record(OperationJournal.TYPE_COMPLETED, "b");
+
+        // a status request is never journaled
+        journal.record(OperationJournal.TYPE_COMPLETED, "d");
+
+        Assert.assertEquals(Arrays.asList("a", "c"), journal.getUnresolved());
+
+        // nothing from a previous run
+        Assert.assertTrue(journal.getPreviouslyUnresolved().isEmpty());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+        journal.record(OperationJournal.TYPE_STARTED, "b");
+        journal.record(OperationJournal.TYPE_COMPLETED, "a");
+
+        journal = new OperationJournal(file);
+        journal.open();
+
+        Assert.assertEquals(Arrays.asList("b"), journal.getPreviouslyUnresolved());
+
+        // operations of this run aren't reported as left by the previous one
+        journal.record(OperationJournal.TYPE_STARTED, "c");
+        journal.record(OperationJournal.TYPE_COMPLETED, "b");
+
+        Assert.assertEquals(Arrays.asList("b"), journal.getPreviouslyUnresolved());
+        Assert.assertEquals(Arrays.asList("c"), journal.getUnresolved());
+
+        journal = new OperationJournal(file);
+
+        Assert.assertEquals(Arrays.asList("c"), journal.getPreviouslyUnresolved());
+    }
+
+    @Test
+    public void testRecordedBeforeOpen() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+
+        journal = new OperationJournal(file);
+
+        // as recorded on the main thread while the journal is opened in the background
+        journal.record(OperationJournal.TYPE_STARTED, "b");
+        journal.record(OperationJournal.TYPE_STARTED, "c");
+        journal.record(OperationJournal.TYPE_COMPLETED, "b");
+        journal.record(OperationJournal.TYPE_COMPLETED, "a");
+
+        journal.open();
+
+        // held records are appended in order, after the previous run is loaded
+        Assert.assertEquals(Arrays.asList("a"), journal.getPreviouslyUnresolved());
+        Assert.assertEquals(Arrays.asList("c"), journal.getUnresolved());
+
+        journal = new OperationJournal(file);
+
+        Assert.assertEquals(Arrays.asList("c"), journal.getPreviouslyUnresolved());
+    }
+
+    @Test
+    public void testRecordWithoutOpen() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+
+        // the file isn't touched until the journal is opened
+        Assert.assertFalse(file.exists());
+
+        Assert.assertEquals(Arrays.asList("a"), journal.getUnresolved());
+        Assert.assertTrue(file.exists());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "unresolved");
+
+        // fill both regions several times over
+        for (int i = 0; i < OperationJournal.CAPACITY * 3; i++) {
+            journal.record(OperationJournal.TYPE_STARTED, "op" + i);
+            journal.record(OperationJournal.TYPE_COMPLETED, "op" + i);
+        }
+
+        journal.record(OperationJournal.TYPE_STARTED, "last");
+
+        journal = new OperationJournal(file);
+
+        Assert.assertEquals(Arrays.asList("unresolved", "last"), journal.getPreviouslyUnresolved());
+    }
+
+    @Test
+    public void testFullOfUnresolved() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        for (int i = 0; i <= OperationJournal.CAPACITY; i++) {
+            journal.record(OperationJournal.TYPE_STARTED, "op" + i);
+        }
+
+        journal = new OperationJournal(file);
+
+        // the oldest is forgotten to make room
+        List<String> unresolved = journal.getPreviouslyUnresolved();
+        Assert.assertEquals(OperationJournal.CAPACITY, unresolved.size());
+        Assert.assertEquals("op1", unresolved.get(0));
+        Assert.assertEquals("op" + OperationJournal.CAPACITY, unresolved.get(unresolved.size() - 1));
+    }
+
+    @Test
+    public void testTornAndCorruptRecords() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+        journal.record(OperationJournal.TYPE_STARTED, "b");
+        journal.record(OperationJournal.TYPE_STARTED, "c");
+        journal.record(OperationJournal.TYPE_STARTED, "d");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            int region = raf.readByte();
+
+            // the type of a torn record is never written
+            raf.seek(recordOffset(region, 1));
+            raf.writeByte(0);
+
+            // a corrupt id length
+            raf.seek(recordOffset(region, 2) + 1);
+            raf.writeByte(OperationJournal.RECORD_SIZE);
+        } finally {
+            raf.close();
+        }
+
+        journal = new OperationJournal(file);
+
+        // the records after those are still read
+        Assert.assertEquals(Arrays.asList("a", "d"), journal.getPreviouslyUnresolved());
+    }
+
+    @Test
+    public void testInterruptedCompaction() throws Exception {
+        OperationJournal journal = new OperationJournal(file);
+        journal.open();
+
+        journal.record(OperationJournal.TYPE_STARTED, "a");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            // the process died while compacting into the other region
+            int other = 1 - raf.readByte();
+
+            raf.seek(recordOffset(other, 0));
+            raf.writeByte(OperationJournal.TYPE_STARTED);
+            raf.writeByte(1);
+            raf.writeLong(System.currentTimeMillis());
+            raf.writeByte('x');
+        } finally {
+            raf.close();
+        }
+
+        journal = new OperationJournal(file);
+
+        // the header still selects the live region
+        Assert.assertEquals(Arrays.asList("a"), journal.getPreviouslyUnresolved());
+    }
+
+    private static long recordOffset(int region, int index) {
+        return OperationJournal.HEADER_SIZE +
+               (long) region * OperationJournal.RECORD_SIZE * OperationJournal.CAPACITY +
+               (long) index * OperationJournal.RECORD_SIZE;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.pay360.sdk.CustomRobolectricRunner;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+
+/**
+ * Checks the cache of final outcomes and that a session answers a status request from it.
+ * In the library's package as the cache is internal to {@link PaymentManager}
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class OutcomeCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        OutcomeCache cache = new OutcomeCache(2, 60000L);
+
+        cache.put("a", success("1"));
+        cache.put("b", success("2"));
+
+        // a is now the most recently used
+        Assert.assertNotNull(cache.get("a"));
+
+        cache.put("c", success("3"));
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("1", cache.get("a").getSuccess().getTransactionId());
+        Assert.assertEquals("3", cache.get("c").getSuccess().getTransactionId());
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        OutcomeCache cache = new OutcomeCache(2, 0L);
+
+        cache.put("a", success("1"));
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // held for the default time to live
+        cache = new OutcomeCache();
+        cache.put("a", success("1"));
+
+        Assert.assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void testOnlyFinalErrorsCached() throws Exception {
+        Assert.assertTrue(OutcomeCache.isFinal(error(PaymentError.ReasonCode.TRANSACTION_DECLINED)));
+        Assert.assertTrue(OutcomeCache.isFinal(
+                error(PaymentError.ReasonCode.TRANSACTION_CANCELLED_BY_USER)));
+
+        // the outcome of the payment is unknown
+        Assert.assertFalse(OutcomeCache.isFinal(error(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT)));
+        Assert.assertFalse(OutcomeCache.isFinal(
+                error(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING)));
+        Assert.assertFalse(OutcomeCache.isFinal(error(PaymentError.ReasonCode.SERVER_ERROR)));
+
+        // a problem with the request rather than the payment
+        Assert.assertFalse(OutcomeCache.isFinal(error(PaymentError.ReasonCode.CLIENT_TOKEN_EXPIRED)));
+        Assert.assertFalse(OutcomeCache.isFinal(error(PaymentError.ReasonCode.NETWORK_NO_CONNECTION)));
+    }
+
+    @Test
+    public void testStatusFromCache() throws Exception {
+        // reset singleton for each test
+        Method m = PaymentManager.class.getDeclaredMethod("TEST_resetInstance");
+        m.setAccessible(true);
+        m.invoke(null);
+
+        PaymentManager pm = PaymentManager.getInstance(Robolectric.application);
+        pm.getOutcomeCache().put("operation", success("123"));
+
+        final PaymentSuccess[] result = new PaymentSuccess[1];
+
+        PaymentSession session = pm.createSession();
+        session.registerPaymentCallback(new PaymentManager.MakePaymentCallback() {
+            @Override
+            public void paymentSucceeded(PaymentSuccess success) {
+                result[0] = success;
+            }
+
+            @Override
+            public void paymentFailed(PaymentError error) {
+                Assert.fail();
+            }
+        });
+
+        // no URL or credentials needed as no request is sent
+        session.getTransactionStatus("operation");
+        Robolectric.runUiThreadTasks();
+
+        Assert.assertEquals("123", result[0].getTransactionId());
+        Assert.assertTrue(session.isIdle());
+        Assert.assertTrue(session.getTransitionLog().isEmpty());
+        Assert.assertEquals(1, pm.getOutcomeCacheHitCount());
+    }
+
+    private static PaymentOutcome success(String transactionId) {
+        PaymentSuccess success = new PaymentSuccess();
+        success.setTransactionId(transactionId);
+        return new PaymentOutcome(success);
+    }
+
+    private static PaymentError error(PaymentError.ReasonCode reasonCode) {
+        PaymentError error = new PaymentError();
+        error.setReasonCode(reasonCode);
+        return error;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.google.gson.Gson;
+import com.pay360.sdk.CustomRobolectricRunner;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import retrofit.mime.TypedByteArray;
+
+/**
+ * Checks the spliced request body is the JSON Gson reflection writes for the same request, with
+ * the PAN and CV2 added to the card. In the library's package as the converter is internal to
+ * {@link PaymentManager}
+ */
+@RunWith(CustomRobolectricRunner.class)
+@Config(emulateSdk = 18, reportSdk = 18)
+public class PaymentConverterTest {
+
+    private static final String PAN = "9900000000005159";
+    private static final String CV2 = "123";
+
+    private final Gson reflectiveGson = new Gson();
+
+    private final PaymentConverter converter = new PaymentConverter(new GsonPaymentCodec());
+
+    @Test
+    public void testCardRequest() throws Exception {
+        DeviceInfo deviceInfo = new DeviceInfo().setSdkInstallId("067e6162").setScreenDpi(160);
+
+        MakePaymentRequest request = createRequest()
+                .setEncodedPrefix(MakePaymentRequest.encodePrefix("1.0.0", "com.example", "2.0", deviceInfo));
+
+        // the same request with the prefix fields serialised as any other
+        String expected = reflectiveGson.toJson(createRequest()
+                .setSdkVersion("1.0.0")
+                .setMerchantAppName("com.example")
+                .setMerchantAppVersion("2.0")
+                .setDeviceInfo(deviceInfo));
+
+        expected = withCardData(expected, "\"cardHolderName\":\"Zo\u00eb\"}", PAN, CV2);
+
+        Assert.assertEquals(expected, encode(request));
+    }
+
+    @Test
+    public void testCardOnly() throws Exception {
+        MakePaymentRequest request = new MakePaymentRequest()
+                .setPaymentMethod(new PaymentMethod().setCard(new PaymentCard().setCv2(CV2)));
+
+        Assert.assertEquals("{\"paymentMethod\":{\"card\":{\"cv2\":\"123\"}}}", encode(request));
+
+        request = new MakePaymentRequest()
+                .setPaymentMethod(new PaymentMethod().setCard(new PaymentCard()));
+
+        Assert.assertEquals("{\"paymentMethod\":{\"card\":{}}}", encode(request));
+    }
+
+    @Test
+    public void testWithoutCard() throws Exception {
+        MakePaymentRequest request = createRequest()
+                .setPaymentMethod(new PaymentMethod()
+                        .setBillingAddress(new BillingAddress().setLine1("House")));
+
+        Assert.assertEquals(reflectiveGson.toJson(request), encode(request));
+
+        request = createRequest().setPaymentMethod(null);
+
+        Assert.assertEquals(reflectiveGson.toJson(request), encode(request));
+        Assert.assertEquals("{}", encode(new MakePaymentRequest()));
+    }
+
+    @Test
+    public void testPrefixOnly() throws Exception {
+        MakePaymentRequest request = new MakePaymentRequest()
+                .setEncodedPrefix(MakePaymentRequest.encodePrefix("1.0.0", null, null, null));
+
+        Assert.assertEquals("{\"sdkVersion\":\"pp_android_sdk:1.0.0\"}", encode(request));
+
+        request.setPaymentMethod(new PaymentMethod().setCard(new PaymentCard().setPan(PAN)));
+
+        Assert.assertEquals("{\"sdkVersion\":\"pp_android_sdk:1.0.0\"," +
+                "\"paymentMethod\":{\"card\":{\"pan\":\"9900000000005159\"}}}", encode(request));
+    }
+
+    @Test
+    public void testCustomCodec() throws Exception {
+        // members in another order, pretty printed with trailing whitespace
+        PaymentCodec codec = new GsonPaymentCodec() {
+            @Override
+            public void write(MakePaymentRequest request, Writer out) throws IOException {
+                out.write("\n{\n  \"customer\": {},\n  \"transaction\": {}\n}\n");
+            }
+        };
+
+        MakePaymentRequest request = new MakePaymentRequest()
+                .setPaymentMethod(new PaymentMethod().setCard(new PaymentCard().setPan(PAN)));
+
+        Assert.assertEquals("{\"customer\": {},\n  \"transaction\": {}," +
+                "\"paymentMethod\":{\"card\":{\"pan\":\"9900000000005159\"}}}",
+                encode(new PaymentConverter(codec), request));
+    }
+
+    @Test
+    public void testCodecNotObject() throws Exception {
+        PaymentCodec codec = new GsonPaymentCodec() {
+            @Override
+            public void write(MakePaymentRequest request, Writer out) throws IOException {
+                out.write("[]");
+            }
+        };
+
+        try {
+            encode(new PaymentConverter(codec), new MakePaymentRequest());
+            Assert.fail("Array encoded as the request");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCodecFailed() throws Exception {
+        PaymentCodec codec = new GsonPaymentCodec() {
+            @Override
+            public void write(MakePaymentRequest request, Writer out) throws IOException {
+                throw new IOException("codec failed");
+            }
+        };
+
+        try {
+            encode(new PaymentConverter(codec), new MakePaymentRequest());
+            Assert.fail("Request encoded without the codec");
+        } catch (IllegalStateException e) {
+            // reported as a conversion error rather than crashing the I/O thread
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private String encode(MakePaymentRequest request) throws Exception {
+        return encode(converter, request);
+    }
+
+    private static String encode(PaymentConverter converter, MakePaymentRequest request)
+            throws Exception {
+        return new String(((TypedByteArray) converter.toBody(request)).getBytes(), "UTF-8");
+    }
+
+    private static String withCardData(String json, String cardEnd, String pan, String cv2) {
+        Assert.assertTrue(json.contains(cardEnd));
+
+        return json.replace(cardEnd, cardEnd.substring(0, cardEnd.length() - 1) +
+                ",\"pan\":\"" + pan + "\",\"cv2\":\"" + cv2 + "\"}");
+    }
+
+    private static MakePaymentRequest createRequest() {
+        List<CustomField> customFields = new ArrayList<CustomField>();
+        customFields.add(new CustomField().setName("name").setValue("<value & \"quoted\">"));
+
+        return new MakePaymentRequest()
+                .setTransaction(new Transaction()
+                        .setAmount(10.54f)
+                        .setCurrency("GBP")
+                        .setMerchantReference("ref"))
+                .setCustomer(new CustomerDetails().setEmail("test@example.com"))
+                .setCustomFields(customFields)
+                .setPaymentMethod(new PaymentMethod()
+                        .setBillingAddress(new BillingAddress()
+                                .setLine1("House")
+                                .setPostcode("BA1 5BG"))
+                        .setCard(new PaymentCard()
+                                .setPan(PAN)
+                                .setCv2(CV2)
+                                .setExpiryDate("0120")
+                                .setCardHolderName("Zo\u00eb")));
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.pay360.sdk.library.payment.PaymentStateMachine.Event;
+import com.pay360.sdk.library.payment.PaymentStateMachine.State;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the transition table and that only one of several racing events wins a transition.
+ * In the library's package as the state machine is internal to the session
+ */
+public class PaymentStateMachineTest extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 500;
+
+    @Test
+    public void testPaymentWithoutThreeDS() throws Exception {
+        PaymentStateMachine machine = new PaymentStateMachine();
+
+        Assert.assertTrue(machine.isIdle());
+        Assert.assertEquals(State.STATE_IDLE, machine.fire(Event.EVENT_PAYMENT_STARTED));
+        Assert.assertEquals(State.STATE_PAYMENT_WAITING_NETWORK, machine.fire(Event.EVENT_NETWORK_CONNECTED));
+        Assert.assertEquals(State.STATE_PAYMENT_WAITING_RESPONSE, machine.fire(Event.EVENT_RESPONSE_NOT_RECEIVED));
+        Assert.assertEquals(State.STATE_PAYMENT_WAITING_RESPONSE, machine.fire(Event.EVENT_GET_STATUS));
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.getState());
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.fire(Event.EVENT_SESSION_ENDED));
+        Assert.assertTrue(machine.isIdle());
+    }
+
+    @Test
+    public void testPaymentWithThreeDS() throws Exception {
+        PaymentStateMachine machine = new PaymentStateMachine();
+
+        machine.fire(Event.EVENT_PAYMENT_STARTED);
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        Assert.assertEquals(State.STATE_PAYMENT_WAITING_RESPONSE, machine.fire(Event.EVENT_3DS_REQUIRED));
+        Assert.assertEquals(State.STATE_SUSPENDED_FOR_3DS, machine.fire(Event.EVENT_3DS_COMPLETED));
+        Assert.assertEquals(State.STATE_RESUME_WAITING_NETWORK, machine.fire(Event.EVENT_NETWORK_CONNECTED));
+        Assert.assertEquals(State.STATE_RESUME_WAITING_RESPONSE, machine.getState());
+
+        // the result of 3D Secure is only accepted once
+        Assert.assertNull(machine.fire(Event.EVENT_3DS_COMPLETED));
+    }
+
+    @Test
+    public void testStatusPush() throws Exception {
+        PaymentStateMachine machine = new PaymentStateMachine();
+
+        machine.fire(Event.EVENT_PAYMENT_STARTED);
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        Assert.assertEquals(State.STATE_PAYMENT_WAITING_RESPONSE, machine.fire(Event.EVENT_STATUS_PUSH));
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.getState());
+
+        // a pushed status can't continue with 3D Secure
+        Assert.assertNull(machine.fire(Event.EVENT_3DS_REQUIRED));
+
+        // the push failed - poll
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.fire(Event.EVENT_RESPONSE_NOT_RECEIVED));
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.fire(Event.EVENT_GET_STATUS));
+    }
+
+    @Test
+    public void testRejectedEvents() throws Exception {
+        PaymentStateMachine machine = new PaymentStateMachine();
+
+        // nothing but a start applies to an idle session
+        Assert.assertNull(machine.fire(Event.EVENT_NETWORK_CONNECTED));
+        Assert.assertNull(machine.fire(Event.EVENT_GET_STATUS));
+        Assert.assertNull(machine.fire(Event.EVENT_3DS_COMPLETED));
+        Assert.assertNull(machine.fire(Event.EVENT_SESSION_TIMEOUT));
+
+        machine.fire(Event.EVENT_STATUS_STARTED);
+
+        // a session handles one operation at a time
+        Assert.assertNull(machine.fire(Event.EVENT_PAYMENT_STARTED));
+        Assert.assertNull(machine.fire(Event.EVENT_STATUS_STARTED));
+
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        // the network event sends the request once
+        Assert.assertNull(machine.fire(Event.EVENT_NETWORK_CONNECTED));
+
+        // 3D Secure doesn't continue from a status request
+        Assert.assertNull(machine.fire(Event.EVENT_3DS_REQUIRED));
+
+        Assert.assertEquals(State.STATE_STATUS_WAITING_RESPONSE, machine.fire(Event.EVENT_SESSION_TIMEOUT));
+        Assert.assertTrue(machine.isIdle());
+    }
+
+    @Test
+    public void testEveryStateEnds() throws Exception {
+        for (State state : State.values()) {
+            PaymentStateMachine machine = new PaymentStateMachine();
+
+            driveTo(machine, state);
+            Assert.assertEquals(state, machine.getState());
+
+            Assert.assertEquals(state, machine.fire(Event.EVENT_SESSION_ENDED));
+            Assert.assertTrue(machine.isIdle());
+        }
+    }
+
+    @Test
+    public void testTransitionLog() throws Exception {
+        PaymentStateMachine machine = new PaymentStateMachine();
+
+        machine.fire(Event.EVENT_PAYMENT_STARTED);
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        // rejected events are not logged
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        List<StateTransition> transitions = machine.getTransitions();
+        Assert.assertEquals(2, transitions.size());
+        Assert.assertEquals("STATE_IDLE", transitions.get(0).getFromState());
+        Assert.assertEquals("EVENT_PAYMENT_STARTED", transitions.get(0).getEvent());
+        Assert.assertEquals("STATE_PAYMENT_WAITING_RESPONSE", transitions.get(1).getToState());
+        Assert.assertTrue(transitions.get(0).getTimestampNanos() <= transitions.get(1).getTimestampNanos());
+
+        // only the most recent transitions are kept
+        for (int i = 0; i < 100; i++) {
+            machine.fire(Event.EVENT_RESPONSE_NOT_RECEIVED);
+        }
+
+        transitions = machine.getTransitions();
+        Assert.assertEquals(32, transitions.size());
+        Assert.assertEquals("EVENT_RESPONSE_NOT_RECEIVED", transitions.get(0).getEvent());
+    }
+
+    @Test
+    public void testConcurrentStart() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final PaymentStateMachine machine = new PaymentStateMachine();
+            final AtomicInteger started = new AtomicInteger();
+            final AtomicInteger threads = new AtomicInteger();
+
+            race(new Runnable() {
+                @Override
+                public void run() {
+                    Event event = threads.getAndIncrement() % 2 == 0 ? Event.EVENT_PAYMENT_STARTED :
+                                  Event.EVENT_STATUS_STARTED;
+
+                    if (machine.fire(event) != null) {
+                        started.incrementAndGet();
+                    }
+                }
+            });
+
+            // a single payment or status request claims the session
+            Assert.assertEquals(1, started.get());
+            Assert.assertFalse(machine.isIdle());
+        }
+    }
+
+    @Test
+    public void testConcurrentNetworkConnected() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final PaymentStateMachine machine = new PaymentStateMachine();
+            final AtomicInteger sent = new AtomicInteger();
+
+            machine.fire(Event.EVENT_PAYMENT_STARTED);
+
+            race(new Runnable() {
+                @Override
+                public void run() {
+                    if (machine.fire(Event.EVENT_NETWORK_CONNECTED) != null) {
+                        sent.incrementAndGet();
+                    }
+                }
+            });
+
+            // the payment is sent once
+            Assert.assertEquals(1, sent.get());
+            Assert.assertEquals(State.STATE_PAYMENT_WAITING_RESPONSE, machine.getState());
+            Assert.assertEquals(2, machine.getTransitions().size());
+        }
+    }
+
+    @Test
+    public void testConcurrentTimeoutAndThreeDS() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final PaymentStateMachine machine = new PaymentStateMachine();
+            final AtomicInteger resumed = new AtomicInteger();
+            final AtomicInteger timedOut = new AtomicInteger();
+            final AtomicInteger threads = new AtomicInteger();
+
+            machine.fire(Event.EVENT_PAYMENT_STARTED);
+            machine.fire(Event.EVENT_NETWORK_CONNECTED);
+            machine.fire(Event.EVENT_3DS_REQUIRED);
+
+            race(new Runnable() {
+                @Override
+                public void run() {
+                    if (threads.getAndIncrement() % 2 == 0) {
+                        if (machine.fire(Event.EVENT_3DS_COMPLETED) != null) {
+                            resumed.incrementAndGet();
+                        }
+                    } else if (machine.fire(Event.EVENT_SESSION_TIMEOUT) != null) {
+                        timedOut.incrementAndGet();
+                    }
+                }
+            });
+
+            // the resume is claimed at most once, and a timeout after it still ends the session once
+            Assert.assertTrue(resumed.get() <= 1);
+            Assert.assertEquals(1, timedOut.get());
+            Assert.assertTrue(machine.isIdle());
+        }
+    }
+
+    @Test
+    public void testConcurrentTransitionLog() throws Exception {
+        final PaymentStateMachine machine = new PaymentStateMachine();
+        final AtomicInteger threads = new AtomicInteger();
+        final List<StateTransition> logged = new CopyOnWriteArrayList<StateTransition>();
+
+        machine.fire(Event.EVENT_PAYMENT_STARTED);
+        machine.fire(Event.EVENT_NETWORK_CONNECTED);
+
+        race(new Runnable() {
+            @Override
+            public void run() {
+                int thread = threads.getAndIncrement();
+
+                for (int i = 0; i < ROUNDS; i++) {
+                    if (thread == 0) {
+                        // read while the log is written
+                        logged.addAll(machine.getTransitions());
+                    } else {
+                        machine.fire(thread % 2 == 0 ? Event.EVENT_RESPONSE_NOT_RECEIVED :
+                                     Event.EVENT_GET_STATUS);
+                    }
+                }
+            }
+        });
+
+        logged.addAll(machine.getTransitions());
+
+        // every entry is a single transition of the table, never parts of several
+        for (StateTransition transition : logged) {
+            PaymentStateMachine check = new PaymentStateMachine();
+            driveTo(check, State.valueOf(transition.getFromState()));
+
+            Assert.assertNotNull(check.fire(Event.valueOf(transition.getEvent())));
+            Assert.assertEquals(transition.getToState(), check.getState().name());
+        }
+    }
+
+    private static void driveTo(PaymentStateMachine machine, State state) {
+        switch (state) {
+            case STATE_IDLE:
+                break;
+            case STATE_PAYMENT_WAITING_NETWORK:
+                machine.fire(Event.EVENT_PAYMENT_STARTED);
+                break;
+            case STATE_PAYMENT_WAITING_RESPONSE:
+                driveTo(machine, State.STATE_PAYMENT_WAITING_NETWORK);
+                machine.fire(Event.EVENT_NETWORK_CONNECTED);
+                break;
+            case STATE_SUSPENDED_FOR_3DS:
+                driveTo(machine, State.STATE_PAYMENT_WAITING_RESPONSE);
+                machine.fire(Event.EVENT_3DS_REQUIRED);
+                break;
+            case STATE_RESUME_WAITING_NETWORK:
+                driveTo(machine, State.STATE_SUSPENDED_FOR_3DS);
+                machine.fire(Event.EVENT_3DS_COMPLETED);
+                break;
+            case STATE_RESUME_WAITING_RESPONSE:
+                driveTo(machine, State.STATE_RESUME_WAITING_NETWORK);
+                machine.fire(Event.EVENT_NETWORK_CONNECTED);
+                break;
+            case STATE_STATUS_WAITING_NETWORK:
+                machine.fire(Event.EVENT_STATUS_STARTED);
+                break;
+            case STATE_STATUS_WAITING_RESPONSE:
+                driveTo(machine, State.STATE_STATUS_WAITING_NETWORK);
+                machine.fire(Event.EVENT_NETWORK_CONNECTED);
+                break;
+        }
+    }
+
+    /**
+     * Run the task on several threads released at the same moment
+     */
+    private static void race(final Runnable task) throws InterruptedException {
+        final CountDownLatch ready = new CountDownLatch(THREADS);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ready.countDown();
+
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    task.run();
+                }
+            });
+            threads[i].start();
+        }
+
+        ready.await();
+        go.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
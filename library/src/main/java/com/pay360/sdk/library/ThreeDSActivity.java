@@ -8,6 +8,7 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.net.http.SslError;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.content.LocalBroadcastManager;
@@ -26,6 +27,7 @@ import com.pay360.sdk.library.utils.PackageUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.message.BasicNameValuePair;
+import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -56,6 +58,39 @@ public class ThreeDSActivity extends ActionBarActivity {
 
     private static final long TIMEOUT_JAVASCRIPT = 5000;
 
+    /**
+     * Installed in each ACS page to capture PaRes and MD from the form posted to the TermUrl,
+     * whether submitted by script or by the user, and cancel the post so the TermUrl page is
+     * never loaded. %s is the quoted TermUrl
+     *
+     * <p>The hook is installed once the page has finished loading - a WebView offers no way to run
+     * script in a page before its own. A post made while the page loads, e.g. an ACS auto-submit
+     * from inline script or onload, isn't caught and the result is read from the TermUrl page by
+     * get3DSData() instead. The hook saves the TermUrl round trip for posts made after the page
+     * has loaded, typically once the user has completed the ACS form
+     */
+    private static final String SCRIPT_TERM_URL_HOOK =
+            "(function() {" +
+            "  if (window.pay360TermUrlHook) { return; }" +
+            "  window.pay360TermUrlHook = true;" +
+            "  var termUrl = %s;" +
+            "  function capture(form) {" +
+            "    if (!form || !form.action || form.action.indexOf(termUrl) < 0) { return false; }" +
+            "    var pares = form.elements['PaRes'];" +
+            "    var md = form.elements['MD'];" +
+            "    if (!pares || !pares.value) { return false; }" +
+            "    " + JAVASCRIPT_INTERFACE + ".getData(pares.value, md ? md.value : null);" +
+            "    return true;" +
+            "  }" +
+            "  var submit = HTMLFormElement.prototype.submit;" +
+            "  HTMLFormElement.prototype.submit = function() {" +
+            "    if (!capture(this)) { submit.call(this); }" +
+            "  };" +
+            "  document.addEventListener('submit', function(event) {" +
+            "    if (capture(event.target)) { event.preventDefault(); }" +
+            "  }, true);" +
+            "})();";
+
     private WebView webView;
 
     private String acsUrl;
@@ -231,9 +266,11 @@ public class ThreeDSActivity extends ActionBarActivity {
             if (success) {
                 intent.putExtra(EXTRA_PARES, pares);
                 intent.putExtra(EXTRA_MD, md);
-                intent.putExtra(EXTRA_TRANSACTION_ID, transactionId);
             }
 
+            // always pass back the transaction so the result reaches the session that started it
+            intent.putExtra(EXTRA_TRANSACTION_ID, transactionId);
+
             intent.putExtra(EXTRA_HAS_TIMED_OUT, timeout);
             intent.putExtra(EXTRA_CANCELLED, cancelled);
             intent.putExtra(EXTRA_SUCCESS, success);
@@ -262,6 +299,18 @@ public class ThreeDSActivity extends ActionBarActivity {
         finished = true;
     }
 
+    /**
+     * Run JavaScript in the current page, without a navigation where the platform allows
+     * @param script script
+     */
+    private void evaluateJavascript(String script) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            webView.evaluateJavascript(script, null);
+        } else {
+            webView.loadUrl("javascript:" + script);
+        }
+    }
+
     private class CustomWebViewClient extends WebViewClient {
 
         public boolean shouldOverrideUrlLoading(WebView view, String url) {
@@ -299,9 +348,14 @@ public class ThreeDSActivity extends ActionBarActivity {
                 javascriptTimerHandler.postDelayed(javascriptTimeoutTask, TIMEOUT_JAVASCRIPT);
 
                 // call JS to get back pares - get3DSData calls back into WebAppInterface.getData()
-                webView.loadUrl("javascript:get3DSData();");
+                evaluateJavascript("get3DSData();");
             } else {
                 super.onPageFinished(view, url);
+
+                // capture the result as the ACS posts it - the TermUrl page above is only loaded
+                // if the post isn't caught e.g. it is made before the hook is installed, see
+                // SCRIPT_TERM_URL_HOOK
+                evaluateJavascript(String.format(SCRIPT_TERM_URL_HOOK, JSONObject.quote(termUrl)));
             }
         }
 
@@ -330,14 +384,22 @@ public class ThreeDSActivity extends ActionBarActivity {
     public class WebAppInterface {
 
         @JavascriptInterface
-        public void getData(String pares, String md) {
+        public void getData(final String pares, final String md) {
 
-            // stop timer
-            if (javascriptTimerHandler != null) {
-                javascriptTimerHandler.removeCallbacks(javascriptTimeoutTask);
-            }
+            // called on a WebView thread, from the TermUrl page or the ACS page hook
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    // stop timer
+                    if (javascriptTimerHandler != null) {
+                        javascriptTimerHandler.removeCallbacks(javascriptTimeoutTask);
+                    }
 
-            on3DSSuccess(pares, md);
+                    webView.stopLoading();
+
+                    on3DSSuccess(pares, md);
+                }
+            });
         }
     }
 }
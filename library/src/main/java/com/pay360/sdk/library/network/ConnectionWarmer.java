@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.pay360.sdk.library.log.Logger;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Opens a connection to the Pay360 server ahead of the first payment so DNS resolution, TCP
+ * connect and the TLS handshake are not paid for on the payment's critical path
+ */
+public class ConnectionWarmer {
+
+    private final OkHttpClient httpClient;
+    private final String serverUrl;
+
+    public ConnectionWarmer(OkHttpClient httpClient, String serverUrl) {
+        this.httpClient = httpClient;
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Synchronously connect to the server - DO NOT call on the UI thread
+     * @return timing and pool status of the warm connection
+     */
+    public WarmupResult warm() {
+        long start = SystemClock.elapsedRealtime();
+        boolean success = false;
+
+        // a HEAD to the base URL is enough to resolve, connect and handshake - the response
+        // status is irrelevant, once the body is closed the connection is returned to the pool
+        Request request = new Request.Builder()
+                .url(serverUrl)
+                .head()
+                .build();
+
+        try {
+            Response response = httpClient.newCall(request).execute();
+            response.body().close();
+            success = true;
+        } catch (IOException e) {
+            Log.w(Logger.TAG, "Failed to pre-warm connection", e);
+        }
+
+        long duration = SystemClock.elapsedRealtime() - start;
+
+        return new WarmupResult(success, duration, hasIdleConnection(httpClient));
+    }
+
+    /**
+     * Checks if the client's connection pool holds an idle connection ready for reuse
+     * @param httpClient client to check
+     * @return true if idle connection available
+     */
+    public static boolean hasIdleConnection(OkHttpClient httpClient) {
+        ConnectionPool pool = httpClient.getConnectionPool();
+
+        // OkHttp falls back to the default pool if none has been set on the client
+        if (pool == null) {
+            pool = ConnectionPool.getDefault();
+        }
+
+        return pool.getIdleConnectionCount() > 0;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+/**
+ * Point in time metrics of the SDK's HTTP {@link PaymentDispatcher}
+ */
+public class DispatcherMetrics {
+
+    private final int poolSize;
+    private final int maxPoolSize;
+    private final int activeCount;
+    private final int queueDepth;
+    private final long completedCount;
+
+    DispatcherMetrics(int poolSize, int maxPoolSize, int activeCount, int queueDepth,
+                      long completedCount) {
+        this.poolSize = poolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.activeCount = activeCount;
+        this.queueDepth = queueDepth;
+        this.completedCount = completedCount;
+    }
+
+    /**
+     * Number of threads currently in the pool
+     * @return pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Upper bound on the number of threads
+     * @return maximum pool size
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Approximate number of threads executing a request
+     * @return active threads
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Number of requests waiting for a thread
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Approximate number of requests completed since the dispatcher was created
+     * @return completed requests
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "pool=" + poolSize + "/" + maxPoolSize + " active=" + activeCount +
+                " queued=" + queueDepth + " completed=" + completedCount;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import com.pay360.sdk.library.payment.MakePaymentRequest;
+import com.pay360.sdk.library.payment.MakePaymentResponse;
+import com.pay360.sdk.library.payment.ThreeDSResumeRequest;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import okio.BufferedSink;
+import retrofit.ErrorHandler;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * {@link Pay360Service} calling OkHttp directly rather than through the dynamic proxy Retrofit's
+ * RestAdapter creates, so the first payment doesn't pay for the proxy and annotation parsing.
+ *
+ * <p>Requests and responses are the same as the annotated interface produces through Retrofit.
+ * Each call runs on the executor when subscribed, the bodies are encoded and decoded by the
+ * converter and failures are emitted as a {@link RetrofitError} passed through the error handler.
+ * Unsubscribing cancels the call. Request bodies, which may hold card details, are wiped once the
+ * call has completed.
+ */
+public class OkHttpPay360Service implements Pay360Service {
+
+    private static final String PATH_TRANSACTIONS = "/acceptor/rest/mobile/transactions/";
+
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_OPERATION_ID  = "AP-Operation-ID";
+
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final Converter converter;
+    private final ErrorHandler errorHandler;
+    private final String serverUrl;
+    private final Executor executor;
+
+    public OkHttpPay360Service(OkHttpClient httpClient, Converter converter, ErrorHandler errorHandler,
+                               String serverUrl, Executor executor) {
+        this.httpClient = httpClient;
+        this.converter = converter;
+        this.errorHandler = errorHandler;
+        this.executor = executor;
+
+        // as Retrofit, paths are appended to the server URL
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+    }
+
+    @Override
+    public Observable<MakePaymentResponse> makePayment(final MakePaymentRequest request,
+                                                       final String token,
+                                                       final String operationId,
+                                                       final String installationId) {
+        return call(new Callable<Request>() {
+            @Override
+            public Request call() throws Exception {
+                Request.Builder builder = new Request.Builder()
+                        .url(serverUrl + PATH_TRANSACTIONS + encodePath(installationId) + "/payment")
+                        .post(toBody(request));
+
+                header(builder, HEADER_AUTHORIZATION, token);
+                header(builder, HEADER_OPERATION_ID, operationId);
+
+                return builder.build();
+            }
+        });
+    }
+
+    @Override
+    public Observable<MakePaymentResponse> paymentStatus(final String token,
+                                                         final String installationId,
+                                                         final String operationId) {
+        return call(new Callable<Request>() {
+            @Override
+            public Request call() throws Exception {
+                Request.Builder builder = new Request.Builder()
+                        .url(serverUrl + PATH_TRANSACTIONS + encodePath(installationId) + "/opref/" +
+                             encodePath(operationId));
+
+                header(builder, HEADER_AUTHORIZATION, token);
+
+                return builder.build();
+            }
+        });
+    }
+
+    @Override
+    public Observable<MakePaymentResponse> resume3DS(final ThreeDSResumeRequest request,
+                                                     final String token,
+                                                     final String operationId,
+                                                     final String installationId,
+                                                     final String transactionId) {
+        return call(new Callable<Request>() {
+            @Override
+            public Request call() throws Exception {
+                Request.Builder builder = new Request.Builder()
+                        .url(serverUrl + PATH_TRANSACTIONS + encodePath(installationId) + "/" +
+                             encodePath(transactionId) + "/resume")
+                        .post(toBody(request));
+
+                header(builder, HEADER_AUTHORIZATION, token);
+                header(builder, HEADER_OPERATION_ID, operationId);
+
+                return builder.build();
+            }
+        });
+    }
+
+    /**
+     * Observable which builds and executes the request on the executor when subscribed
+     * @param requestFactory builds the request, on the executor so bodies aren't encoded on the
+     *                       caller's thread
+     * @return observable emitting the response then completing
+     */
+    private Observable<MakePaymentResponse> call(final Callable<Request> requestFactory) {
+        return Observable.create(new Observable.OnSubscribe<MakePaymentResponse>() {
+            @Override
+            public void call(final Subscriber<? super MakePaymentResponse> subscriber) {
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        invoke(requestFactory, subscriber);
+                    }
+                });
+            }
+        });
+    }
+
+    private void invoke(Callable<Request> requestFactory,
+                        Subscriber<? super MakePaymentResponse> subscriber) {
+        if (subscriber.isUnsubscribed()) {
+            return;
+        }
+
+        try {
+            MakePaymentResponse response = execute(requestFactory, subscriber);
+
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(response);
+                subscriber.onCompleted();
+            }
+        } catch (RetrofitError e) {
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onError(errorHandler.handleError(e));
+            }
+        }
+    }
+
+    private MakePaymentResponse execute(Callable<Request> requestFactory, Subscriber<?> subscriber) {
+        String url = serverUrl;
+        Request request = null;
+
+        try {
+            request = requestFactory.call();
+            url = request.urlString();
+
+            final Call call = httpClient.newCall(request);
+
+            // cancelling unblocks the executor thread e.g. when the caller times out
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    call.cancel();
+                }
+            }));
+
+            return read(url, call.execute());
+        } catch (RetrofitError e) {
+            throw e;
+        } catch (ConversionException e) {
+            // the request body couldn't be encoded so there is no response
+            throw RetrofitError.conversionError(url, null, converter, MakePaymentResponse.class, e);
+        } catch (IOException e) {
+            throw RetrofitError.networkError(url, e);
+        } catch (Throwable t) {
+            throw RetrofitError.unexpectedError(url, t);
+        } finally {
+            // the body has been sent - OkHttp doesn't retry so it is never written again
+            if (request != null && request.body() instanceof WipeableBody) {
+                ((WipeableBody) request.body()).wipe();
+            }
+        }
+    }
+
+    private MakePaymentResponse read(String url, Response response) throws IOException {
+        ResponseBody body = response.body();
+        int status = response.code();
+
+        if (status < 200 || status >= 300) {
+            // buffered as Retrofit does so the body can be decoded once the call has completed
+            TypedByteArray errorBody = new TypedByteArray(mimeType(body), body.bytes());
+
+            throw RetrofitError.httpError(url, toRetrofitResponse(url, response, errorBody), converter,
+                    MakePaymentResponse.class);
+        }
+
+        BodyInput input = new BodyInput(body);
+
+        try {
+            // as Retrofit, an empty body is a null response
+            if (body.contentLength() == 0) {
+                return null;
+            }
+
+            return (MakePaymentResponse) converter.fromBody(input, MakePaymentResponse.class);
+        } catch (ConversionException e) {
+            // the body couldn't be read as opposed to decoded
+            if (input.exception != null) {
+                throw input.exception;
+            }
+
+            throw RetrofitError.conversionError(url, toRetrofitResponse(url, response, null), converter,
+                    MakePaymentResponse.class, e);
+        } finally {
+            body.close();
+        }
+    }
+
+    private RequestBody toBody(Object object) throws IOException, ConversionException {
+        TypedOutput output;
+
+        try {
+            output = converter.toBody(object);
+        } catch (RuntimeException e) {
+            // Converter.toBody can't throw a checked exception - reported as the response would be
+            throw new ConversionException(e);
+        }
+
+        byte[] bytes;
+
+        if (output instanceof TypedByteArray) {
+            bytes = ((TypedByteArray) output).getBytes();
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            output.writeTo(out);
+            bytes = out.toByteArray();
+        }
+
+        // the Content-Type of the service overrides the converter's
+        return new WipeableBody(bytes);
+    }
+
+    private static void header(Request.Builder builder, String name, String value) {
+        // as Retrofit, null headers are not sent
+        if (value != null) {
+            builder.header(name, value);
+        }
+    }
+
+    static String encodePath(String value) throws IOException {
+        if (value == null) {
+            throw new IllegalArgumentException("Path parameter value must not be null");
+        }
+
+        // as Retrofit's path parameter encoding
+        return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+    }
+
+    private static String mimeType(ResponseBody body) {
+        MediaType contentType = body.contentType();
+        return contentType != null ? contentType.toString() : null;
+    }
+
+    private static retrofit.client.Response toRetrofitResponse(String url, Response response,
+                                                               TypedInput body) {
+        Headers headers = response.headers();
+        List<Header> retrofitHeaders = new ArrayList<Header>(headers.size());
+
+        for (int i = 0; i < headers.size(); i++) {
+            retrofitHeaders.add(new Header(headers.name(i), headers.value(i)));
+        }
+
+        return new retrofit.client.Response(url, response.code(), response.message(), retrofitHeaders,
+                body);
+    }
+
+    /**
+     * Request body which can be overwritten once sent
+     */
+    private static class WipeableBody extends RequestBody {
+
+        private final byte[] bytes;
+
+        private WipeableBody(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE_JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.write(bytes);
+        }
+
+        private void wipe() {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Response body streamed to the converter, recording a failure to read it so it is reported
+     * as a network error rather than a conversion error
+     */
+    private static class BodyInput implements TypedInput {
+
+        private final ResponseBody body;
+
+        private IOException exception;
+
+        private BodyInput(ResponseBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public String mimeType() {
+            return OkHttpPay360Service.mimeType(body);
+        }
+
+        @Override
+        public long length() {
+            try {
+                return body.contentLength();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new FilterInputStream(body.byteStream()) {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        return super.read();
+                    } catch (IOException e) {
+                        exception = e;
+                        throw e;
+                    }
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        return super.read(buffer, offset, length);
+                    } catch (IOException e) {
+                        exception = e;
+                        throw e;
+                    }
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    try {
+                        return super.skip(count);
+                    } catch (IOException e) {
+                        exception = e;
+                        throw e;
+                    }
+                }
+
+                @Override
+                public int available() throws IOException {
+                    try {
+                        return super.available();
+                    } catch (IOException e) {
+                        exception = e;
+                        throw e;
+                    }
+                }
+            };
+        }
+    }
+}
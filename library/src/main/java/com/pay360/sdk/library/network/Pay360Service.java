@@ -17,7 +17,7 @@ import retrofit.http.Path;
 import rx.Observable;
 
 /**
- * Pay360 Retrofit REST service
+ * Pay360 Retrofit REST service, implemented without Retrofit's proxy by {@link OkHttpPay360Service}
  */
 public interface Pay360Service {
 
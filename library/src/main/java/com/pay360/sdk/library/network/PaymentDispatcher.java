@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SDK wide executors, shared by every Pay360 service so changing the server URL never leaks
+ * threads. Each kind of work has its own executor so long lived or background work never holds a
+ * thread a payment is waiting for. All threads are named daemon threads which exit after
+ * {@link #KEEP_ALIVE_SECONDS} idle.
+ *
+ * <ul>
+ *     <li>{@link #getExecutor()} - payment, resume and status requests. At most
+ *     {@link #MAX_THREADS} requests are in flight at once, further requests queue until one
+ *     completes or times out. The queue is unbounded as every task is a request a payment session
+ *     is waiting on, so rejecting one would lose a payment or its outcome.</li>
+ *     <li>{@link #getStreamExecutor()} - status push streams, each held open for up to the push
+ *     timeout. A thread per open stream, so the number of threads follows the number of sessions
+ *     waiting on a push.</li>
+ *     <li>{@link #getBackgroundExecutor()} - a single thread running housekeeping in order e.g.
+ *     opening the operation journal, reconciling a previous run and warming connections.</li>
+ * </ul>
+ */
+public class PaymentDispatcher {
+
+    private static final int MAX_THREADS            = 4;
+    private static final int KEEP_ALIVE_SECONDS     = 30;
+
+    private static final String THREAD_NAME_PREFIX              = "Pay360-Http-";
+    private static final String STREAM_THREAD_NAME_PREFIX       = "Pay360-Stream-";
+    private static final String BACKGROUND_THREAD_NAME_PREFIX   = "Pay360-Background-";
+
+    private static PaymentDispatcher instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor streamExecutor;
+    private final ThreadPoolExecutor backgroundExecutor;
+
+    public synchronized static PaymentDispatcher getInstance() {
+        if (instance == null) {
+            instance = new PaymentDispatcher();
+        }
+        return instance;
+    }
+
+    private PaymentDispatcher() {
+        executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(THREAD_NAME_PREFIX));
+
+        // don't hold threads while the SDK is unused
+        executor.allowCoreThreadTimeOut(true);
+
+        // hands each stream straight to a thread, never queues
+        streamExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new DaemonThreadFactory(STREAM_THREAD_NAME_PREFIX));
+
+        backgroundExecutor = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(BACKGROUND_THREAD_NAME_PREFIX));
+
+        backgroundExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executor for HTTP requests and their callbacks
+     * @return shared executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Executor for long lived streams e.g. status push, which would otherwise hold a request
+     * thread for as long as they are open
+     * @return shared executor
+     */
+    public Executor getStreamExecutor() {
+        return streamExecutor;
+    }
+
+    /**
+     * Executor for housekeeping off the main thread, tasks run one at a time in submission order
+     * @return shared executor
+     */
+    public Executor getBackgroundExecutor() {
+        return backgroundExecutor;
+    }
+
+    /**
+     * Snapshot of the dispatcher's pool size and queue depth
+     * @return metrics
+     */
+    public DispatcherMetrics getMetrics() {
+        return new DispatcherMetrics(executor.getPoolSize(),
+                MAX_THREADS,
+                executor.getActiveCount(),
+                executor.getQueue().size(),
+                executor.getCompletedTaskCount());
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+
+            // never keep the app process alive
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
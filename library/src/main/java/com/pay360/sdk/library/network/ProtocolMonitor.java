@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enables HTTP/2 for a client and records the protocol each request actually went over.
+ *
+ * <p>HTTP/2 is negotiated over ALPN during the TLS handshake so it is only used when both the
+ * server and the platform support it (Android 5.0+). Otherwise, and for cleartext URLs, requests
+ * fall back to HTTP/1.1. Over HTTP/2 concurrent payment sessions multiplex onto one connection.
+ */
+public class ProtocolMonitor implements Interceptor {
+
+    // SPDY is deliberately left out - HTTP/2 or HTTP/1.1 only
+    private static final List<Protocol> PROTOCOLS = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+
+    private final AtomicInteger http2Requests = new AtomicInteger();
+    private final AtomicInteger http1Requests = new AtomicInteger();
+
+    private volatile Protocol lastProtocol;
+
+    /**
+     * Offer HTTP/2 with HTTP/1.1 fallback and monitor the client's requests
+     * @param client client to configure
+     */
+    public void apply(OkHttpClient client) {
+        client.setProtocols(PROTOCOLS);
+        client.networkInterceptors().add(this);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Connection connection = chain.connection();
+        Protocol protocol = connection != null ? connection.getProtocol() : Protocol.HTTP_1_1;
+
+        if (protocol == Protocol.HTTP_2) {
+            http2Requests.incrementAndGet();
+        } else {
+            http1Requests.incrementAndGet();
+        }
+
+        lastProtocol = protocol;
+
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * Protocol of the most recent request
+     * @return protocol or null if no request has been made
+     */
+    public Protocol getLastProtocol() {
+        return lastProtocol;
+    }
+
+    /**
+     * Number of requests sent over HTTP/2
+     * @return request count
+     */
+    public int getHttp2RequestCount() {
+        return http2Requests.get();
+    }
+
+    /**
+     * Number of requests sent over HTTP/1.x
+     * @return request count
+     */
+    public int getHttp1RequestCount() {
+        return http1Requests.get();
+    }
+}
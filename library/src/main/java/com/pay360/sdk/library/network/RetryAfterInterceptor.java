@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Records the Retry-After header of Pay360 responses, e.g. on a 503 or while a payment is
+ * processing, against the operation the request was for. The payment session takes the hint when
+ * scheduling its next status request. At most {@link #MAX_OPERATIONS} hints are held.
+ */
+public class RetryAfterInterceptor implements Interceptor {
+
+    private static final String HEADER_RETRY_AFTER  = "Retry-After";
+    private static final String HEADER_OPERATION_ID = "AP-Operation-ID";
+
+    // status requests carry the operation id in the path rather than a header
+    private static final String PATH_OPERATION_REF  = "opref";
+
+    private static final long MAX_DELAY = 30000L; // 30s
+
+    // hints nobody takes, e.g. for a batch status lookup or a response arriving after its session
+    // ended, are evicted oldest first
+    private static final int MAX_OPERATIONS = 32;
+
+    private final Map<String, Long> delays = new LinkedHashMap<String, Long>(MAX_OPERATIONS, 0.75f) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_OPERATIONS;
+        }
+    };
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        String retryAfter = response.header(HEADER_RETRY_AFTER);
+
+        if (retryAfter != null) {
+            String operationId = getOperationId(request);
+            long delay = parseRetryAfter(retryAfter, System.currentTimeMillis());
+
+            if (operationId != null && delay >= 0) {
+                synchronized (delays) {
+                    delays.put(operationId, delay);
+                }
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Take the delay suggested by the server's last response for the operation
+     * @param operationId operation identifier
+     * @return delay in ms or -1 if the server didn't suggest one
+     */
+    public long takeDelayMillis(String operationId) {
+        if (operationId == null) {
+            return -1;
+        }
+
+        Long delay;
+
+        synchronized (delays) {
+            delay = delays.remove(operationId);
+        }
+
+        return delay != null ? delay : -1;
+    }
+
+    /**
+     * Parse a Retry-After value, either delay seconds or an HTTP date
+     * @param value header value
+     * @param nowMillis current time for HTTP dates
+     * @return delay in ms capped at 30s, or -1 if the value is invalid
+     */
+    public static long parseRetryAfter(String value, long nowMillis) {
+        value = value.trim();
+
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : Math.min(MAX_DELAY, seconds * 1000);
+        } catch (NumberFormatException e) {
+            // not delay seconds, try a date
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        try {
+            Date date = format.parse(value);
+            return Math.min(MAX_DELAY, Math.max(0, date.getTime() - nowMillis));
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static String getOperationId(Request request) {
+        String operationId = request.header(HEADER_OPERATION_ID);
+
+        if (operationId == null) {
+            String[] segments = request.url().getPath().split("/");
+
+            for (int i = 0; i < segments.length - 1; i++) {
+                if (PATH_OPERATION_REF.equals(segments[i])) {
+                    operationId = segments[i + 1];
+                    break;
+                }
+            }
+        }
+
+        return operationId;
+    }
+}
@@ -19,13 +19,23 @@ import javax.net.ssl.X509TrustManager;
 public class SelfSignedSocketFactory {
 
     public SSLSocketFactory build() throws NoSuchAlgorithmException, KeyManagementException {
+        return buildContext().getSocketFactory();
+    }
+
+    /**
+     * Context for the socket factory e.g. to configure its session cache first
+     * @return SSL context accepting self signed certificates
+     * @throws NoSuchAlgorithmException
+     * @throws KeyManagementException
+     */
+    SSLContext buildContext() throws NoSuchAlgorithmException, KeyManagementException {
         TrustManager[] myTrustManagerArray = new TrustManager[]{new TrustEveryoneManager()};
 
         SSLContext sc = SSLContext.getInstance("SSL");
 
         sc.init(null, myTrustManagerArray, new java.security.SecureRandom());
 
-        return sc.getSocketFactory();
+        return sc;
     }
 
     /**
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import com.pay360.sdk.library.payment.MakePaymentResponse;
+import com.pay360.sdk.library.payment.PaymentCodec;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSource;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Push channel for the status of a payment. Opens a Server-Sent Events stream for the operation
+ * and emits the outcome as soon as the server has it, rather than polling the status endpoint.
+ *
+ * <p>Each event's data is the same JSON as the status endpoint returns. Events for a payment
+ * which is still processing are skipped. The observable errors if the server doesn't support the
+ * channel, the stream closes before the outcome is known or nothing, not even a keep alive
+ * comment, arrives for {@link #DEFAULT_EVENT_TIMEOUT} - so the caller can fall back to polling.
+ *
+ * <p>Each open stream blocks a thread of the executor, so it shouldn't be the executor requests
+ * run on, see {@link PaymentDispatcher#getStreamExecutor()}.
+ */
+public class StatusEventSource {
+
+    private static final String PATH_TRANSACTIONS = "/acceptor/rest/mobile/transactions/";
+
+    private static final String CONTENT_TYPE_EVENT_STREAM = "text/event-stream";
+    private static final String FIELD_DATA = "data:";
+
+    public static final long DEFAULT_EVENT_TIMEOUT = 15000L; // 15s
+
+    private final OkHttpClient httpClient;
+    private final PaymentCodec codec;
+    private final String serverUrl;
+    private final Executor executor;
+    private final long eventTimeoutMillis;
+
+    public StatusEventSource(OkHttpClient httpClient, PaymentCodec codec, String serverUrl, Executor executor) {
+        this(httpClient, codec, serverUrl, executor, DEFAULT_EVENT_TIMEOUT);
+    }
+
+    /**
+     * @param eventTimeoutMillis longest wait for the next line of the stream, the client's read
+     *                           timeout is meant for single responses rather than a stream
+     */
+    public StatusEventSource(OkHttpClient httpClient, PaymentCodec codec, String serverUrl, Executor executor,
+                             long eventTimeoutMillis) {
+        this.httpClient = httpClient;
+        this.codec = codec;
+        this.serverUrl = serverUrl;
+        this.executor = executor;
+        this.eventTimeoutMillis = eventTimeoutMillis;
+    }
+
+    /**
+     * Observe the outcome of an operation. The stream is closed when unsubscribed
+     * @param token authorisation header value
+     * @param installationId installation id
+     * @param operationId operation id
+     * @return observable emitting the outcome then completing
+     */
+    public Observable<MakePaymentResponse> observeOutcome(final String token,
+                                                          final String installationId,
+                                                          final String operationId) {
+
+        return Observable.create(new Observable.OnSubscribe<MakePaymentResponse>() {
+            @Override
+            public void call(final Subscriber<? super MakePaymentResponse> subscriber) {
+                Request request;
+
+                try {
+                    // path parameters encoded as the status endpoint's
+                    request = new Request.Builder()
+                            .url(serverUrl + PATH_TRANSACTIONS +
+                                 OkHttpPay360Service.encodePath(installationId) + "/opref/" +
+                                 OkHttpPay360Service.encodePath(operationId) + "/events")
+                            .header("Authorization", token)
+                            .header("Accept", CONTENT_TYPE_EVENT_STREAM)
+                            .build();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                    return;
+                }
+
+                final Call call = httpClient.newCall(request);
+
+                // closing the stream unblocks the reader
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        call.cancel();
+                    }
+                }));
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        read(call, subscriber);
+                    }
+                });
+            }
+        });
+    }
+
+    private void read(Call call, Subscriber<? super MakePaymentResponse> subscriber) {
+        Response response = null;
+
+        try {
+            response = call.execute();
+
+            if (!response.isSuccessful()) {
+                throw new IOException("Status channel unavailable, HTTP " + response.code());
+            }
+
+            BufferedSource source = response.body().source();
+
+            // applies to each read - a stream held open without sending anything is a failure
+            source.timeout().timeout(eventTimeoutMillis, TimeUnit.MILLISECONDS);
+
+            MakePaymentResponse outcome = readOutcome(source);
+
+            if (outcome == null) {
+                throw new IOException("Status channel closed before outcome");
+            }
+
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(outcome);
+                subscriber.onCompleted();
+            }
+        } catch (Exception e) {
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onError(e);
+            }
+        } finally {
+            if (response != null) {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Read events until one carries the final outcome
+     * @param source event stream
+     * @return outcome or null if the stream ended first
+     * @throws IOException
+     */
+    private MakePaymentResponse readOutcome(BufferedSource source) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+
+        while ((line = source.readUtf8Line()) != null) {
+
+            if (line.length() == 0) {
+                // blank line dispatches the event
+                if (data.length() > 0) {
+                    MakePaymentResponse response = codec.read(new StringReader(data.toString()));
+
+                    if (response != null && !response.isProcessing()) {
+                        return response;
+                    }
+
+                    data.setLength(0);
+                }
+            } else if (line.startsWith(FIELD_DATA)) {
+                // multi line data is joined with new lines
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(FIELD_DATA.length()).trim());
+            }
+
+            // comments, ids, event types and retry fields are not used
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+import android.util.Log;
+
+import com.pay360.sdk.library.log.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * TLS session cache persisted to app private storage so the first payment after the app starts
+ * can resume the session from a previous launch with an abbreviated handshake rather than a full
+ * one. Sessions are written by the platform as handshakes complete and read back on demand.
+ *
+ * <p>The persistent cache is installed through the public
+ * {@link SSLCertificateSocketFactory#getDefault(int, SSLSessionCache)}. That factory checks the
+ * hostname as it creates a socket for a host, which completes the handshake before OkHttp
+ * configures the socket, so those connections use the platform's TLS settings. The factory for
+ * self signed certificates never starts the handshake itself and caches sessions in memory only.
+ *
+ * <p>Each handshake is recorded as resumed or full. A handshake is resumed if its session id is
+ * one a previous handshake established, the ids are saved with the sessions so a session from a
+ * previous launch is recognised
+ */
+public class TlsSessionCache {
+
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000; // 10s
+
+    private static final String SHARED_PREFERENCE_NAME = "ppTlsSessions";
+    private static final String PREFERENCE_SESSION_IDS = "sessionIds";
+
+    // more than the sessions the SDK's few hosts keep at once
+    private static final int MAX_SESSION_IDS = 32;
+
+    private final Context context;
+    private final SSLSessionCache sessionCache;
+
+    // ids of the sessions established by handshakes, loaded on the first handshake
+    private Set<String> sessionIds;
+
+    private SSLSocketFactory socketFactory;
+    private SSLSocketFactory selfSignedSocketFactory;
+
+    private final AtomicInteger resumedHandshakes = new AtomicInteger();
+    private final AtomicInteger fullHandshakes = new AtomicInteger();
+
+    private volatile boolean lastHandshakeResumed;
+
+    public TlsSessionCache(Context context) {
+        this.context = context.getApplicationContext();
+
+        SSLSessionCache cache = null;
+
+        try {
+            cache = new SSLSessionCache(context.getApplicationContext());
+        } catch (RuntimeException e) {
+            // platform without a persistent session cache - sessions are only cached in memory
+            Log.w(Logger.TAG, "TLS session cache unavailable", e);
+        }
+
+        this.sessionCache = cache;
+    }
+
+    /**
+     * Socket factory which resumes cached sessions
+     * @param allowSelfSigned accept self signed certificates e.g. for custom URLs
+     * @return socket factory
+     * @throws NoSuchAlgorithmException
+     * @throws KeyManagementException
+     */
+    public synchronized SSLSocketFactory getSocketFactory(boolean allowSelfSigned)
+            throws NoSuchAlgorithmException, KeyManagementException {
+
+        if (allowSelfSigned) {
+            if (selfSignedSocketFactory == null) {
+                selfSignedSocketFactory = createSocketFactory(true);
+            }
+            return selfSignedSocketFactory;
+        }
+
+        if (socketFactory == null) {
+            socketFactory = createSocketFactory(false);
+        }
+        return socketFactory;
+    }
+
+    private SSLSocketFactory createSocketFactory(boolean allowSelfSigned)
+            throws NoSuchAlgorithmException, KeyManagementException {
+
+        if (allowSelfSigned) {
+            SSLContext sslContext = new SelfSignedSocketFactory().buildContext();
+            return new InstrumentedSocketFactory(sslContext.getSocketFactory(), false);
+        }
+
+        // verifies certificates and hostnames, with the persistent cache if there is one
+        return new InstrumentedSocketFactory(
+                SSLCertificateSocketFactory.getDefault(HANDSHAKE_TIMEOUT_MILLIS, sessionCache), true);
+    }
+
+    /**
+     * Number of handshakes which resumed a cached session
+     * @return handshake count
+     */
+    public int getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Number of full handshakes
+     * @return handshake count
+     */
+    public int getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Whether the most recent handshake resumed a cached session
+     * @return true if resumed, false if a full handshake or no handshake has completed
+     */
+    public boolean isLastHandshakeResumed() {
+        return lastHandshakeResumed;
+    }
+
+    private void onHandshakeCompleted(SSLSession session) {
+        boolean resumed = !addSessionId(toHex(session.getId()));
+
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+
+        lastHandshakeResumed = resumed;
+    }
+
+    /**
+     * Record the id of a session
+     * @param id session id
+     * @return true if the id is new, false if a previous handshake established the session
+     */
+    private synchronized boolean addSessionId(String id) {
+        SharedPreferences preferences = context.getSharedPreferences(SHARED_PREFERENCE_NAME,
+                Context.MODE_PRIVATE);
+
+        if (sessionIds == null) {
+            sessionIds = new HashSet<String>(preferences.getStringSet(PREFERENCE_SESSION_IDS,
+                    new HashSet<String>()));
+        }
+
+        // a session without an id can't be resumed
+        if (id.length() == 0) {
+            return true;
+        }
+
+        if (sessionIds.contains(id)) {
+            return false;
+        }
+
+        // the saved ids are unordered so any is dropped - sessions expire long before 32 are made
+        if (sessionIds.size() >= MAX_SESSION_IDS) {
+            Iterator<String> iterator = sessionIds.iterator();
+            iterator.next();
+            iterator.remove();
+        }
+
+        sessionIds.add(id);
+        preferences.edit().putStringSet(PREFERENCE_SESSION_IDS, new HashSet<String>(sessionIds)).apply();
+
+        return true;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Passes sockets through unchanged, so platform features such as ALPN still apply, and
+     * records their handshakes. A delegate which doesn't handshake in createSocket has the
+     * listener registered before the handshake starts, one which does is recorded straight away
+     */
+    private class InstrumentedSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+
+        // the delegate verifies the hostname, and so handshakes, when given one
+        private final boolean verifiesHostname;
+
+        private InstrumentedSocketFactory(SSLSocketFactory delegate, boolean verifiesHostname) {
+            this.delegate = delegate;
+            this.verifiesHostname = verifiesHostname;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException {
+            return instrument(delegate.createSocket(socket, host, port, autoClose), verifiesHostname);
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return instrument(delegate.createSocket(), false);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return instrument(delegate.createSocket(host, port), verifiesHostname);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return instrument(delegate.createSocket(host, port, localHost, localPort), verifiesHostname);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return instrument(delegate.createSocket(host, port), false);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            return instrument(delegate.createSocket(address, port, localAddress, localPort), false);
+        }
+
+        private Socket instrument(Socket socket, boolean handshaken) {
+            if (socket instanceof SSLSocket) {
+                if (handshaken) {
+                    onHandshakeCompleted(((SSLSocket) socket).getSession());
+                } else {
+                    ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                        @Override
+                        public void handshakeCompleted(HandshakeCompletedEvent event) {
+                            onHandshakeCompleted(event.getSession());
+                        }
+                    });
+                }
+            }
+
+            return socket;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.network;
+
+/**
+ * Outcome of pre-warming the connection to the Pay360 server
+ */
+public class WarmupResult {
+
+    private final boolean success;
+    private final long durationMillis;
+    private final boolean connectionPooled;
+
+    WarmupResult(boolean success, long durationMillis, boolean connectionPooled) {
+        this.success = success;
+        this.durationMillis = durationMillis;
+        this.connectionPooled = connectionPooled;
+    }
+
+    /**
+     * Whether DNS resolution, TCP connect and TLS handshake completed
+     * @return true if the server was reached
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Time taken to resolve, connect and handshake
+     * @return duration in ms
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Whether the warm connection was returned to the connection pool for reuse by the payment
+     * @return true if an idle connection is available in the pool
+     */
+    public boolean isConnectionPooled() {
+        return connectionPooled;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+/**
+ * Delay before retrying the status of a payment whose outcome is not yet known e.g. following a
+ * timeout, network error or while the payment is processing. Set with
+ * {@link PaymentManager#setBackoffPolicy(BackoffPolicy)}.
+ *
+ * <p>A delay suggested by the server through a Retry-After header always takes precedence over
+ * the policy. Implementations must be thread safe as a policy is shared by all sessions.
+ */
+public interface BackoffPolicy {
+
+    /**
+     * Get the delay before the next status request
+     * @param retry number of retries so far, 0 for the first retry
+     * @param previousDelayMillis delay before the previous retry, 0 for the first retry
+     * @return delay in ms
+     */
+    long getDelayMillis(int retry, long previousDelayMillis);
+}
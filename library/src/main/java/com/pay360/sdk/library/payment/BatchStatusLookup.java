@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.pay360.sdk.library.network.Pay360Service;
+import com.pay360.sdk.library.security.Credentials;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observer;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * Gets the status of several operations e.g. those left unresolved by a crash or connectivity
+ * outage. Duplicate operation ids are looked up once and at most
+ * {@link #MAX_CONCURRENT_REQUESTS} status requests are in flight at a time. Results are returned
+ * on the UI thread as each arrives, and never before {@link PaymentManager#getTransactionStatuses}
+ * has returned, even if there is nothing to look up.
+ *
+ * <p>Start with {@link PaymentManager#getTransactionStatuses(Collection, PaymentManager.TransactionStatusCallback)}
+ */
+public class BatchStatusLookup {
+
+    // Pay360 has no batch status endpoint so coalesce into a bounded number of single lookups
+    private static final int MAX_CONCURRENT_REQUESTS    = 4;
+
+    private static final int TIMEOUT_RESPONSE_STATUS    = 5; // 5s
+
+    private final Pay360Service service;
+    private final Credentials credentials;
+    private final PaymentManager.TransactionStatusCallback callback;
+    private final Queue<String> pending;
+    private final CompositeSubscription subscriptions = new CompositeSubscription();
+
+    private int inFlight;
+    private boolean cancelled;
+
+    BatchStatusLookup(Pay360Service service, Credentials credentials,
+                      Collection<String> operationIds,
+                      PaymentManager.TransactionStatusCallback callback) {
+        this.service = service;
+        this.credentials = credentials;
+        this.callback = callback;
+        this.pending = new ArrayDeque<String>(new LinkedHashSet<String>(operationIds));
+    }
+
+    synchronized void start() {
+        if (pending.isEmpty()) {
+            // nothing to look up - still complete on the UI thread, after the caller has the lookup
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    onEmpty();
+                }
+            });
+            return;
+        }
+
+        while (inFlight < MAX_CONCURRENT_REQUESTS && !pending.isEmpty()) {
+            next();
+        }
+    }
+
+    /**
+     * Stop the lookup - no further results are returned
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        pending.clear();
+        subscriptions.unsubscribe();
+    }
+
+    /**
+     * Number of operations not yet looked up or awaiting a response
+     * @return remaining operations
+     */
+    public synchronized int getRemainingCount() {
+        return pending.size() + inFlight;
+    }
+
+    private void next() {
+        final String operationId = pending.poll();
+
+        inFlight++;
+
+        subscriptions.add(service.paymentStatus("Bearer " + credentials.getToken(),
+                credentials.getInstallationId(), operationId)
+                .timeout(TIMEOUT_RESPONSE_STATUS, TimeUnit.SECONDS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new StatusObserver(operationId)));
+    }
+
+    private synchronized void onEmpty() {
+        if (!cancelled) {
+            callback.statusLookupCompleted();
+        }
+    }
+
+    private synchronized void onDone() {
+        inFlight--;
+
+        if (cancelled) {
+            return;
+        }
+
+        if (!pending.isEmpty()) {
+            next();
+        } else if (inFlight == 0) {
+            callback.statusLookupCompleted();
+        }
+    }
+
+    private class StatusObserver implements Observer<MakePaymentResponse> {
+
+        private final String operationId;
+
+        private StatusObserver(String operationId) {
+            this.operationId = operationId;
+        }
+
+        @Override
+        public void onNext(MakePaymentResponse response) {
+            PaymentOutcome outcome = PaymentOutcome.fromStatusResponse(response);
+
+            if (outcome == null) {
+                // still processing - as a session whose polling ends without an outcome
+                PaymentError error = new PaymentError();
+                error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
+                error.setReasonMessage(response.getReasonMessage());
+
+                callback.statusFailed(operationId, error);
+            } else if (outcome.isSuccessful()) {
+                callback.statusSucceeded(operationId, outcome.getSuccess());
+            } else {
+                callback.statusFailed(operationId, outcome.getError());
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            PaymentError error = null;
+
+            // e.g. transaction not found - the body was decoded on the I/O thread
+            MakePaymentResponse response = ErrorResponseDecoder.getResponse(e);
+
+            if (response != null) {
+                error = PaymentError.fromResponse(response);
+            }
+
+            // couldn't get the status - outcome unknown
+            if (error == null) {
+                error = new PaymentError();
+                error.setReasonCode(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING);
+            }
+
+            callback.statusFailed(operationId, error);
+
+            onDone();
+        }
+
+        @Override
+        public void onCompleted() {
+            onDone();
+        }
+    }
+}
@@ -4,7 +4,13 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 /**
  * Optional payment billing address
@@ -115,4 +121,65 @@ public class BillingAddress {
         this.countryCode = countryCode;
         return this;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<BillingAddress> GSON_ADAPTER = new TypeAdapter<BillingAddress>() {
+        @Override
+        public void write(JsonWriter out, BillingAddress value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "line1", value.line1);
+            JsonUtils.writeString(out, "line2", value.line2);
+            JsonUtils.writeString(out, "line3", value.line3);
+            JsonUtils.writeString(out, "line4", value.line4);
+            JsonUtils.writeString(out, "city", value.city);
+            JsonUtils.writeString(out, "region", value.region);
+            JsonUtils.writeString(out, "postcode", value.postcode);
+            JsonUtils.writeString(out, "countryCode", value.countryCode);
+            out.endObject();
+        }
+
+        @Override
+        public BillingAddress read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            BillingAddress address = new BillingAddress();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("line1".equals(name)) {
+                    address.line1 = JsonUtils.nextString(in);
+                } else if ("line2".equals(name)) {
+                    address.line2 = JsonUtils.nextString(in);
+                } else if ("line3".equals(name)) {
+                    address.line3 = JsonUtils.nextString(in);
+                } else if ("line4".equals(name)) {
+                    address.line4 = JsonUtils.nextString(in);
+                } else if ("city".equals(name)) {
+                    address.city = JsonUtils.nextString(in);
+                } else if ("region".equals(name)) {
+                    address.region = JsonUtils.nextString(in);
+                } else if ("postcode".equals(name)) {
+                    address.postcode = JsonUtils.nextString(in);
+                } else if ("countryCode".equals(name)) {
+                    address.countryCode = JsonUtils.nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return address;
+        }
+    };
 }
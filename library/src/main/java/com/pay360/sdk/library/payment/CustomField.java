@@ -6,9 +6,14 @@ package com.pay360.sdk.library.payment;
 
 import android.text.TextUtils;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.utils.JsonUtils;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -58,11 +63,17 @@ public class CustomField implements Serializable {
     }
 
     protected void validateData() throws PaymentValidationException {
+        ValidationResult result = new ValidationResult();
+        validateData(result);
+        result.throwIfInvalid();
+    }
+
+    void validateData(ValidationResult result) {
 
         if (!TextUtils.isEmpty(value) &&
            (value.length() > MAX_VALUE_LENGTH)) {
 
-           throw new PaymentValidationException(PaymentValidationException.ErrorCode.CUSTOM_FIELD_LENGTH_EXCEEDED);
+           result.add(PaymentValidationException.ErrorCode.CUSTOM_FIELD_LENGTH_EXCEEDED);
         }
     }
 
@@ -105,4 +116,50 @@ public class CustomField implements Serializable {
 
         return true;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<CustomField> GSON_ADAPTER = new TypeAdapter<CustomField>() {
+        @Override
+        public void write(JsonWriter out, CustomField value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "name", value.name);
+            JsonUtils.writeString(out, "value", value.value);
+            out.name("transient").value(value.transientFlag);
+            out.endObject();
+        }
+
+        @Override
+        public CustomField read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            CustomField customField = new CustomField();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("name".equals(name)) {
+                    customField.name = JsonUtils.nextString(in);
+                } else if ("value".equals(name)) {
+                    customField.value = JsonUtils.nextString(in);
+                } else if ("transient".equals(name)) {
+                    customField.transientFlag = JsonUtils.nextBoolean(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return customField;
+        }
+    };
 }
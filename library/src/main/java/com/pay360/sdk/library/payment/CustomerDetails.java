@@ -4,7 +4,13 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 /**
  * Optional payment customer details
@@ -49,4 +55,50 @@ public class CustomerDetails {
         this.telephone = telephone;
         return this;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<CustomerDetails> GSON_ADAPTER = new TypeAdapter<CustomerDetails>() {
+        @Override
+        public void write(JsonWriter out, CustomerDetails value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "email", value.email);
+            JsonUtils.writeString(out, "dob", value.dateOfBirth);
+            JsonUtils.writeString(out, "telephone", value.telephone);
+            out.endObject();
+        }
+
+        @Override
+        public CustomerDetails read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            CustomerDetails customer = new CustomerDetails();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("email".equals(name)) {
+                    customer.email = JsonUtils.nextString(in);
+                } else if ("dob".equals(name)) {
+                    customer.dateOfBirth = JsonUtils.nextString(in);
+                } else if ("telephone".equals(name)) {
+                    customer.telephone = JsonUtils.nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return customer;
+        }
+    };
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import java.util.Random;
+
+/**
+ * Default {@link BackoffPolicy}. Each delay is picked at random between the base delay and three
+ * times the previous delay, capped at the maximum, so devices which lost the server at the same
+ * time don't all poll it in lockstep when it recovers.
+ */
+public class DecorrelatedJitterBackoff implements BackoffPolicy {
+
+    public static final long DEFAULT_BASE_DELAY = 1000L; // 1s
+    public static final long DEFAULT_MAX_DELAY  = 5000L; // 5s
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    public DecorrelatedJitterBackoff() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param baseDelayMillis shortest delay
+     * @param maxDelayMillis longest delay
+     */
+    public DecorrelatedJitterBackoff(long baseDelayMillis, long maxDelayMillis) {
+        this(baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    DecorrelatedJitterBackoff(long baseDelayMillis, long maxDelayMillis, Random random) {
+        if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid backoff delays");
+        }
+
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    @Override
+    public long getDelayMillis(int retry, long previousDelayMillis) {
+        long upper = Math.max(baseDelayMillis, previousDelayMillis) * 3;
+
+        // random between base and upper inclusive
+        long delay = baseDelayMillis + (long) (random.nextDouble() * (upper - baseDelayMillis + 1));
+
+        return Math.min(maxDelayMillis, delay);
+    }
+}
@@ -4,7 +4,13 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 public class DeviceInfo {
 
@@ -80,4 +86,68 @@ public class DeviceInfo {
         this.screenDpi = screenDpi;
         return this;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<DeviceInfo> GSON_ADAPTER = new TypeAdapter<DeviceInfo>() {
+        @Override
+        public void write(JsonWriter out, DeviceInfo value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "sdkInstallId", value.sdkInstallId);
+            JsonUtils.writeString(out, "osFamily", value.osFamily);
+            JsonUtils.writeString(out, "osName", value.osName);
+            JsonUtils.writeString(out, "modelFamily", value.modelFamily);
+            JsonUtils.writeString(out, "modelName", value.modelName);
+            JsonUtils.writeString(out, "manufacturer", value.manufacturer);
+            JsonUtils.writeString(out, "type", value.type);
+            JsonUtils.writeString(out, "screenRes", value.screenRes);
+            out.name("screenDpi").value(value.screenDpi);
+            out.endObject();
+        }
+
+        @Override
+        public DeviceInfo read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            DeviceInfo deviceInfo = new DeviceInfo();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("sdkInstallId".equals(name)) {
+                    deviceInfo.sdkInstallId = JsonUtils.nextString(in);
+                } else if ("osFamily".equals(name)) {
+                    deviceInfo.osFamily = JsonUtils.nextString(in);
+                } else if ("osName".equals(name)) {
+                    deviceInfo.osName = JsonUtils.nextString(in);
+                } else if ("modelFamily".equals(name)) {
+                    deviceInfo.modelFamily = JsonUtils.nextString(in);
+                } else if ("modelName".equals(name)) {
+                    deviceInfo.modelName = JsonUtils.nextString(in);
+                } else if ("manufacturer".equals(name)) {
+                    deviceInfo.manufacturer = JsonUtils.nextString(in);
+                } else if ("type".equals(name)) {
+                    deviceInfo.type = JsonUtils.nextString(in);
+                } else if ("screenRes".equals(name)) {
+                    deviceInfo.screenRes = JsonUtils.nextString(in);
+                } else if ("screenDpi".equals(name)) {
+                    deviceInfo.screenDpi = JsonUtils.nextInt(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return deviceInfo;
+        }
+    };
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import retrofit.ErrorHandler;
+import retrofit.RetrofitError;
+
+/**
+ * Decodes the JSON body of HTTP error responses on the I/O thread, before the error is observed
+ * on the main thread. The body is streamed through the service's converter and
+ * {@link PaymentCodec} rather than copied into a String and parsed by a new Gson instance
+ */
+class ErrorResponseDecoder implements ErrorHandler {
+
+    /**
+     * HTTP error with its decoded body, the original {@link RetrofitError} is the cause
+     */
+    static class DecodedError extends RuntimeException {
+
+        private final MakePaymentResponse response;
+
+        private DecodedError(RetrofitError cause, MakePaymentResponse response) {
+            super(cause.getMessage(), cause);
+            this.response = response;
+        }
+
+        MakePaymentResponse getResponse() {
+            return response;
+        }
+    }
+
+    @Override
+    public Throwable handleError(RetrofitError cause) {
+        if (cause.getKind() != RetrofitError.Kind.HTTP ||
+            cause.getResponse() == null ||
+            cause.getResponse().getBody() == null) {
+            return cause;
+        }
+
+        MakePaymentResponse response = null;
+
+        try {
+            response = (MakePaymentResponse) cause.getBodyAs(MakePaymentResponse.class);
+        } catch (Exception e) {
+            // if JSON is invalid swallow exception - SDK will return
+        }
+
+        return response != null ? new DecodedError(cause, response) : cause;
+    }
+
+    /**
+     * Body decoded from an HTTP error
+     * @param e error passed to the observer
+     * @return response or null if there was no valid JSON body
+     */
+    static MakePaymentResponse getResponse(Throwable e) {
+        return e instanceof DecodedError ? ((DecodedError) e).getResponse() : null;
+    }
+
+    /**
+     * The error as Retrofit raised it
+     * @param e error passed to the observer
+     * @return the {@link RetrofitError} for a decoded error, otherwise e
+     */
+    static Throwable unwrap(Throwable e) {
+        return e instanceof DecodedError ? e.getCause() : e;
+    }
+}
@@ -4,7 +4,13 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 /**
  * Optional payment financial services
@@ -62,4 +68,53 @@ public class FinancialServices {
         this.postCode = postCode;
         return this;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<FinancialServices> GSON_ADAPTER = new TypeAdapter<FinancialServices>() {
+        @Override
+        public void write(JsonWriter out, FinancialServices value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "dateOfBirth", value.dateOfBirth);
+            JsonUtils.writeString(out, "surname", value.surname);
+            JsonUtils.writeString(out, "accountNumber", value.accountNumber);
+            JsonUtils.writeString(out, "postCode", value.postCode);
+            out.endObject();
+        }
+
+        @Override
+        public FinancialServices read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            FinancialServices financialServices = new FinancialServices();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("dateOfBirth".equals(name)) {
+                    financialServices.dateOfBirth = JsonUtils.nextString(in);
+                } else if ("surname".equals(name)) {
+                    financialServices.surname = JsonUtils.nextString(in);
+                } else if ("accountNumber".equals(name)) {
+                    financialServices.accountNumber = JsonUtils.nextString(in);
+                } else if ("postCode".equals(name)) {
+                    financialServices.postCode = JsonUtils.nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return financialServices;
+        }
+    };
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Default {@link PaymentCodec}. Drives the reflection free adapters of
+ * {@link PaymentTypeAdapterFactory} directly with Gson's streaming reader and writer, configured
+ * as a default Gson instance would configure them, so no Gson instance or reflection cache is
+ * built. Stateless and thread safe.
+ */
+public class GsonPaymentCodec implements PaymentCodec {
+
+    @Override
+    public void write(MakePaymentRequest request, Writer out) throws IOException {
+        write(MakePaymentRequest.GSON_ADAPTER, request, out);
+    }
+
+    @Override
+    public void write(ThreeDSResumeRequest request, Writer out) throws IOException {
+        write(ThreeDSResumeRequest.GSON_ADAPTER, request, out);
+    }
+
+    @Override
+    public MakePaymentResponse read(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+
+        try {
+            reader.peek();
+        } catch (EOFException e) {
+            // empty body, Gson returns null
+            return null;
+        }
+
+        return MakePaymentResponse.GSON_ADAPTER.read(reader);
+    }
+
+    private static <T> void write(TypeAdapter<T> adapter, T value, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+
+        // as Gson.toJson - HTML characters escaped and null members dropped
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
+
+        adapter.write(writer, value);
+        writer.flush();
+    }
+}
@@ -4,8 +4,16 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MakePaymentRequest {
@@ -31,11 +39,18 @@ public class MakePaymentRequest {
     @SerializedName("customer")
     private CustomerDetails customer;
 
+    @SerializedName("customFields")
+    private CustomFieldsContainer customFieldsContainer;
+
     @SerializedName("paymentMethod")
     private PaymentMethod paymentMethod;
 
-    @SerializedName("customFields")
-    private CustomFieldsContainer customFieldsContainer;
+    // UTF-8 JSON members for the fields which are the same for every payment, see encodePrefix()
+    private transient byte[] encodedPrefix;
+
+    // copy of the card PAN and CV2 owned by the request, wiped when the payment ends
+    private transient SensitiveChars pan;
+    private transient SensitiveChars cv2;
 
     public MakePaymentRequest setSdkVersion(String sdkVersion) {
         this.sdkVersion = "pp_android_sdk:" + sdkVersion;
@@ -74,6 +89,15 @@ public class MakePaymentRequest {
 
     public MakePaymentRequest setPaymentMethod(PaymentMethod paymentMethod) {
         this.paymentMethod = paymentMethod;
+
+        wipeCardData();
+
+        // take a copy so wiping on completion doesn't affect the app's card
+        PaymentCard card = paymentMethod != null ? paymentMethod.getCard() : null;
+        if (card != null) {
+            pan = SensitiveChars.copyOf(card.getPanChars());
+            cv2 = SensitiveChars.copyOf(card.getCv2Chars());
+        }
         return this;
     }
 
@@ -86,8 +110,232 @@ public class MakePaymentRequest {
         return this;
     }
 
+    /**
+     * Body is the encoded prefix followed by the other fields set on this request
+     * @param encodedPrefix prefix from {@link #encodePrefix(String, String, String, DeviceInfo)}
+     * @return MakePaymentRequest for chaining
+     */
+    MakePaymentRequest setEncodedPrefix(byte[] encodedPrefix) {
+        this.encodedPrefix = encodedPrefix;
+        return this;
+    }
+
+    byte[] getEncodedPrefix() {
+        return encodedPrefix;
+    }
+
+    PaymentMethod getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    /**
+     * Copy of the request for the {@link PaymentCodec} - the SDK writes the payment method itself
+     * @return request without the payment method or card data
+     */
+    MakePaymentRequest withoutPaymentMethod() {
+        MakePaymentRequest request = new MakePaymentRequest();
+        request.sdkVersion = sdkVersion;
+        request.merchantAppName = merchantAppName;
+        request.merchantAppVersion = merchantAppVersion;
+        request.deviceInfo = deviceInfo;
+        request.transaction = transaction;
+        request.financialServices = financialServices;
+        request.customer = customer;
+        request.customFieldsContainer = customFieldsContainer;
+        return request;
+    }
+
+    boolean hasCard() {
+        return paymentMethod != null && paymentMethod.getCard() != null;
+    }
+
+    SensitiveChars getPan() {
+        return pan;
+    }
+
+    SensitiveChars getCv2() {
+        return cv2;
+    }
+
+    /**
+     * Overwrite the request's copy of the card PAN and CV2
+     */
+    void wipeCardData() {
+        if (pan != null) {
+            pan.wipe();
+            pan = null;
+        }
+
+        if (cv2 != null) {
+            cv2.wipe();
+            cv2 = null;
+        }
+    }
+
+    /**
+     * Encode the SDK, merchant app and device fields once so they don't have to be serialised for
+     * every payment. The result is the UTF-8 JSON members without the enclosing braces e.g.
+     * <pre>"sdkVersion":"...","merchantAppName":"...","deviceInfo":{...}</pre>
+     * @param sdkVersion SDK version
+     * @param merchantAppName merchant app package name
+     * @param merchantAppVersion merchant app version
+     * @param deviceInfo device details
+     * @return encoded fields
+     */
+    static byte[] encodePrefix(String sdkVersion, String merchantAppName,
+                               String merchantAppVersion, DeviceInfo deviceInfo) {
+        MakePaymentRequest request = new MakePaymentRequest()
+                .setSdkVersion(sdkVersion)
+                .setMerchantAppName(merchantAppName)
+                .setMerchantAppVersion(merchantAppVersion)
+                .setDeviceInfo(deviceInfo);
+
+        try {
+            StringWriter writer = new StringWriter();
+
+            // escape as Gson does so the prefix matches the rest of the body
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            jsonWriter.setHtmlSafe(true);
+            GSON_ADAPTER.write(jsonWriter, request);
+            jsonWriter.flush();
+
+            // strip the braces - the fields are spliced into each request body
+            String json = writer.toString();
+            return json.substring(1, json.length() - 1).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode request prefix", e);
+        }
+    }
+
     private static class CustomFieldsContainer {
         @SerializedName("fieldState")
         private List<CustomField> customFields;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<MakePaymentRequest> GSON_ADAPTER = new TypeAdapter<MakePaymentRequest>() {
+        @Override
+        public void write(JsonWriter out, MakePaymentRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "sdkVersion", value.sdkVersion);
+            JsonUtils.writeString(out, "merchantAppName", value.merchantAppName);
+            JsonUtils.writeString(out, "merchantAppVersion", value.merchantAppVersion);
+
+            if (value.deviceInfo != null) {
+                out.name("deviceInfo");
+                DeviceInfo.GSON_ADAPTER.write(out, value.deviceInfo);
+            }
+
+            if (value.transaction != null) {
+                out.name("transaction");
+                Transaction.GSON_ADAPTER.write(out, value.transaction);
+            }
+
+            if (value.financialServices != null) {
+                out.name("financialServices");
+                FinancialServices.GSON_ADAPTER.write(out, value.financialServices);
+            }
+
+            if (value.customer != null) {
+                out.name("customer");
+                CustomerDetails.GSON_ADAPTER.write(out, value.customer);
+            }
+
+            if (value.customFieldsContainer != null) {
+                out.name("customFields").beginObject();
+
+                if (value.customFieldsContainer.customFields != null) {
+                    out.name("fieldState").beginArray();
+                    for (CustomField customField : value.customFieldsContainer.customFields) {
+                        CustomField.GSON_ADAPTER.write(out, customField);
+                    }
+                    out.endArray();
+                }
+
+                out.endObject();
+            }
+
+            if (value.paymentMethod != null) {
+                out.name("paymentMethod");
+                PaymentMethod.GSON_ADAPTER.write(out, value.paymentMethod);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public MakePaymentRequest read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            MakePaymentRequest request = new MakePaymentRequest();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                // fields are set directly as Gson would, the setters add the SDK prefix and copy
+                // the card data
+                if ("sdkVersion".equals(name)) {
+                    request.sdkVersion = JsonUtils.nextString(in);
+                } else if ("merchantAppName".equals(name)) {
+                    request.merchantAppName = JsonUtils.nextString(in);
+                } else if ("merchantAppVersion".equals(name)) {
+                    request.merchantAppVersion = JsonUtils.nextString(in);
+                } else if ("deviceInfo".equals(name)) {
+                    request.deviceInfo = DeviceInfo.GSON_ADAPTER.read(in);
+                } else if ("transaction".equals(name)) {
+                    request.transaction = Transaction.GSON_ADAPTER.read(in);
+                } else if ("financialServices".equals(name)) {
+                    request.financialServices = FinancialServices.GSON_ADAPTER.read(in);
+                } else if ("customer".equals(name)) {
+                    request.customer = CustomerDetails.GSON_ADAPTER.read(in);
+                } else if ("customFields".equals(name)) {
+                    request.customFieldsContainer = readCustomFields(in);
+                } else if ("paymentMethod".equals(name)) {
+                    request.paymentMethod = PaymentMethod.GSON_ADAPTER.read(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return request;
+        }
+    };
+
+    private static CustomFieldsContainer readCustomFields(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        CustomFieldsContainer container = new CustomFieldsContainer();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"fieldState".equals(in.nextName())) {
+                in.skipValue();
+            } else if (!JsonUtils.nextNull(in)) {
+                container.customFields = new ArrayList<CustomField>();
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    container.customFields.add(CustomField.GSON_ADAPTER.read(in));
+                }
+                in.endArray();
+            }
+        }
+        in.endObject();
+
+        return container;
+    }
 }
@@ -6,14 +6,23 @@ package com.pay360.sdk.library.payment;
 
 import android.text.TextUtils;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.CardScheme;
+import com.pay360.sdk.library.utils.JsonUtils;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MakePaymentResponse {
 
     private static final int REASON_CODE_UNKNOWN = -1;
 
+    private static final CardScheme[] CARD_SCHEMES = CardScheme.values();
+
     @SerializedName("paymentMethod")
     private PaymentMethod paymentMethod;
 
@@ -96,6 +105,21 @@ public class MakePaymentResponse {
         return lastFour;
     }
 
+    /**
+     * Card scheme reported by the server
+     * @return scheme or null if not returned or not recognised
+     */
+    public CardScheme getCardScheme() {
+        CardScheme cardScheme = null;
+
+        if (paymentMethod != null &&
+            paymentMethod.getCard() != null) {
+            cardScheme = paymentMethod.getCard().getScheme();
+        }
+
+        return cardScheme;
+    }
+
     public String getMaskedPan() {
         String maskedPan = null;
 
@@ -197,7 +221,7 @@ public class MakePaymentResponse {
         }
     }
 
-    private class PaymentMethod {
+    private static class PaymentMethod {
 
         @SerializedName("card")
         private PaymentCard card;
@@ -207,7 +231,7 @@ public class MakePaymentResponse {
         }
     }
 
-    private class PaymentCard {
+    private static class PaymentCard {
 
         @SerializedName("cardUsageType")
         private String cardUsageType;
@@ -221,6 +245,9 @@ public class MakePaymentResponse {
         @SerializedName("maskedPan")
         private String maskedPan;
 
+        // decoded from cardScheme on first use, as the outcome status
+        private transient CardScheme scheme;
+
         public String getCardUsageType() {
             return cardUsageType;
         }
@@ -229,6 +256,14 @@ public class MakePaymentResponse {
             return cardScheme;
         }
 
+        public CardScheme getScheme() {
+            if (scheme == null) {
+                scheme = decodeCardScheme(cardScheme);
+            }
+
+            return scheme;
+        }
+
         public String getLastFour() {
             return lastFour;
         }
@@ -238,16 +273,41 @@ public class MakePaymentResponse {
         }
     }
 
-    private class Outcome {
+    /**
+     * Outcome status, decoded once on the first check rather than compared as a string on every
+     * check
+     */
+    enum Status {
+        SUCCESS,
+        PENDING,
+        PROCESSING,
+        FAILED,
+        UNKNOWN;
+
+        // values() clones the array on every call
+        private static final Status[] VALUES = values();
+
+        static Status decode(String status) {
+            if (status != null) {
+                for (Status value : VALUES) {
+                    if (value.name().equalsIgnoreCase(status)) {
+                        return value;
+                    }
+                }
+            }
+
+            return UNKNOWN;
+        }
+    }
 
-        private static final String RESPONSE_SUCCESS    = "SUCCESS";
-        private static final String RESPONSE_PENDING    = "PENDING";
-        private static final String RESPONSE_PROCESSING = "PROCESSING";
-        private static final String RESPONSE_FAILED     = "FAILED";
+    private static class Outcome {
 
         @SerializedName("status")
         private String status;
 
+        // decoded from status on first use so any codec, including reflective Gson, can set status
+        private transient Status statusCode;
+
         @SerializedName("reasonCode")
         private int reasonCode;
 
@@ -267,23 +327,32 @@ public class MakePaymentResponse {
         }
 
         public boolean isSuccessful() {
-            return RESPONSE_SUCCESS.equalsIgnoreCase(status);
+            return getStatusCode() == Status.SUCCESS;
         }
 
         public boolean isPending() {
-            return RESPONSE_PENDING.equalsIgnoreCase(status);
+            return getStatusCode() == Status.PENDING;
         }
 
         public boolean isProcessing() {
-            return RESPONSE_PROCESSING.equalsIgnoreCase(status);
+            return getStatusCode() == Status.PROCESSING;
         }
 
         public boolean isFailed() {
-            return RESPONSE_FAILED.equalsIgnoreCase(status);
+            return getStatusCode() == Status.FAILED;
+        }
+
+        private Status getStatusCode() {
+            // a race decodes twice to the same value
+            if (statusCode == null) {
+                statusCode = Status.decode(status);
+            }
+
+            return statusCode;
         }
     }
 
-    public class ThreeDSecure {
+    public static class ThreeDSecure {
 
         @SerializedName("acsUrl")
         private String acsUrl;
@@ -349,4 +418,305 @@ public class MakePaymentResponse {
         @SerializedName("fieldState")
         private List<CustomField> customFields;
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<MakePaymentResponse> GSON_ADAPTER = new TypeAdapter<MakePaymentResponse>() {
+        @Override
+        public void write(JsonWriter out, MakePaymentResponse value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.paymentMethod != null) {
+                out.name("paymentMethod");
+                writePaymentMethod(out, value.paymentMethod);
+            }
+
+            if (value.transaction != null) {
+                out.name("transaction");
+                writeTransaction(out, value.transaction);
+            }
+
+            if (value.outcome != null) {
+                out.name("outcome").beginObject();
+                JsonUtils.writeString(out, "status", value.outcome.status);
+                out.name("reasonCode").value(value.outcome.reasonCode);
+                JsonUtils.writeString(out, "reasonMessage", value.outcome.reasonMessage);
+                out.endObject();
+            }
+
+            if (value.threeDSecure != null) {
+                out.name("threeDSRedirect");
+                writeThreeDSecure(out, value.threeDSecure);
+            }
+
+            if (value.customFieldsContainer != null) {
+                out.name("customFields").beginObject();
+
+                if (value.customFieldsContainer.customFields != null) {
+                    out.name("fieldState").beginArray();
+                    for (CustomField customField : value.customFieldsContainer.customFields) {
+                        CustomField.GSON_ADAPTER.write(out, customField);
+                    }
+                    out.endArray();
+                }
+
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public MakePaymentResponse read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            MakePaymentResponse response = new MakePaymentResponse();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("paymentMethod".equals(name)) {
+                    response.paymentMethod = readPaymentMethod(in);
+                } else if ("transaction".equals(name)) {
+                    response.transaction = readTransaction(in);
+                } else if ("outcome".equals(name)) {
+                    response.outcome = readOutcome(in);
+                } else if ("threeDSRedirect".equals(name)) {
+                    response.threeDSecure = readThreeDSecure(in);
+                } else if ("customFields".equals(name)) {
+                    response.customFieldsContainer = readCustomFields(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return response;
+        }
+    };
+
+    private static void writeTransaction(JsonWriter out, Transaction transaction) throws IOException {
+        out.beginObject();
+        JsonUtils.writeString(out, "transactionId", transaction.transactionId);
+        JsonUtils.writeString(out, "merchantRef", transaction.merchantReference);
+        JsonUtils.writeString(out, "type", transaction.type);
+
+        // written as a Number to match Gson's float formatting
+        out.name("amount").value(Float.valueOf(transaction.amount));
+
+        JsonUtils.writeString(out, "currency", transaction.currency);
+        JsonUtils.writeString(out, "transactionTime", transaction.transactionTime);
+        out.endObject();
+    }
+
+    private static void writePaymentMethod(JsonWriter out, PaymentMethod paymentMethod)
+            throws IOException {
+        out.beginObject();
+        if (paymentMethod.card != null) {
+            PaymentCard card = paymentMethod.card;
+
+            out.name("card").beginObject();
+            JsonUtils.writeString(out, "cardUsageType", card.cardUsageType);
+            JsonUtils.writeString(out, "cardScheme", card.cardScheme);
+            JsonUtils.writeString(out, "lastFour", card.lastFour);
+            JsonUtils.writeString(out, "maskedPan", card.maskedPan);
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    private static void writeThreeDSecure(JsonWriter out, ThreeDSecure threeDSecure)
+            throws IOException {
+        out.beginObject();
+        JsonUtils.writeString(out, "acsUrl", threeDSecure.acsUrl);
+        JsonUtils.writeString(out, "pareq", threeDSecure.pareq);
+        JsonUtils.writeString(out, "termUrl", threeDSecure.termUrl);
+        JsonUtils.writeString(out, "md", threeDSecure.md);
+        out.name("sessionTimeout").value(threeDSecure.sessionTimeout);
+        out.name("passiveTimeout").value(threeDSecure.passiveTimeout);
+        out.endObject();
+    }
+
+    private static Transaction readTransaction(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        Transaction transaction = new Transaction();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if ("transactionId".equals(name)) {
+                transaction.transactionId = JsonUtils.nextString(in);
+            } else if ("merchantRef".equals(name)) {
+                transaction.merchantReference = JsonUtils.nextString(in);
+            } else if ("type".equals(name)) {
+                transaction.type = JsonUtils.nextInternedString(in);
+            } else if ("amount".equals(name)) {
+                transaction.amount = JsonUtils.nextFloat(in);
+            } else if ("currency".equals(name)) {
+                transaction.currency = JsonUtils.nextInternedString(in);
+            } else if ("transactionTime".equals(name)) {
+                transaction.transactionTime = JsonUtils.nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return transaction;
+    }
+
+    private static PaymentMethod readPaymentMethod(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        PaymentMethod paymentMethod = new PaymentMethod();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("card".equals(in.nextName())) {
+                paymentMethod.card = readPaymentCard(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return paymentMethod;
+    }
+
+    private static PaymentCard readPaymentCard(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        PaymentCard card = new PaymentCard();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if ("cardUsageType".equals(name)) {
+                card.cardUsageType = JsonUtils.nextInternedString(in);
+            } else if ("cardScheme".equals(name)) {
+                card.cardScheme = JsonUtils.nextInternedString(in);
+            } else if ("lastFour".equals(name)) {
+                card.lastFour = JsonUtils.nextString(in);
+            } else if ("maskedPan".equals(name)) {
+                card.maskedPan = JsonUtils.nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return card;
+    }
+
+    private static CardScheme decodeCardScheme(String cardScheme) {
+        if (cardScheme != null) {
+            for (CardScheme scheme : CARD_SCHEMES) {
+                if (scheme.name().equalsIgnoreCase(cardScheme)) {
+                    return scheme;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Outcome readOutcome(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        Outcome outcome = new Outcome();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if ("status".equals(name)) {
+                outcome.status = JsonUtils.nextString(in);
+            } else if ("reasonCode".equals(name)) {
+                outcome.reasonCode = JsonUtils.nextInt(in);
+            } else if ("reasonMessage".equals(name)) {
+                outcome.reasonMessage = JsonUtils.nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return outcome;
+    }
+
+    private static ThreeDSecure readThreeDSecure(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        ThreeDSecure threeDSecure = new ThreeDSecure();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if ("acsUrl".equals(name)) {
+                threeDSecure.acsUrl = JsonUtils.nextString(in);
+            } else if ("pareq".equals(name)) {
+                threeDSecure.pareq = JsonUtils.nextString(in);
+            } else if ("termUrl".equals(name)) {
+                threeDSecure.termUrl = JsonUtils.nextString(in);
+            } else if ("md".equals(name)) {
+                threeDSecure.md = JsonUtils.nextString(in);
+            } else if ("sessionTimeout".equals(name)) {
+                threeDSecure.sessionTimeout = JsonUtils.nextLong(in);
+            } else if ("passiveTimeout".equals(name)) {
+                threeDSecure.passiveTimeout = JsonUtils.nextLong(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return threeDSecure;
+    }
+
+    private static CustomFieldsContainer readCustomFields(JsonReader in) throws IOException {
+        if (JsonUtils.nextNull(in)) {
+            return null;
+        }
+
+        CustomFieldsContainer container = new CustomFieldsContainer();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"fieldState".equals(in.nextName())) {
+                in.skipValue();
+            } else if (!JsonUtils.nextNull(in)) {
+                container.customFields = new ArrayList<CustomField>();
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    container.customFields.add(CustomField.GSON_ADAPTER.read(in));
+                }
+                in.endArray();
+            }
+        }
+        in.endObject();
+
+        return container;
+    }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import android.util.Log;
+
+import com.pay360.sdk.library.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only journal of payment operations so an operation whose outcome was never reported,
+ * e.g. the process died while waiting for the response or during 3D Secure, can be reconciled
+ * through the status endpoint when the app next starts.
+ *
+ * <p>The journal is a fixed size memory mapped file of fixed size records. Appends are plain
+ * writes to the mapping which the kernel persists even if the process is killed - there is no
+ * fsync. The file is mapped by {@link #open()}, which should be called off the main thread.
+ * {@link #record(byte, String)} never opens the file itself, as it's called from the main thread -
+ * records made before the journal is opened are held in memory and appended, in order, once it
+ * is.
+ *
+ * <p>File layout: a header record whose first byte selects the live region, then two regions of
+ * {@link #CAPACITY} records. When the live region is full the unresolved operations are compacted
+ * into the other region and the header switched to it, so a process dying part way through
+ * compaction leaves the live region intact.
+ *
+ * <p>Record layout: type (1 byte), id length (1), timestamp ms (8), operation id (ASCII). The
+ * type is written last so a record torn by the process dying is never read back.
+ */
+class OperationJournal {
+
+    static final byte TYPE_STARTED      = 1;
+    static final byte TYPE_SUSPENDED    = 2;
+    static final byte TYPE_COMPLETED    = 3;
+
+    private static final byte TYPE_EMPTY = 0;
+
+    static final int RECORD_SIZE    = 64;
+    static final int CAPACITY       = 256; // records per region
+    static final int HEADER_SIZE    = RECORD_SIZE;
+
+    private static final int MAX_ID_LENGTH  = RECORD_SIZE - 10;
+    private static final int REGION_SIZE    = RECORD_SIZE * CAPACITY;
+
+    // unresolved operations older than this are dropped, the app can still query them by id
+    private static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L; // 7 days
+
+    private final File file;
+
+    // null until opened or if the file could not be mapped
+    private MappedByteBuffer buffer;
+    private boolean opened;
+
+    // records made before the journal is opened, null once they're appended. Guarded by its own
+    // lock so recording doesn't wait while the file is mapped and loaded
+    private final Object pendingLock = new Object();
+    private List<PendingRecord> pending = new ArrayList<PendingRecord>();
+
+    // latest record per operation in journal order
+    private final LinkedHashMap<String, Entry> operations = new LinkedHashMap<String, Entry>();
+
+    // operations left unresolved by the previous run
+    private List<String> previouslyUnresolved = Collections.emptyList();
+
+    private int region;
+    private int position;
+
+    private static class Entry {
+        private final byte type;
+        private final long timestamp;
+
+        private Entry(byte type, long timestamp) {
+            this.type = type;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class PendingRecord {
+        private final byte type;
+        private final String operationId;
+
+        private PendingRecord(byte type, String operationId) {
+            this.type = type;
+            this.operationId = operationId;
+        }
+    }
+
+    /**
+     * Journal backed by the file, which is created if needed when the journal is opened
+     * @param file journal file
+     */
+    OperationJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Map the file, load the operations of the previous run then append anything recorded before
+     * it was opened. Does nothing if already opened
+     */
+    synchronized void open() {
+        if (opened) {
+            return;
+        }
+
+        opened = true;
+
+        map();
+
+        appendPending();
+    }
+
+    /**
+     * Record a change in the lifecycle of an operation. Held until the journal is opened
+     * @param type {@link #TYPE_STARTED}, {@link #TYPE_SUSPENDED} or {@link #TYPE_COMPLETED}
+     * @param operationId operation id
+     */
+    void record(byte type, String operationId) {
+        synchronized (pendingLock) {
+            if (pending != null) {
+                pending.add(new PendingRecord(type, operationId));
+                return;
+            }
+        }
+
+        synchronized (this) {
+            apply(type, operationId);
+        }
+    }
+
+    /**
+     * Operations started but not completed by the previous run, oldest first
+     * @return operation ids
+     */
+    synchronized List<String> getPreviouslyUnresolved() {
+        open();
+
+        return new ArrayList<String>(previouslyUnresolved);
+    }
+
+    /**
+     * Operations started but not completed, oldest first
+     * @return operation ids
+     */
+    synchronized List<String> getUnresolved() {
+        open();
+
+        return new ArrayList<String>(operations.keySet());
+    }
+
+    private void map() {
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+
+            // the mapping stays valid after the file is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 2 * REGION_SIZE);
+        } catch (IOException e) {
+            Log.w(Logger.TAG, "Failed to open operation journal", e);
+            return;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        region = buffer.get(0) == 1 ? 1 : 0;
+
+        load();
+
+        // drop completed and stale operations from a previous run
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = operations.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+
+            if (entry.type == TYPE_COMPLETED || now - entry.timestamp > MAX_AGE) {
+                iterator.remove();
+            }
+        }
+
+        previouslyUnresolved = new ArrayList<String>(operations.keySet());
+
+        compact();
+    }
+
+    /**
+     * Append the records held while the journal was opening. Anything recorded meanwhile is
+     * appended too, before later records are applied directly
+     */
+    private void appendPending() {
+        while (true) {
+            List<PendingRecord> records;
+
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    pending = null;
+                    return;
+                }
+
+                records = pending;
+                pending = new ArrayList<PendingRecord>();
+            }
+
+            for (PendingRecord record : records) {
+                apply(record.type, record.operationId);
+            }
+        }
+    }
+
+    private void apply(byte type, String operationId) {
+        if (buffer == null) {
+            return;
+        }
+
+        // nothing to complete if the operation isn't journaled e.g. a status request
+        if (type == TYPE_COMPLETED && !operations.containsKey(operationId)) {
+            return;
+        }
+
+        append(type, operationId);
+
+        if (type == TYPE_COMPLETED) {
+            operations.remove(operationId);
+        }
+    }
+
+    private void append(byte type, String operationId) {
+        byte[] id = encode(operationId);
+
+        if (id == null) {
+            return;
+        }
+
+        if (position == CAPACITY) {
+            compact();
+
+            // still full of unresolved operations - forget the oldest
+            if (position == CAPACITY) {
+                Iterator<String> oldest = operations.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+
+                compact();
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+
+        write(region, position++, type, id, timestamp);
+
+        if (type != TYPE_COMPLETED) {
+            // re-insert so the map keeps journal order
+            operations.remove(operationId);
+            operations.put(operationId, new Entry(type, timestamp));
+        }
+    }
+
+    private void write(int region, int index, byte type, byte[] id, long timestamp) {
+        int offset = offset(region, index);
+
+        // invalidate while overwriting a torn record
+        buffer.put(offset, TYPE_EMPTY);
+        buffer.put(offset + 1, (byte) id.length);
+        buffer.putLong(offset + 2, timestamp);
+
+        for (int i = 0; i < id.length; i++) {
+            buffer.put(offset + 10 + i, id[i]);
+        }
+
+        // type last - marks the record as valid
+        buffer.put(offset, type);
+    }
+
+    private void load() {
+        for (int index = 0; index < CAPACITY; index++) {
+            int offset = offset(region, index);
+            byte type = buffer.get(offset);
+            int length = buffer.get(offset + 1);
+
+            // skip empty, torn and corrupt records rather than ignoring the rest of the region
+            if (type < TYPE_STARTED || type > TYPE_COMPLETED || length <= 0 || length > MAX_ID_LENGTH) {
+                continue;
+            }
+
+            long timestamp = buffer.getLong(offset + 2);
+
+            char[] id = new char[length];
+            for (int i = 0; i < length; i++) {
+                id[i] = (char) buffer.get(offset + 10 + i);
+            }
+
+            String operationId = new String(id);
+
+            operations.remove(operationId);
+            operations.put(operationId, new Entry(type, timestamp));
+        }
+    }
+
+    /**
+     * Write the unresolved operations to the other region then switch to it
+     */
+    private void compact() {
+        int target = 1 - region;
+        int index = 0;
+
+        for (Map.Entry<String, Entry> operation : operations.entrySet()) {
+            write(target, index++, operation.getValue().type, encode(operation.getKey()),
+                    operation.getValue().timestamp);
+        }
+
+        position = index;
+
+        // clear the rest so records from before the last compaction aren't read back
+        for (; index < CAPACITY; index++) {
+            buffer.put(offset(target, index), TYPE_EMPTY);
+        }
+
+        // a single byte write switches regions - until then the live region is untouched
+        buffer.put(0, (byte) target);
+        region = target;
+    }
+
+    private static int offset(int region, int index) {
+        return HEADER_SIZE + region * REGION_SIZE + index * RECORD_SIZE;
+    }
+
+    private static byte[] encode(String operationId) {
+        if (operationId == null) {
+            return null;
+        }
+
+        try {
+            byte[] id = operationId.getBytes("US-ASCII");
+            return id.length > 0 && id.length <= MAX_ID_LENGTH ? id : null;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of final payment outcomes by operation id, so asking for the status of a
+ * payment which has already finished doesn't need a round trip to the server. Entries expire
+ * after {@link #TTL} - outcomes don't change but there is no need to hold them indefinitely.
+ */
+class OutcomeCache {
+
+    private static final int CAPACITY   = 32;
+    private static final long TTL       = 10 * 60 * 1000L; // 10 minutes
+
+    private final long ttl;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Entry {
+        private final PaymentOutcome outcome;
+        private final long expiresAt;
+
+        private Entry(PaymentOutcome outcome, long expiresAt) {
+            this.outcome = outcome;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // access ordered so the least recently used outcome is evicted first
+    private final LinkedHashMap<String, Entry> entries;
+
+    OutcomeCache() {
+        this(CAPACITY, TTL);
+    }
+
+    /**
+     * @param capacity maximum number of outcomes held
+     * @param ttl time in ms an outcome is held for
+     */
+    OutcomeCache(final int capacity, long ttl) {
+        this.ttl = ttl;
+
+        entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized void put(String operationId, PaymentOutcome outcome) {
+        if (operationId != null) {
+            entries.put(operationId, new Entry(outcome, SystemClock.elapsedRealtime() + ttl));
+        }
+    }
+
+    /**
+     * Get an outcome, counting the hit or miss
+     * @param operationId operation id
+     * @return outcome or null if not cached or expired
+     */
+    synchronized PaymentOutcome get(String operationId) {
+        Entry entry = operationId != null ? entries.get(operationId) : null;
+
+        if (entry != null && SystemClock.elapsedRealtime() >= entry.expiresAt) {
+            entries.remove(operationId);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.outcome;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Whether an error is a final outcome of the payment rather than e.g. a timeout where the
+     * outcome is unknown or a problem with the request
+     * @param error payment error
+     * @return true if the outcome can be cached
+     */
+    static boolean isFinal(PaymentError error) {
+        switch (error.getReasonCode()) {
+            case TRANSACTION_DECLINED:
+            case TRANSACTION_CANCELLED_BY_USER:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -4,25 +4,31 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.utils.BinTable;
 import com.pay360.sdk.library.utils.Cv2Utils;
-import com.pay360.sdk.library.utils.ExpiryUtils;
+import com.pay360.sdk.library.utils.ExpiryValidator;
+import com.pay360.sdk.library.utils.JsonUtils;
 import com.pay360.sdk.library.utils.PanUtils;
 import com.pay360.sdk.library.utils.StringUtils;
 
-import java.util.Date;
+import java.io.IOException;
 
 /**
  * Mandatory payment card details
+ *
+ * <p>The PAN and CV2 are held in char arrays which are wiped by {@link #wipe()}. They are not
+ * serialised by Gson - {@link PaymentConverter} writes them straight into the request body.
  */
 public class PaymentCard {
 
-    @SerializedName("pan")
-    private String pan;
-
-    @SerializedName("cv2")
-    private String cv2;
+    // dropped as well as whitespace
+    private static final String PAN_SEPARATORS = "-";
+    private static final String CV2_SEPARATORS = "";
 
     @SerializedName("expiryDate")
     private String expiryDate;
@@ -30,13 +36,29 @@ public class PaymentCard {
     @SerializedName("cardHolderName")
     private String cardHolderName;
 
+    private transient SensitiveChars pan;
+
+    private transient SensitiveChars cv2;
+
     /**
      * Set the card PAM
      * @param pan card PAN\number
      * @return PaymentCard for chaining
      */
     public PaymentCard setPan(String pan) {
-        this.pan = StringUtils.deleteWhitespace(pan);
+        wipe(this.pan);
+        this.pan = SensitiveChars.copyOf(pan, PAN_SEPARATORS);
+        return this;
+    }
+
+    /**
+     * Set the card PAN from a char array, which the app can then wipe
+     * @param pan card PAN\number
+     * @return PaymentCard for chaining
+     */
+    public PaymentCard setPan(char[] pan) {
+        wipe(this.pan);
+        this.pan = SensitiveChars.copyOf(pan, PAN_SEPARATORS);
         return this;
     }
 
@@ -46,10 +68,31 @@ public class PaymentCard {
      * @return PaymentCard for chaining
      */
     public PaymentCard setCv2(String cv2) {
-        this.cv2 = StringUtils.deleteWhitespace(cv2);
+        wipe(this.cv2);
+        this.cv2 = SensitiveChars.copyOf(cv2, CV2_SEPARATORS);
+        return this;
+    }
+
+    /**
+     * Set the card CV2 from a char array, which the app can then wipe
+     * @param cv2 3-4 digits
+     * @return PaymentCard for chaining
+     */
+    public PaymentCard setCv2(char[] cv2) {
+        wipe(this.cv2);
+        this.cv2 = SensitiveChars.copyOf(cv2, CV2_SEPARATORS);
         return this;
     }
 
+    /**
+     * Overwrite the PAN and CV2 held by this card e.g. once the payment has completed. The SDK
+     * holds its own copy for the duration of a payment and wipes it when the payment ends
+     */
+    public void wipe() {
+        wipe(pan);
+        wipe(cv2);
+    }
+
     /**
      * Set the card expiry
      * @param expiryDate card expiry MMYY e.g. 0216 for February 2016
@@ -75,7 +118,7 @@ public class PaymentCard {
      * @return card PAN
      */
     protected String getPan() {
-        return pan;
+        return pan != null ? pan.toString() : null;
     }
 
     /**
@@ -83,6 +126,14 @@ public class PaymentCard {
      * @return card CVV
      */
     protected String getCv2() {
+        return cv2 != null ? cv2.toString() : null;
+    }
+
+    SensitiveChars getPanChars() {
+        return pan;
+    }
+
+    SensitiveChars getCv2Chars() {
         return cv2;
     }
 
@@ -103,49 +154,137 @@ public class PaymentCard {
     }
 
     protected void validateData() throws PaymentValidationException {
+        ValidationResult result = new ValidationResult();
+        validateData(result);
+        result.throwIfInvalid();
+    }
 
-        validatePan(pan);
+    /**
+     * Check every card field, adding the errors found
+     * @param result validation result
+     */
+    void validateData(ValidationResult result) {
 
-        validateExpiry(expiryDate);
+        result.add(checkPan(pan));
 
-        validateCv2(cv2);
+        result.add(checkExpiry(expiryDate));
+
+        result.add(checkCv2(cv2, pan));
     }
 
     protected static void validatePan(String pan) throws PaymentValidationException {
-        pan = StringUtils.deleteWhitespace(pan);
+        throwIfError(checkPan(pan));
+    }
+
+    protected static void validateExpiry(String expiryDate) throws PaymentValidationException {
+        throwIfError(checkExpiry(expiryDate));
+    }
+
+    protected static void validateCv2(String cv2) throws PaymentValidationException {
+        throwIfError(checkCv2(cv2, null));
+    }
 
-        // check pan 15-19 digits + all numeric
-        if (!PanUtils.isValidCardNumber(pan)) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.CARD_PAN_INVALID);
+    protected static void validateCv2(String cv2, String pan) throws PaymentValidationException {
+        throwIfError(checkCv2(cv2, pan));
+    }
+
+    static PaymentValidationException.ErrorCode checkPan(CharSequence pan) {
+        // check pan 13-19 digits + all numeric + luhn in one pass, ignoring separators
+        switch (PanUtils.validate(pan)) {
+            case PanUtils.PAN_INVALID:
+                return PaymentValidationException.ErrorCode.CARD_PAN_INVALID;
+            case PanUtils.PAN_INVALID_LUHN:
+                return PaymentValidationException.ErrorCode.CARD_PAN_INVALID_LUHN;
+            default:
+                return null;
         }
+    }
 
-        // check luhn
-        if (!PanUtils.checkLuhn(pan)) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.CARD_PAN_INVALID_LUHN);
+    static PaymentValidationException.ErrorCode checkExpiry(String expiryDate) {
+        // check format and expiry against the cached current month, ignoring spaces
+        switch (ExpiryValidator.getDefault().validate(expiryDate)) {
+            case ExpiryValidator.EXPIRY_INVALID:
+                return PaymentValidationException.ErrorCode.CARD_EXPIRY_INVALID;
+            case ExpiryValidator.EXPIRY_EXPIRED:
+                return PaymentValidationException.ErrorCode.CARD_EXPIRED;
+            default:
+                return null;
         }
     }
 
-    protected static void validateExpiry(String expiryDate) throws PaymentValidationException {
-        ExpiryUtils expiryUtils = new ExpiryUtils();
+    static PaymentValidationException.ErrorCode checkCv2(CharSequence cv2, CharSequence pan) {
+        // check ccv ignoring spaces, length depends on the card scheme if known
+        if (!Cv2Utils.isValidCv2Number(cv2, BinTable.getDefault().lookup(pan))) {
+            return PaymentValidationException.ErrorCode.CARD_CV2_INVALID;
+        }
 
-        expiryDate = StringUtils.deleteWhitespace(expiryDate);
+        return null;
+    }
 
-        if (!expiryUtils.isValid(expiryDate)) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.CARD_EXPIRY_INVALID);
+    private static void wipe(SensitiveChars chars) {
+        if (chars != null) {
+            chars.wipe();
         }
+    }
 
-        // check expiry
-        if (expiryUtils.isCardExpired(expiryDate, new Date())) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.CARD_EXPIRED);
+    private static void throwIfError(PaymentValidationException.ErrorCode errorCode)
+            throws PaymentValidationException {
+        if (errorCode != null) {
+            throw new PaymentValidationException(errorCode);
         }
     }
 
-    protected static void validateCv2(String cv2) throws PaymentValidationException {
-        cv2 = StringUtils.deleteWhitespace(cv2);
+    /**
+     * Write the members of the card other than the PAN and CV2
+     * @param out writer, in the card object
+     * @param card card
+     * @throws IOException
+     */
+    static void writeMembers(JsonWriter out, PaymentCard card) throws IOException {
+        JsonUtils.writeString(out, "expiryDate", card.expiryDate);
+        JsonUtils.writeString(out, "cardHolderName", card.cardHolderName);
+    }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<PaymentCard> GSON_ADAPTER = new TypeAdapter<PaymentCard>() {
+        @Override
+        public void write(JsonWriter out, PaymentCard value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
 
-        // check ccv
-        if (!Cv2Utils.isValidCv2Number(cv2)) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.CARD_CV2_INVALID);
+            out.beginObject();
+            writeMembers(out, value);
+            out.endObject();
         }
-    }
+
+        @Override
+        public PaymentCard read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            // the PAN and CV2 are never part of the JSON so the card read has neither
+            PaymentCard card = new PaymentCard();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("expiryDate".equals(name)) {
+                    card.expiryDate = JsonUtils.nextString(in);
+                } else if ("cardHolderName".equals(name)) {
+                    card.cardHolderName = JsonUtils.nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return card;
+        }
+    };
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Encodes the payment requests and decodes the payment response, see
+ * {@link PaymentManager#setPaymentCodec(PaymentCodec)}. {@link GsonPaymentCodec} is used by
+ * default.
+ *
+ * <p>The payment method is not written by the codec - the SDK writes it, with the card PAN and
+ * CV2 encoded so they never pass through a String, after the members the codec writes. The
+ * codec may write the other members in any order and with any whitespace, the JSON must
+ * otherwise match the {@link com.google.gson.annotations.SerializedName} mappings of the models.
+ *
+ * <p>Calls are made from the SDK's network threads, implementations must be thread safe.
+ */
+public interface PaymentCodec {
+
+    /**
+     * Encode a payment request
+     * @param request request, without its encoded prefix fields or payment method
+     * @param out destination
+     * @throws IOException
+     */
+    void write(MakePaymentRequest request, Writer out) throws IOException;
+
+    /**
+     * Encode a 3D Secure resume request
+     * @param request request
+     * @param out destination
+     * @throws IOException
+     */
+    void write(ThreeDSResumeRequest request, Writer out) throws IOException;
+
+    /**
+     * Decode a payment, resume or status response
+     * @param in source
+     * @return response or null if the body is empty
+     * @throws IOException
+     */
+    MakePaymentResponse read(Reader in) throws IOException;
+}
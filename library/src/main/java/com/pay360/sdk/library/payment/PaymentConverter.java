@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.MimeUtil;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Retrofit converter for the payment models, encoded and decoded by a {@link PaymentCodec}.
+ * Splices the pre-encoded prefix of a {@link MakePaymentRequest} with the fields the codec writes,
+ * then writes the payment method itself so the card PAN and CV2 are encoded straight from their
+ * char arrays and never copied into a String
+ */
+class PaymentConverter implements Converter {
+
+    private static final String MIME_TYPE = "application/json; charset=UTF-8";
+
+    private static final byte[] PAYMENT_METHOD_NAME = {
+            '"', 'p', 'a', 'y', 'm', 'e', 'n', 't', 'M', 'e', 't', 'h', 'o', 'd', '"', ':' };
+    private static final byte[] PAN_NAME = { '"', 'p', 'a', 'n', '"', ':' };
+    private static final byte[] CV2_NAME = { '"', 'c', 'v', '2', '"', ':' };
+
+    private final PaymentCodec codec;
+
+    PaymentConverter(PaymentCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Object fromBody(TypedInput body, Type type) throws ConversionException {
+        if (type != MakePaymentResponse.class) {
+            throw new ConversionException("Unsupported response type " + type);
+        }
+
+        String charset = MimeUtil.parseCharset(body.mimeType(), "UTF-8");
+        Reader reader = null;
+
+        try {
+            // decoded as it is read from the body, not buffered into a String first
+            reader = new InputStreamReader(body.in(), charset);
+            return codec.read(reader);
+        } catch (IOException e) {
+            throw new ConversionException(e);
+        } catch (RuntimeException e) {
+            throw new ConversionException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public TypedOutput toBody(Object object) {
+        if (object instanceof MakePaymentRequest) {
+            return new TypedByteArray(MIME_TYPE, encode((MakePaymentRequest) object));
+        }
+
+        if (object instanceof ThreeDSResumeRequest) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+
+            try {
+                Writer writer = new OutputStreamWriter(body, "UTF-8");
+                codec.write((ThreeDSResumeRequest) object, writer);
+                writer.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("PaymentCodec failed to write the request", e);
+            }
+
+            return new TypedByteArray(MIME_TYPE, body.toByteArray());
+        }
+
+        throw new IllegalArgumentException("Unsupported request type " + object.getClass());
+    }
+
+    private byte[] encode(MakePaymentRequest request) {
+        ByteArrayOutputStream rest = new ByteArrayOutputStream(512);
+
+        try {
+            Writer writer = new OutputStreamWriter(rest, "UTF-8");
+            codec.write(request.withoutPaymentMethod(), writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("PaymentCodec failed to write the request", e);
+        }
+
+        byte[] prefix = request.getEncodedPrefix();
+        if (prefix == null) {
+            prefix = new byte[0];
+        }
+
+        // the members the codec wrote, between the braces of its object
+        byte[] restBytes = rest.toByteArray();
+        int restStart = skipWhitespace(restBytes, 0);
+        int restEnd = skipWhitespaceBack(restBytes, restBytes.length);
+
+        if (restEnd - restStart < 2 || restBytes[restStart] != '{' || restBytes[restEnd - 1] != '}') {
+            throw new IllegalStateException("PaymentCodec must write a JSON object");
+        }
+
+        restStart = skipWhitespace(restBytes, restStart + 1);
+        restEnd = skipWhitespaceBack(restBytes, restEnd - 1);
+
+        PaymentMethod paymentMethod = request.getPaymentMethod();
+        byte[] method = null;
+
+        SensitiveChars pan = null;
+        SensitiveChars cv2 = null;
+        boolean cardEmpty = false;
+
+        // {prefix,rest}
+        int length = 2 + prefix.length + restEnd - restStart;
+        boolean members = prefix.length > 0;
+
+        if (restEnd > restStart) {
+            length += members ? 1 : 0;
+            members = true;
+        }
+
+        if (paymentMethod != null) {
+            method = encodePaymentMethod(paymentMethod);
+            length += (members ? 1 : 0) + PAYMENT_METHOD_NAME.length + method.length;
+
+            if (paymentMethod.getCard() != null) {
+                pan = request.getPan();
+                cv2 = request.getCv2();
+
+                // the card is left open by encodePaymentMethod
+                cardEmpty = method[method.length - 1] == '{';
+
+                if (pan != null) {
+                    length += (cardEmpty ? 0 : 1) + PAN_NAME.length + pan.jsonLength();
+                }
+
+                if (cv2 != null) {
+                    length += (cardEmpty && pan == null ? 0 : 1) + CV2_NAME.length + cv2.jsonLength();
+                }
+
+                // closes the card and payment method
+                length += 2;
+            }
+        }
+
+        byte[] body = new byte[length];
+
+        int offset = 0;
+        body[offset++] = '{';
+        System.arraycopy(prefix, 0, body, offset, prefix.length);
+        offset += prefix.length;
+
+        if (restEnd > restStart) {
+            if (prefix.length > 0) {
+                body[offset++] = ',';
+            }
+            System.arraycopy(restBytes, restStart, body, offset, restEnd - restStart);
+            offset += restEnd - restStart;
+        }
+
+        if (method != null) {
+            if (members) {
+                body[offset++] = ',';
+            }
+
+            System.arraycopy(PAYMENT_METHOD_NAME, 0, body, offset, PAYMENT_METHOD_NAME.length);
+            offset += PAYMENT_METHOD_NAME.length;
+            System.arraycopy(method, 0, body, offset, method.length);
+            offset += method.length;
+
+            if (paymentMethod.getCard() != null) {
+                if (pan != null) {
+                    offset = writeMember(body, offset, !cardEmpty, PAN_NAME, pan);
+                    cardEmpty = false;
+                }
+
+                if (cv2 != null) {
+                    offset = writeMember(body, offset, !cardEmpty, CV2_NAME, cv2);
+                }
+
+                body[offset++] = '}';
+                body[offset++] = '}';
+            }
+        }
+
+        body[offset] = '}';
+
+        return body;
+    }
+
+    /**
+     * Encode the payment method, with the card object left open for the PAN and CV2 if there is
+     * one
+     * @param paymentMethod payment method
+     * @return UTF-8 JSON
+     */
+    private static byte[] encodePaymentMethod(PaymentMethod paymentMethod) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+        try {
+            // escape as Gson does so the payment method matches the rest of the body
+            JsonWriter out = new JsonWriter(new OutputStreamWriter(bytes, "UTF-8"));
+            out.setHtmlSafe(true);
+
+            if (paymentMethod.getCard() == null) {
+                PaymentMethod.GSON_ADAPTER.write(out, paymentMethod);
+            } else {
+                out.beginObject();
+
+                if (paymentMethod.getBillingAddress() != null) {
+                    out.name("billingAddress");
+                    BillingAddress.GSON_ADAPTER.write(out, paymentMethod.getBillingAddress());
+                }
+
+                out.name("card").beginObject();
+                PaymentCard.writeMembers(out, paymentMethod.getCard());
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write the payment method", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static int skipWhitespace(byte[] bytes, int offset) {
+        while (offset < bytes.length && isWhitespace(bytes[offset])) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private static int skipWhitespaceBack(byte[] bytes, int end) {
+        while (end > 0 && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        // JSON whitespace
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static int writeMember(byte[] body, int offset, boolean comma, byte[] name,
+                                   SensitiveChars value) {
+        if (comma) {
+            body[offset++] = ',';
+        }
+
+        System.arraycopy(name, 0, body, offset, name.length);
+        offset += name.length;
+
+        return value.writeJson(body, offset);
+    }
+}
@@ -75,6 +75,30 @@ public class PaymentError {
          */
         TRANSACTION_NOT_FOUND(10, true);
 
+        // range of the codes above, so a code added outside it is still found
+        private static final int CODE_MIN;
+        private static final int CODE_MAX;
+
+        private static final ReasonCode[] BY_CODE;
+
+        static {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+
+            for (ReasonCode reasonCode : values()) {
+                min = Math.min(min, reasonCode.code);
+                max = Math.max(max, reasonCode.code);
+            }
+
+            CODE_MIN = min;
+            CODE_MAX = max;
+            BY_CODE = new ReasonCode[CODE_MAX - CODE_MIN + 1];
+
+            for (ReasonCode reasonCode : values()) {
+                BY_CODE[reasonCode.code - CODE_MIN] = reasonCode;
+            }
+        }
+
         int code;
         boolean safeToRetryPayment;
 
@@ -95,8 +119,10 @@ public class PaymentError {
 
         public static ReasonCode getReasonCode(int code) {
 
-            for (ReasonCode reasonCode : ReasonCode.values()) {
-                if (reasonCode.code == code) {
+            if (code >= CODE_MIN && code <= CODE_MAX) {
+                ReasonCode reasonCode = BY_CODE[code - CODE_MIN];
+
+                if (reasonCode != null) {
                     return reasonCode;
                 }
             }
@@ -105,6 +131,23 @@ public class PaymentError {
         }
     }
 
+    /**
+     * Build from a failed response
+     * @param response payment response, may be null
+     * @return payment error
+     */
+    static PaymentError fromResponse(MakePaymentResponse response) {
+        PaymentError error = new PaymentError();
+
+        if (response != null) {
+            error.setReasonCode(response.getReasonCode());
+            error.setReasonMessage(response.getReasonMessage());
+            error.setCustomFields(response.getCustomFields());
+        }
+
+        return error;
+    }
+
     public List<CustomField> getCustomFields() {
         return customFields;
     }
@@ -9,44 +9,43 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.pay360.sdk.library.ThreeDSActivity;
 import com.pay360.sdk.library.device.DeviceManager;
 import com.pay360.sdk.library.exception.InvalidCredentialsException;
 import com.pay360.sdk.library.exception.PaymentValidationException;
 import com.pay360.sdk.library.exception.TransactionInProgressException;
 import com.pay360.sdk.library.exception.TransactionSuspendedFor3DSException;
+import com.pay360.sdk.library.network.ConnectionWarmer;
+import com.pay360.sdk.library.network.DispatcherMetrics;
 import com.pay360.sdk.library.network.EndpointManager;
 import com.pay360.sdk.library.network.NetworkManager;
+import com.pay360.sdk.library.network.OkHttpPay360Service;
 import com.pay360.sdk.library.network.Pay360Service;
-import com.pay360.sdk.library.network.SelfSignedSocketFactory;
+import com.pay360.sdk.library.network.PaymentDispatcher;
+import com.pay360.sdk.library.network.ProtocolMonitor;
+import com.pay360.sdk.library.network.RetryAfterInterceptor;
+import com.pay360.sdk.library.network.StatusEventSource;
+import com.pay360.sdk.library.network.TlsSessionCache;
+import com.pay360.sdk.library.network.WarmupResult;
 import com.pay360.sdk.library.security.Credentials;
-import com.pay360.sdk.library.utils.Timer;
 import com.squareup.okhttp.OkHttpClient;
 
-import java.lang.ref.WeakReference;
-import java.net.ConnectException;
-import java.net.UnknownHostException;
+import java.io.File;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
-import java.util.UUID;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import retrofit.RestAdapter;
-import retrofit.RetrofitError;
-import retrofit.client.OkClient;
-import retrofit.converter.GsonConverter;
-import retrofit.mime.TypedByteArray;
-import rx.Observer;
-import rx.android.schedulers.AndroidSchedulers;
-import rx.subscriptions.CompositeSubscription;
-
 /**
  * Handles payments
  *
@@ -56,20 +55,12 @@ public class PaymentManager {
 
     private static final int HTTP_TIMEOUT_CONNECTION                = 10; // 10s
 
-    private static final int TIMEOUT_RESPONSE_PAYMENT               = 30; // 30s
-    private static final int TIMEOUT_RESPONSE_RESUME                = 30; // 30s
-    private static final int TIMEOUT_RESPONSE_STATUS                = 5; // 5s
-
     private static final int DEFAULT_SESSION_TIMEOUT                = 60; // 60s
 
-    private static final int REASON_SUSPENDED_FOR_3D_SECURE         = 7;
-    private static final int REASON_SUSPENDED_FOR_CLIENT_REDIRECT   = 8;
-
-    private static final long DEFAULT_STATUS_BACKOFF                = 5000L;
+    private static final String JOURNAL_FILE_NAME                   = "pay360_operations.journal";
 
-    // backoff in ms for retrying status command e.g. first retry = 1000ms, 2nd = 2000ms, 3rd = 2000ms
-    // 4th = 5000ms, thereafter 5000ms
-    private static final Long[] STATUS_RETRY_BACKOFF = new Long[] {1000L, 2000L, 2000L, 5000L};
+    // stateless, shared by every PaymentManager unless the app supplies its own
+    private static final PaymentCodec DEFAULT_CODEC                 = new GsonPaymentCodec();
 
     public interface MakePaymentCallback {
 
@@ -78,55 +69,68 @@ public class PaymentManager {
         public void paymentFailed(PaymentError error);
     }
 
+    public interface TransactionStatusCallback {
+
+        public void statusSucceeded(String operationId, PaymentSuccess success);
+
+        public void statusFailed(String operationId, PaymentError error);
+
+        public void statusLookupCompleted();
+    }
+
+    public interface PrewarmCallback {
+
+        public void prewarmCompleted(WarmupResult result);
+    }
+
     private Context context;
     private int sessionTimeoutSeconds = DEFAULT_SESSION_TIMEOUT;
     private String url;
     private Credentials credentials;
-
-    // use a WeakReference to ensure calling activity can be GC'ed
-    private WeakReference<PaymentManager.MakePaymentCallback> callback;
-    private boolean callbackLocked = false;
-    private CallbackPending callbackPending;
     private boolean isCustomUrl;
-    private DeviceManager deviceManager;
-    private DeviceInfo deviceInfo;
-    private String transactionId;
-    private String operationId;
-    private Pay360Service service;
-    private String serviceServerUrl;
-    private MakePaymentRequest makePaymentRequest;
-    private ThreeDSResumeRequest threeDSResumeRequest;
-    private Timer sessionTimer;
-    private Timer retryDelayTimer;
-    private State state = State.STATE_IDLE;
-    private CompositeSubscription subscriptions = new CompositeSubscription();
-    private int retryCount;
+    // device, SDK and merchant app fields pre-encoded once as they are the same for every payment
+    private byte[] requestPrefix;
+    private OkHttpClient baseHttpClient;
 
-    private static PaymentManager instance;
+    // TLS sessions persisted across app launches
+    private TlsSessionCache tlsSessionCache;
 
-    private class CallbackPending {
-        private boolean isError;
-        private PaymentSuccess paymentSuccess;
-        private PaymentError paymentError;
-    }
+    // payments in flight, persisted so they can be reconciled after the process dies
+    private OperationJournal journal;
+    private boolean reconciled;
+    private TransactionStatusCallback reconciliationCallback;
 
-    private enum State {
-        STATE_IDLE,
-        STATE_PAYMENT_WAITING_NETWORK,
-        STATE_PAYMENT_WAITING_RESPONSE,
-        STATE_RESUME_WAITING_NETWORK,
-        STATE_RESUME_WAITING_RESPONSE,
-        STATE_STATUS_WAITING_NETWORK,
-        STATE_STATUS_WAITING_RESPONSE,
-        STATE_SUSPENDED_FOR_3DS
-    }
+    // final outcomes of recent operations
+    private final OutcomeCache outcomeCache = new OutcomeCache();
 
-    private enum Event {
-        EVENT_RESPONSE_NOT_RECEIVED,
-        EVENT_NETWORK_CONNECTED,
-        EVENT_GET_STATUS,
-        EVENT_SESSION_TIMEOUT;
-    }
+    // wait for the status to be pushed by the server rather than polling
+    private boolean statusPushEnabled;
+
+    // delay before retrying the status unless the server suggests one
+    private BackoffPolicy backoffPolicy = new DecorrelatedJitterBackoff();
+
+    // Retry-After hints from the server, by operation
+    private final RetryAfterInterceptor retryAfterInterceptor = new RetryAfterInterceptor();
+
+    // records whether requests go over HTTP/2 or HTTP/1.1
+    private final ProtocolMonitor protocolMonitor = new ProtocolMonitor();
+
+    // encodes requests and decodes responses for every service
+    private PaymentCodec codec = DEFAULT_CODEC;
+
+    // decodes error bodies on the I/O thread
+    private final ErrorResponseDecoder errorResponseDecoder = new ErrorResponseDecoder();
+
+    // services are cached per server URL so switching environment doesn't rebuild them
+    private final Map<String, ServiceEntry> services = new HashMap<String, ServiceEntry>();
+
+    // session backing the singleton payment API
+    private PaymentSession defaultSession;
+
+    // sessions with an operation in flight - these receive network and 3DS events
+    private final List<PaymentSession> activeSessions = new CopyOnWriteArrayList<PaymentSession>();
+
+    private static PaymentManager instance;
 
     // Requires a singleton to maintain state between screen orientation changes
     public synchronized static PaymentManager getInstance(Context context) {
@@ -164,8 +168,8 @@ public class PaymentManager {
         this.context.registerReceiver(new NetworkConnectivityReceiver(),
                 new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
 
-        deviceManager = new DeviceManager(this.context);
-        deviceInfo = new DeviceInfo()
+        DeviceManager deviceManager = new DeviceManager(this.context);
+        DeviceInfo deviceInfo = new DeviceInfo()
                 .setSdkInstallId(deviceManager.getSdkInstallId())
                 .setOsFamily(deviceManager.getOsFamily())
                 .setOsName(deviceManager.getOsName())
@@ -176,21 +180,38 @@ public class PaymentManager {
                 .setScreenRes(deviceManager.getScreenRes())
                 .setScreenDpi(deviceManager.getScreenDpi());
 
-        retryDelayTimer = new Timer(new RetryDelayTimeoutHandler(), DEFAULT_STATUS_BACKOFF, false);
+        requestPrefix = MakePaymentRequest.encodePrefix(deviceManager.getSdkVersion(),
+                deviceManager.getMerchantAppName(),
+                deviceManager.getMerchantAppVersion(),
+                deviceInfo);
+
+        tlsSessionCache = new TlsSessionCache(this.context);
+
+        journal = new OperationJournal(new File(this.context.getFilesDir(), JOURNAL_FILE_NAME));
+
+        // map and load the journal off the main thread - operations left by a previous run are
+        // reconciled once the URL and credentials are set
+        PaymentDispatcher.getInstance().getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.open();
+            }
+        });
+
+        defaultSession = new PaymentSession(this);
     }
 
-    private Pay360Service createService(String serverUrl)
+    private synchronized ServiceEntry createService(String serverUrl)
         throws NoSuchAlgorithmException, KeyManagementException {
 
-        // only create service once or if serverUrl changes
-        if (service == null ||
-            !serviceServerUrl.equals(serverUrl)) {
+        // only create service once per serverUrl
+        ServiceEntry entry = services.get(serverUrl);
 
-            Gson gson = new GsonBuilder()
-                    .setDateFormat("yyyy-MM-dd'T'HH:mm:ss:SSS")
-                    .create();
+        if (entry == null) {
 
-            OkHttpClient httpClient = new OkHttpClient();
+            // clone the app's client so the SDK settings below don't leak into it - the clone
+            // shares its connection pool, cache, dispatcher and DNS
+            OkHttpClient httpClient = baseHttpClient != null ? baseHttpClient.clone() : new OkHttpClient();
             httpClient.setConnectTimeout(HTTP_TIMEOUT_CONNECTION, TimeUnit.SECONDS);
             httpClient.setReadTimeout(DEFAULT_SESSION_TIMEOUT, TimeUnit.SECONDS);
 
@@ -198,33 +219,44 @@ public class PaymentManager {
             // issues - we want to have complete control over this so disable this functionality
             httpClient.setRetryOnConnectionFailure(false);
 
-            // setting the executor is required for the Robolectric tests to run
-            Executor executor = Executors.newSingleThreadExecutor();
+            // negotiate HTTP/2 where supported so concurrent sessions share one connection
+            protocolMonitor.apply(httpClient);
+
+            httpClient.interceptors().add(retryAfterInterceptor);
 
-            isCustomUrl = false;
+            // setting the executor is required for the Robolectric tests to run - all services
+            // share the SDK wide dispatcher
+            Executor executor = PaymentDispatcher.getInstance().getExecutor();
 
-            // by default Retrofit will throw an error if self signed certificate is used so allow
+            boolean customUrl = false;
+
+            // by default OkHttp will throw an error if self signed certificate is used so allow
             // self signed certificate for custom URLs e.g. anything other than production
             if (EndpointManager.isCustomUrl(serverUrl)) {
-                httpClient.setSslSocketFactory(new SelfSignedSocketFactory().build());
-                isCustomUrl = true;
+                httpClient.setSslSocketFactory(tlsSessionCache.getSocketFactory(true));
+                customUrl = true;
+            } else if (baseHttpClient == null) {
+                // resume TLS sessions saved by previous launches - an app supplied client keeps its
+                // own socket factory so its sessions are shared instead
+                httpClient.setSslSocketFactory(tlsSessionCache.getSocketFactory(false));
             }
 
-            RestAdapter adapter = new RestAdapter.Builder()
-                    .setEndpoint(serverUrl)
-                    .setExecutors(executor, executor)
-                    .setConverter(new GsonConverter(gson))
-                            //                .setLogLevel(RestAdapter.LogLevel.FULL)
-                            //                .setLog(new AndroidLog(Logger.TAG))
-                    .setClient(new OkClient(httpClient))
-                    .build();
+            // calls OkHttp directly - no dynamic proxy or annotation parsing on the first payment
+            Pay360Service service = new OkHttpPay360Service(httpClient, new PaymentConverter(codec),
+                    errorResponseDecoder, serverUrl, executor);
+
+            // streams are held open, so never on a request thread
+            StatusEventSource statusEventSource = new StatusEventSource(httpClient, codec, serverUrl,
+                    PaymentDispatcher.getInstance().getStreamExecutor());
 
-            service = adapter.create(Pay360Service.class);
+            entry = new ServiceEntry(service, httpClient, statusEventSource, customUrl);
 
-            serviceServerUrl = serverUrl;
+            services.put(serverUrl, entry);
         }
 
-        return service;
+        isCustomUrl = entry.customUrl;
+
+        return entry;
     }
 
     /**
@@ -247,6 +279,7 @@ public class PaymentManager {
      */
     public PaymentManager setUrl(String url) {
         this.url = url;
+        reconcile();
         return this;
     }
 
@@ -257,6 +290,81 @@ public class PaymentManager {
      */
     public PaymentManager setCredentials(Credentials credentials) {
         this.credentials = credentials;
+        reconcile();
+        return this;
+    }
+
+    /**
+     * Receive the outcome of payments left unresolved when the app was last killed e.g. while
+     * waiting for the response or during 3D Secure. The SDK checks their status in the background
+     * once the URL and credentials are set, so set this callback before calling
+     * {@link #setUrl(String)} and {@link #setCredentials(Credentials)}.
+     * @param callback callback for each reconciled payment
+     * @return PaymentManager for chaining
+     */
+    public PaymentManager setReconciliationCallback(TransactionStatusCallback callback) {
+        this.reconciliationCallback = callback;
+        return this;
+    }
+
+    /**
+     * Receive the outcome of a payment which timed out or is processing through a Server-Sent
+     * Events channel as soon as the server has it, rather than polling for the status. Falls back
+     * to polling if the server doesn't support the channel. Defaults to disabled.
+     * @param statusPushEnabled true to enable the push channel
+     * @return PaymentManager for chaining
+     */
+    public PaymentManager setStatusPushEnabled(boolean statusPushEnabled) {
+        this.statusPushEnabled = statusPushEnabled;
+        return this;
+    }
+
+    /**
+     * Policy for the delay between status requests while the outcome of a payment is unknown.
+     * Defaults to {@link DecorrelatedJitterBackoff}. A Retry-After from the server takes precedence.
+     * @param backoffPolicy backoff policy, null to restore the default
+     * @return PaymentManager for chaining
+     */
+    public PaymentManager setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy != null ? backoffPolicy : new DecorrelatedJitterBackoff();
+        return this;
+    }
+
+    /**
+     * Share the app's HTTP client with the SDK so payments reuse its connection pool, cache and
+     * established TLS sessions rather than opening a second cold connection. The SDK works on a
+     * clone of the client and applies its own timeouts and retry policy, the client passed is
+     * not modified.
+     * @param httpClient base client or null to use the SDK's own client
+     * @return PaymentManager for chaining
+     */
+    public synchronized PaymentManager setHttpClient(OkHttpClient httpClient) {
+        if (httpClient != baseHttpClient) {
+            baseHttpClient = httpClient;
+
+            // rebuild services on next use so they pick up the new client
+            services.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Replace the JSON codec for the payment requests and responses e.g. to share the app's own
+     * serializer. Defaults to {@link GsonPaymentCodec}.
+     * @param codec codec or null to use the default
+     * @return PaymentManager for chaining
+     */
+    public synchronized PaymentManager setPaymentCodec(PaymentCodec codec) {
+        if (codec == null) {
+            codec = DEFAULT_CODEC;
+        }
+
+        if (codec != this.codec) {
+            this.codec = codec;
+
+            // rebuild services on next use so they pick up the new codec
+            services.clear();
+        }
         return this;
     }
 
@@ -265,14 +373,14 @@ public class PaymentManager {
      * @param callback callback when payment completed (success or fail)
      */
     public void registerPaymentCallback(PaymentManager.MakePaymentCallback callback) {
-        this.callback = new WeakReference<MakePaymentCallback>(callback);
+        defaultSession.registerPaymentCallback(callback);
     }
 
     /**
      * Unregister the payment callback. Call this prior to exiting your payment activity/fragment
      */
     public void unregisterPaymentCallback() {
-        this.callback = null;
+        defaultSession.unregisterPaymentCallback();
     }
 
     /**
@@ -291,7 +399,7 @@ public class PaymentManager {
      *
      */
     public void lockCallback() {
-        this.callbackLocked = true;
+        defaultSession.lockCallback();
     }
 
     /**
@@ -309,20 +417,7 @@ public class PaymentManager {
      * </pre>
      */
     public void unlockCallback() {
-        this.callbackLocked = false;
-
-        // send back pending response
-        if (callback != null &&
-            callback.get() != null) {
-            if (callbackPending != null) {
-                if (callbackPending.isError) {
-                    callback.get().paymentFailed(callbackPending.paymentError);
-                } else {
-                    callback.get().paymentSucceeded(callbackPending.paymentSuccess);
-                }
-                callbackPending = null;
-            }
-        }
+        defaultSession.unlockCallback();
     }
 
     /**
@@ -342,45 +437,7 @@ public class PaymentManager {
      */
     public String makePayment(final PaymentRequest request)
             throws PaymentValidationException, InvalidCredentialsException, TransactionInProgressException {
-
-        // fail fast if session still in progress
-        if (state != State.STATE_IDLE) {
-           throw new TransactionInProgressException();
-        }
-
-        // ensure last payment is forgotten
-        callbackPending = null;
-
-        // validate request data
-        validatePaymentDetails(request);
-
-        createService();
-
-        // call REST endpoint
-        makePaymentRequest = new MakePaymentRequest()
-                .setSdkVersion(deviceManager.getSdkVersion())
-                .setMerchantAppName(deviceManager.getMerchantAppName())
-                .setMerchantAppVersion(deviceManager.getMerchantAppVersion())
-                .setDeviceInfo(deviceInfo)
-                .setTransaction(request.getTransaction())
-                .setPaymentMethod(new PaymentMethod().setCard(request.getCard())
-                        .setBillingAddress(request.getAddress()))
-                .setFinancialServices(request.getFinancialServices())
-                .setCustomer(request.getCustomer())
-                .setCustomFields(request.getCustomFields());
-
-        // create a unique identifier for the payment operation which can be used by the app to query
-        // the status
-        operationId = UUID.randomUUID().toString();
-
-        onSessionStart();
-
-        setState(State.STATE_PAYMENT_WAITING_NETWORK);
-
-        // wait for network connection - this returns straightaway
-        waitForNetworkConnection();
-
-        return operationId;
+        return defaultSession.makePayment(request);
     }
 
     /**
@@ -394,222 +451,269 @@ public class PaymentManager {
      */
     public void getTransactionStatus(String operationId) throws InvalidCredentialsException,
             TransactionInProgressException, TransactionSuspendedFor3DSException {
+        defaultSession.getTransactionStatus(operationId);
+    }
 
-        switch (state) {
-            case STATE_IDLE:
+    /**
+     * Get the outcome of a finished payment from memory without a request to the server. Only
+     * final outcomes of recent payments are held - success, declined and cancelled by the user.
+     * Use {@link #getTransactionStatus(String)} if the outcome is not available.
+     * @param operationId identifier returned from {@link #makePayment(PaymentRequest)}
+     * @return outcome or null if not known
+     */
+    public PaymentOutcome peekOutcome(String operationId) {
+        return outcomeCache.get(operationId);
+    }
+
+    /**
+     * Number of outcomes found by {@link #peekOutcome(String)} and {@link #getTransactionStatus(String)}
+     * without a request to the server
+     * @return cache hits
+     */
+    public long getOutcomeCacheHitCount() {
+        return outcomeCache.getHitCount();
+    }
 
-                this.operationId = operationId;
+    /**
+     * Number of outcomes not found in memory
+     * @return cache misses
+     */
+    public long getOutcomeCacheMissCount() {
+        return outcomeCache.getMissCount();
+    }
 
-                // call server endpoint to get transaction status
-                createService();
+    /**
+     * Get the status of several transactions e.g. those left unresolved by a crash or loss of
+     * connectivity. Unlike {@link #getTransactionStatus(String)} this does not need the
+     * PaymentManager to be idle. Results are returned on the UI thread as each arrives, followed
+     * by {@link TransactionStatusCallback#statusLookupCompleted()}.
+     * @param operationIds identifiers returned from {@link #makePayment(PaymentRequest)}
+     * @param callback callback for each result
+     * @throws InvalidCredentialsException missing token, installation id or server url
+     * @return lookup in progress, call {@link BatchStatusLookup#cancel()} to stop it
+     */
+    public BatchStatusLookup getTransactionStatuses(Collection<String> operationIds,
+                                                    TransactionStatusCallback callback)
+            throws InvalidCredentialsException {
 
-                onSessionStart();
+        BatchStatusLookup lookup = new BatchStatusLookup(createService(), credentials,
+                operationIds, callback);
+        lookup.start();
 
-                setState(State.STATE_STATUS_WAITING_NETWORK);
+        return lookup;
+    }
 
-                // wait for network connection - this returns straightaway
-                waitForNetworkConnection();
-                break;
-            case STATE_SUSPENDED_FOR_3DS:
-               throw new TransactionSuspendedFor3DSException();
-            default:
-               throw new TransactionInProgressException();
-        }
+    /**
+     * Create an independent payment session. Use a session per payment or status check when
+     * several operations need to be in flight at once e.g. split baskets. Sessions share this
+     * PaymentManager's URL, credentials, session timeout and HTTP connection pool but each has its
+     * own state, timers and callback.
+     * @return new idle session
+     */
+    public PaymentSession createSession() {
+        return new PaymentSession(this);
     }
 
-    private void createService() throws InvalidCredentialsException {
-        // check null url
+    /**
+     * Asynchronously resolve, connect and complete the TLS handshake with the Pay360 server so the
+     * first call to {@link #makePayment(PaymentRequest)} can reuse a warm connection. Call this
+     * when the checkout screen is shown.
+     *
+     * <p>You must call {@link #setUrl(String)} first
+     *
+     * @param callback optional callback, executed on the UI thread, reporting how long the warmup
+     * took and whether the warm connection is pooled
+     * @throws InvalidCredentialsException missing server url
+     */
+    public void prewarm(final PrewarmCallback callback) throws InvalidCredentialsException {
+        // check null url - credentials not required as no request is sent to the API
         if (TextUtils.isEmpty(url)) {
             throw new InvalidCredentialsException();
         }
 
-        // check null credentials
-        if (credentials == null) {
-            throw new InvalidCredentialsException();
-        }
-
-        // validate credentials
-        credentials.validateData();
+        ServiceEntry entry;
 
         try {
-            createService(url);
+            entry = createService(url);
         } catch (Exception e) {
             throw new RuntimeException("Failed to set up payment service");
         }
-    }
-
-    private void setState(State state) {
-        this.state = state;
-    }
-
-    /*
-    * State machine - no need to for synchronisation as all callbacks on the UI thread
-    */
-    private void onEvent(Event event) {
 
-        if (state != null &&
-                event != null) {
+        final ConnectionWarmer warmer = new ConnectionWarmer(entry.httpClient, url);
+        final Handler handler = new Handler(Looper.getMainLooper());
 
-            switch (event) {
-                case EVENT_NETWORK_CONNECTED:
-                    onEventNetworkConnected(state);
-                    break;
-
-                case EVENT_RESPONSE_NOT_RECEIVED:
-                    onEventResponseNotReceived(state);
-                    break;
-
-                case EVENT_GET_STATUS:
-                    onEventRetryStatus(state);
-                    break;
+        PaymentDispatcher.getInstance().getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final WarmupResult result = warmer.warm();
 
-                case EVENT_SESSION_TIMEOUT:
-                    onEventSessionTimeout(state);
-                    break;
+                if (callback != null) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.prewarmCompleted(result);
+                        }
+                    });
+                }
             }
-        }
+        });
     }
 
     /**
-     * Timeout or socket error
-     * @param state
+     * Checks if a pre-warmed connection is still available for the next payment
+     * @return true if an idle connection is held in the connection pool
      */
-    private void onEventResponseNotReceived(State state) {
-        // only request status if waiting payment or resume response
-        if (state == State.STATE_PAYMENT_WAITING_RESPONSE ||
-            state == State.STATE_RESUME_WAITING_RESPONSE ||
-            state == State.STATE_STATUS_WAITING_RESPONSE) {
+    public synchronized boolean isConnectionWarm() {
+        ServiceEntry entry = services.get(url);
 
-            // back off for period dependant on retry attempts
-            retryDelayTimer.start(getStatusBackoff(retryCount++));
-        }
+        return entry != null && ConnectionWarmer.hasIdleConnection(entry.httpClient);
     }
 
     /**
-     * Callback for retry timer expiration
+     * Protocol statistics for requests to the Pay360 server e.g. to check HTTP/2 is negotiated
+     * @return protocol monitor
      */
-    private class RetryDelayTimeoutHandler implements Runnable {
-        @Override
-        public void run() {
-            onEvent(Event.EVENT_GET_STATUS);
-        }
+    public ProtocolMonitor getProtocolMonitor() {
+        return protocolMonitor;
     }
 
     /**
-     * Returns backoff period to wait before retrying get status
-     * @param retry
-     * @return
+     * Persistent TLS session cache e.g. to check whether handshakes with the Pay360 server are
+     * resumed or full
+     * @return TLS session cache
      */
-    private long getStatusBackoff(int retry) {
+    public TlsSessionCache getTlsSessionCache() {
+        return tlsSessionCache;
+    }
 
-        // get backoff period before sending to status endpoint, period depends on retry attempts
-        long backoff = DEFAULT_STATUS_BACKOFF;
+    /**
+     * Metrics for the SDK's HTTP dispatcher e.g. to monitor request queuing when running
+     * several {@link PaymentSession}s
+     * @return current pool size and queue depth
+     */
+    public DispatcherMetrics getDispatcherMetrics() {
+        return PaymentDispatcher.getInstance().getMetrics();
+    }
 
-        if (retry < STATUS_RETRY_BACKOFF.length) {
-            backoff = STATUS_RETRY_BACKOFF[retry];
+    Pay360Service createService() throws InvalidCredentialsException {
+        // check null url
+        if (TextUtils.isEmpty(url)) {
+            throw new InvalidCredentialsException();
+        }
+
+        // check null credentials
+        if (credentials == null) {
+            throw new InvalidCredentialsException();
         }
 
-        return backoff;
+        // validate credentials
+        credentials.validateData();
+
+        try {
+            return createService(url).service;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to set up payment service");
+        }
     }
 
-    private void onEventRetryStatus(State state) {
-        // ensure still in correct state + session hasn't timed out
-        if (state == State.STATE_PAYMENT_WAITING_RESPONSE ||
-            state == State.STATE_RESUME_WAITING_RESPONSE ||
-            state == State.STATE_STATUS_WAITING_RESPONSE) {
+    MakePaymentRequest buildMakePaymentRequest(PaymentRequest request) {
+        return new MakePaymentRequest()
+                .setEncodedPrefix(requestPrefix)
+                .setTransaction(request.getTransaction())
+                .setPaymentMethod(new PaymentMethod().setCard(request.getCard())
+                        .setBillingAddress(request.getAddress()))
+                .setFinancialServices(request.getFinancialServices())
+                .setCustomer(request.getCustomer())
+                .setCustomFields(request.getCustomFields());
+    }
 
-            subscriptions.add(service.paymentStatus("Bearer " + credentials.getToken(),
-                    credentials.getInstallationId(), operationId)
-                    .timeout(TIMEOUT_RESPONSE_STATUS, TimeUnit.SECONDS)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new ResponseObserver()));
+    Context getContext() {
+        return context;
+    }
 
-            setState(State.STATE_STATUS_WAITING_RESPONSE);
-        }
+    Credentials getCredentials() {
+        return credentials;
     }
 
-    /**
-     * Network connection made
-     * @param state
-     */
-    private void onEventNetworkConnected(State state) {
+    int getSessionTimeoutSeconds() {
+        return sessionTimeoutSeconds;
+    }
 
-        // network connected - send request
-        if (state == State.STATE_PAYMENT_WAITING_NETWORK) {
-            subscriptions.add(service.makePayment(makePaymentRequest, "Bearer " + credentials.getToken(),
-                    operationId, credentials.getInstallationId())
-                    .timeout(TIMEOUT_RESPONSE_PAYMENT, TimeUnit.SECONDS)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new ResponseObserver()));
+    boolean isCustomUrl() {
+        return isCustomUrl;
+    }
 
-            setState(State.STATE_PAYMENT_WAITING_RESPONSE);
-        } else if (state == State.STATE_RESUME_WAITING_NETWORK) {
-            subscriptions.add(service.resume3DS(threeDSResumeRequest, "Bearer " + credentials.getToken(),
-                    operationId, credentials.getInstallationId(), transactionId)
-                    .timeout(TIMEOUT_RESPONSE_RESUME, TimeUnit.SECONDS)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new ResponseObserver()));
+    synchronized StatusEventSource getStatusEventSource() {
+        ServiceEntry entry = services.get(url);
 
-            setState(State.STATE_RESUME_WAITING_RESPONSE);
-        } else if (state == State.STATE_STATUS_WAITING_NETWORK) {
-            subscriptions.add(service.paymentStatus("Bearer " + credentials.getToken(),
-                    credentials.getInstallationId(), operationId)
-                    .timeout(TIMEOUT_RESPONSE_STATUS, TimeUnit.SECONDS)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new ResponseObserver()));
-        }
+        return statusPushEnabled && entry != null ? entry.statusEventSource : null;
+    }
+
+    OutcomeCache getOutcomeCache() {
+        return outcomeCache;
+    }
+
+    void recordOperation(byte type, String operationId) {
+        journal.record(type, operationId);
     }
 
     /**
-     * Session timeout
-     * @param state
+     * Check the status of operations journaled by a previous run, once per process
      */
-    private void onEventSessionTimeout(State state) {
+    private void reconcile() {
+        if (reconciled ||
+            TextUtils.isEmpty(url) ||
+            credentials == null) {
+            return;
+        }
+
+        final Pay360Service service;
 
-        if (state != State.STATE_IDLE) {
-            PaymentError error = new PaymentError();
-            error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
-            executeCallback(error);
+        try {
+            service = createService();
+        } catch (InvalidCredentialsException e) {
+            // try again when valid credentials are set
+            return;
         }
-    }
 
-    private void onSessionStart() {
-        subscriptions = new CompositeSubscription();
+        final Credentials credentials = this.credentials;
 
-        // reset state
-        setState(State.STATE_IDLE);
+        reconciled = true;
 
-        // reset retry count
-        retryCount = 0;
+        // after the journal has loaded, on the same background thread
+        PaymentDispatcher.getInstance().getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                List<String> operations = journal.getPreviouslyUnresolved();
 
-        // cancel any existing timers
-        if (sessionTimer != null) {
-            sessionTimer.cancel();
-        }
+                if (!operations.isEmpty()) {
+                    new BatchStatusLookup(service, credentials, operations,
+                            new ReconciliationCallback()).start();
+                }
+            }
+        });
+    }
 
-        // start a new timer
-        sessionTimer = new Timer(new SessionTimeoutHandler(), sessionTimeoutSeconds * 1000, false);
-        sessionTimer.start();
+    BackoffPolicy getBackoffPolicy() {
+        return backoffPolicy;
     }
 
-    private void onSessionEnd() {
-        // unsubscribe so that any pending REST callbacks are ignored - once unsubscribed the composite
-        // subscription is unusable so need to recreate it
-        if (subscriptions != null) {
-            subscriptions.unsubscribe();
-        }
+    long takeRetryAfterMillis(String operationId) {
+        return retryAfterInterceptor.takeDelayMillis(operationId);
+    }
 
-        // reset state
-        setState(State.STATE_IDLE);
+    boolean hasNetworkConnection() {
+        return NetworkManager.hasConnection(context);
+    }
 
-        // cancel timers
-        if (sessionTimer != null) {
-            sessionTimer.cancel();
+    void attachSession(PaymentSession session) {
+        if (!activeSessions.contains(session)) {
+            activeSessions.add(session);
         }
+    }
 
-        if (retryDelayTimer != null) {
-            retryDelayTimer.cancel();
-        }
+    void detachSession(PaymentSession session) {
+        activeSessions.remove(session);
     }
 
     /**
@@ -621,33 +725,51 @@ public class PaymentManager {
      */
     public void validatePaymentDetails(com.pay360.sdk.library.payment.PaymentRequest request)
             throws PaymentValidationException {
+        checkPaymentDetails(request).throwIfInvalid();
+    }
+
+    /**
+     * Validates the payment request reporting every error found rather than throwing the first.
+     * Useful for validating the whole payment form as it changes
+     * @param request payment request
+     * @return validation result
+     */
+    public ValidationResult checkPaymentDetails(com.pay360.sdk.library.payment.PaymentRequest request) {
+        ValidationResult result = new ValidationResult();
 
         if (request == null) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.INVALID_REQUEST);
+            result.add(PaymentValidationException.ErrorCode.INVALID_REQUEST);
+            return result;
         }
 
         // check null transaction
         if (request.getTransaction() == null) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.INVALID_TRANSACTION);
+            result.add(PaymentValidationException.ErrorCode.INVALID_TRANSACTION);
         }
 
         // check null card
         if (request.getCard() == null) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.INVALID_CARD);
+            result.add(PaymentValidationException.ErrorCode.INVALID_CARD);
         }
 
         // validate transaction data
-        request.getTransaction().validateData();
+        if (request.getTransaction() != null) {
+            request.getTransaction().validateData(result);
+        }
 
         // validate card data
-        request.getCard().validateData();
+        if (request.getCard() != null) {
+            request.getCard().validateData(result);
+        }
 
         // validate custom fields if set
         if (request.getCustomFields() != null) {
             for (CustomField customField : request.getCustomFields()) {
-                customField.validateData();
+                customField.validateData(result);
             }
         }
+
+        return result;
     }
 
     /**
@@ -677,258 +799,75 @@ public class PaymentManager {
         PaymentCard.validateCv2(cv2);
     }
 
-    private class ResponseObserver implements Observer<MakePaymentResponse> {
+    /**
+     * Validates cv2 against the length used by the card scheme e.g. 4 digits for American Express.
+     * Useful for inline form validation
+     * @param cv2 card CV2
+     * @param pan card PAN, or the start of it
+     * @throws PaymentValidationException error validating card CV2
+     */
+    public void validateCardCv2(String cv2, String pan) throws PaymentValidationException {
+        PaymentCard.validateCv2(cv2, pan);
+    }
 
-        /**
-         * Callback when REST call succeeds i.e. HTTP 200
-         * @param paymentResponse
-         */
-        @Override
-        public void onNext(MakePaymentResponse paymentResponse) {
-
-            if (paymentResponse != null &&
-               !paymentResponse.isFailed()) {
-
-                // check if 3D secure redirect
-                if (paymentResponse.getReasonCode() == REASON_SUSPENDED_FOR_3D_SECURE) {
-                    on3DSecure(paymentResponse);
-                } else {
-                    if (paymentResponse.isProcessing()) {
-                        onPaymentProcessing(paymentResponse);
-                    } else {
-                        onPaymentSuccess(paymentResponse);
-                    }
-                }
-            } else {
-                onPaymentFailed(paymentResponse);
-            }
-        }
+    /**
+     * Completes reconciled operations in the journal and passes the outcome to the app
+     */
+    private class ReconciliationCallback implements TransactionStatusCallback {
 
-        /**
-         * Callback when REST call fails i.e. no connection or HTTP != 200
-         * @param e
-         */
         @Override
-        public void onError(Throwable e) {
-
-            PaymentError error = new PaymentError();
-
-            if (e instanceof RetrofitError) {
-
-                RetrofitError retrofitError = (RetrofitError)e;
-
-                switch (retrofitError.getKind()) {
-                    // An IOException occurred while communicating to the server.
-                    case NETWORK:
-                        // if failed to connect when making payment or resume then return straight away,
-                        // no point in attempting to read state of payment as we know the request
-                        // never made it to the server
-                        if ((state == State.STATE_PAYMENT_WAITING_RESPONSE ||
-                             state == State.STATE_RESUME_WAITING_RESPONSE) &&
-                            (retrofitError.getCause() instanceof ConnectException ||
-                             retrofitError.getCause() instanceof UnknownHostException)) {
-
-                            error.setReasonCode(PaymentError.ReasonCode.NETWORK_NO_CONNECTION);
-                            executeCallback(error);
-                        } else {
-                            // attempt to get status of transaction
-                            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
-                        }
-                        break;
-
-                    // A non-200 HTTP status code was received from the server
-                    case HTTP:
-
-                        if (retrofitError.getResponse() != null) {
+        public void statusSucceeded(String operationId, PaymentSuccess success) {
+            recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+            outcomeCache.put(operationId, new PaymentOutcome(success));
 
-                            // attempt to parse JSON in the response
-                            MakePaymentResponse paymentResponse = parseErrorResponse(retrofitError);
-
-                            if (paymentResponse != null) {
-
-                                error.setReasonCode(paymentResponse.getReasonCode());
-                                error.setReasonMessage(paymentResponse.getReasonMessage());
-                                error.setCustomFields(paymentResponse.getCustomFields());
-                            }
-                        }
-                        executeCallback(error);
-
-                        break;
-
-                    // An exception was thrown while (de)serializing a body
-                    case CONVERSION:
-                        // An internal error occurred while attempting to execute a request
-                    case UNEXPECTED:
-                    default:
-                        executeCallback(error);
-                        break;
-                }
-            } else {
-                // something other than a Retrofit exception - not expecting this but need to handle
-                onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+            if (reconciliationCallback != null) {
+                reconciliationCallback.statusSucceeded(operationId, success);
             }
         }
 
         @Override
-        public void onCompleted() {
-            // nothing to do
-        }
-
-        private void onPaymentProcessing(MakePaymentResponse paymentResponse) {
-            // payment is in flight, retry status to wait until success\failure
-            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
-        }
-
-        private void onPaymentSuccess(MakePaymentResponse paymentResponse) {
-            // payment successful - build success object
-            PaymentSuccess success = new PaymentSuccess();
-
-            success.setAmount(paymentResponse.getAmount());
-            success.setCurrency(paymentResponse.getCurrency());
-            success.setTransactionId(paymentResponse.getTransactionId());
-            success.setMerchantReference(paymentResponse.getMerchantRef());
-            success.setLastFourPan(paymentResponse.getLastFourDigits());
-            success.setMaskedPan(paymentResponse.getMaskedPan());
-            success.setCustomFields(paymentResponse.getCustomFields());
-
-            executeCallback(success);
-        }
-
-        private void onPaymentFailed(MakePaymentResponse paymentResponse) {
-            // payment failed
-            PaymentError error = new PaymentError();
-
-            if (paymentResponse != null) {
-                error.setReasonCode(paymentResponse.getReasonCode());
-                error.setReasonMessage(paymentResponse.getReasonMessage());
-                error.setCustomFields(paymentResponse.getCustomFields());
+        public void statusFailed(String operationId, PaymentError error) {
+            // outcome still unknown - leave in the journal to retry on the next launch
+            if (error.getReasonCode() != PaymentError.ReasonCode.TRANSACTION_TIMED_OUT &&
+                error.getReasonCode() != PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING &&
+                error.getReasonCode() != PaymentError.ReasonCode.SERVER_ERROR) {
+                recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
             }
 
-            executeCallback(error);
-        }
-
-        private void on3DSecure(MakePaymentResponse paymentResponse) {
-            // ensure response contains valid 3DS credentials
-            MakePaymentResponse.ThreeDSecure threeDSecure = paymentResponse.getThreeDSecure();
-
-            if (threeDSecure == null ||
-                !threeDSecure.validateData()) {
-                PaymentError error = new PaymentError();
-                error.setReasonCode(PaymentError.ReasonCode.SERVER_ERROR);
-                error.setReasonMessage("Missing 3D Secure credentials");
-
-                executeCallback(error);
-            } else {
-
-                // if this is in response to a get status then pass back error
-                if (state == State.STATE_STATUS_WAITING_RESPONSE) {
-                    PaymentError error = new PaymentError();
-                    error.setReasonCode(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING);
-
-                    executeCallback(error);
-                } else {
-                    // otherwise continue with 3DS
-                    transactionId = paymentResponse.getTransactionId();
-
-                    // show 3D secure in separate activity
-                    Intent intent = new Intent(context, ThreeDSActivity.class);
-                    intent.putExtra(ThreeDSActivity.EXTRA_ACS_URL, threeDSecure.getAcsUrl());
-                    intent.putExtra(ThreeDSActivity.EXTRA_TERM_URL, threeDSecure.getTermUrl());
-                    intent.putExtra(ThreeDSActivity.EXTRA_PAREQ, threeDSecure.getPareq());
-                    intent.putExtra(ThreeDSActivity.EXTRA_MD, threeDSecure.getMd());
-                    intent.putExtra(ThreeDSActivity.EXTRA_TRANSACTION_ID, paymentResponse.getTransactionId());
-                    intent.putExtra(ThreeDSActivity.EXTRA_SESSION_TIMEOUT, threeDSecure.getSessionTimeout());
-                    intent.putExtra(ThreeDSActivity.EXTRA_ALLOW_SELF_SIGNED_CERTS, isCustomUrl);
-                    intent.putExtra(ThreeDSActivity.EXTRA_REDIRECT_TIMEOUT, threeDSecure.getPassiveTimeout());
-
-                    // required as starting the activity from an application context
-                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-                    // cancel the session timer
-                    setState(state.STATE_SUSPENDED_FOR_3DS);
-
-                    sessionTimer.cancel();
-
-                    context.startActivity(intent);
-                }
+            if (OutcomeCache.isFinal(error)) {
+                outcomeCache.put(operationId, new PaymentOutcome(error));
             }
-        }
-    }
-
-    private void executeCallback(PaymentError error) {
-        executeCallback(error, true);
-    }
-
-    private void executeCallback(PaymentSuccess success) {
-        executeCallback(success, true);
-    }
 
-    private void executeCallback(PaymentError error,  boolean endSession) {
-
-        if (endSession) {
-            onSessionEnd();
-        }
-
-        if (callbackLocked) {
-            // store callback for when the callee re-registers the callback
-            callbackPending = new CallbackPending();
-            callbackPending.isError = true;
-            callbackPending.paymentError = error;
-        } else {
-            if (callback != null &&
-                callback.get() != null) {
-                callbackPending = null;
-                callback.get().paymentFailed(error);
+            if (reconciliationCallback != null) {
+                reconciliationCallback.statusFailed(operationId, error);
             }
         }
-    }
-
-    private void executeCallback(PaymentSuccess success, boolean endSession) {
 
-        if (endSession) {
-            onSessionEnd();
-        }
-
-        if (callbackLocked) {
-            // store callback for when the callee re-registers the callback
-            callbackPending = new CallbackPending();
-            callbackPending.isError = false;
-            callbackPending.paymentSuccess = success;
-        } else {
-            if (callback != null &&
-                callback.get() != null) {
-                callbackPending = null;
-                callback.get().paymentSucceeded(success);
+        @Override
+        public void statusLookupCompleted() {
+            if (reconciliationCallback != null) {
+                reconciliationCallback.statusLookupCompleted();
             }
         }
     }
 
     /**
-     * Parse JSON from error response
-     * @param retrofitError
-     * @return
+     * Service and HTTP client built for a server URL
      */
-    private MakePaymentResponse parseErrorResponse(RetrofitError retrofitError) {
+    private static class ServiceEntry {
 
-        MakePaymentResponse response = null;
+        private final Pay360Service service;
+        private final OkHttpClient httpClient;
+        private final StatusEventSource statusEventSource;
+        private final boolean customUrl;
 
-        try {
-
-            if (retrofitError != null &&
-                retrofitError.getResponse() != null &&
-                retrofitError.getResponse().getBody() != null) {
-                try {
-                    String json = new String(((TypedByteArray) retrofitError.getResponse().getBody()).getBytes());
-                    response = new Gson().fromJson(json, MakePaymentResponse.class);
-                } catch (Exception e) {
-                    // if JSON is invalid swallow exception - SDK will return
-                }
-            }
-        } catch (Exception e) {
-            // if JSON is invalid swallow exception - SDK will return
+        private ServiceEntry(Pay360Service service, OkHttpClient httpClient,
+                             StatusEventSource statusEventSource, boolean customUrl) {
+            this.service = service;
+            this.httpClient = httpClient;
+            this.statusEventSource = statusEventSource;
+            this.customUrl = customUrl;
         }
-
-        return response;
     }
 
     /**
@@ -937,60 +876,18 @@ public class PaymentManager {
     private class ThreeDSecureReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
+            String transactionId = intent.getStringExtra(ThreeDSActivity.EXTRA_TRANSACTION_ID);
 
-            if (intent.getBooleanExtra(ThreeDSActivity.EXTRA_SUCCESS, false)) {
-                // 3DS successful - post to resume endpoint
-                String transactionId = intent.getStringExtra(ThreeDSActivity.EXTRA_TRANSACTION_ID);
-                String pares = intent.getStringExtra(ThreeDSActivity.EXTRA_PARES);
-
-                threeDSResumeRequest = new ThreeDSResumeRequest(pares);
-
-                // restart the session timer
-                sessionTimer.reset();
-
-                setState(state.STATE_RESUME_WAITING_NETWORK);
-
-                // wait for network connection - this returns straightaway
-                waitForNetworkConnection();
-            } else {
-                // 3DS failure
-                PaymentError error = new PaymentError();
-
-                boolean cancelled = intent.getBooleanExtra(ThreeDSActivity.EXTRA_CANCELLED, false);
-                boolean timeout = intent.getBooleanExtra(ThreeDSActivity.EXTRA_HAS_TIMED_OUT, false);
-
-                if (cancelled) {
-                    error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_CANCELLED_BY_USER);
-                } else if (timeout) {
-                    error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
-                } else {
-                    error.setReasonCode(PaymentError.ReasonCode.NETWORK_NO_CONNECTION);
+            // route the result to the session suspended for this transaction
+            for (PaymentSession session : activeSessions) {
+                if (session.isWaitingFor3DS(transactionId)) {
+                    session.on3DSecureCompleted(intent);
+                    break;
                 }
-
-                executeCallback(error);
             }
         }
     }
 
-    private void waitForNetworkConnection() {
-        // return straightaway if network already connected
-        if (NetworkManager.hasConnection(context)) {
-            onEvent(Event.EVENT_NETWORK_CONNECTED);
-        }
-
-        // otherwise wait for the NetworkConnectivityReceiver to be fired
-    }
-
-    /**
-     * Callback for session timer expiration
-     */
-    private class SessionTimeoutHandler implements Runnable {
-        @Override
-        public void run() {
-            onEvent(Event.EVENT_SESSION_TIMEOUT);
-        }
-    }
-
     /**
      * Receiver for network connectivity events
      */
@@ -999,7 +896,9 @@ public class PaymentManager {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (NetworkManager.hasConnection(context)) {
-                onEvent(Event.EVENT_NETWORK_CONNECTED);
+                for (PaymentSession session : activeSessions) {
+                    session.onNetworkConnected();
+                }
             }
         }
     }
@@ -4,16 +4,22 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
 
-public class PaymentMethod {
+import java.io.IOException;
 
-    @SerializedName("card")
-    private PaymentCard card;
+public class PaymentMethod {
 
     @SerializedName("billingAddress")
     private BillingAddress billingAddress;
 
+    @SerializedName("card")
+    private PaymentCard card;
+
     public PaymentMethod setCard(PaymentCard card) {
         this.card = card;
         return this;
@@ -23,4 +29,62 @@ public class PaymentMethod {
         this.billingAddress = billingAddress;
         return this;
     }
+
+    PaymentCard getCard() {
+        return card;
+    }
+
+    BillingAddress getBillingAddress() {
+        return billingAddress;
+    }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<PaymentMethod> GSON_ADAPTER = new TypeAdapter<PaymentMethod>() {
+        @Override
+        public void write(JsonWriter out, PaymentMethod value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.billingAddress != null) {
+                out.name("billingAddress");
+                BillingAddress.GSON_ADAPTER.write(out, value.billingAddress);
+            }
+
+            if (value.card != null) {
+                out.name("card");
+                PaymentCard.GSON_ADAPTER.write(out, value.card);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PaymentMethod read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            PaymentMethod paymentMethod = new PaymentMethod();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("billingAddress".equals(name)) {
+                    paymentMethod.billingAddress = BillingAddress.GSON_ADAPTER.read(in);
+                } else if ("card".equals(name)) {
+                    paymentMethod.card = PaymentCard.GSON_ADAPTER.read(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return paymentMethod;
+        }
+    };
 }
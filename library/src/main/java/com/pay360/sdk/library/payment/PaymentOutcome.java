@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+/**
+ * Final outcome of a payment, either a {@link PaymentSuccess} or a {@link PaymentError}
+ */
+public class PaymentOutcome {
+
+    private final PaymentSuccess success;
+    private final PaymentError error;
+
+    PaymentOutcome(PaymentSuccess success) {
+        this.success = success;
+        this.error = null;
+    }
+
+    PaymentOutcome(PaymentError error) {
+        this.success = null;
+        this.error = error;
+    }
+
+    /**
+     * Outcome of the response to a status request, as a {@link PaymentSession} maps the response
+     * to its own status request
+     * @param response status response, null if the body was empty
+     * @return outcome or null if the payment is still processing
+     */
+    static PaymentOutcome fromStatusResponse(MakePaymentResponse response) {
+        if (response == null || response.isFailed()) {
+            return new PaymentOutcome(PaymentError.fromResponse(response));
+        }
+
+        if (response.getReasonCode() == PaymentSession.REASON_SUSPENDED_FOR_3D_SECURE) {
+            PaymentError error = new PaymentError();
+
+            MakePaymentResponse.ThreeDSecure threeDSecure = response.getThreeDSecure();
+
+            if (threeDSecure == null || !threeDSecure.validateData()) {
+                error.setReasonCode(PaymentError.ReasonCode.SERVER_ERROR);
+                error.setReasonMessage("Missing 3D Secure credentials");
+            } else {
+                // 3D Secure only continues from the payment itself
+                error.setReasonCode(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING);
+            }
+
+            return new PaymentOutcome(error);
+        }
+
+        if (response.isProcessing()) {
+            return null;
+        }
+
+        // successful or pending
+        return new PaymentOutcome(PaymentSuccess.fromResponse(response));
+    }
+
+    /**
+     * Whether the payment succeeded
+     * @return true if successful, in which case {@link #getSuccess()} is set
+     */
+    public boolean isSuccessful() {
+        return success != null;
+    }
+
+    /**
+     * Payment success data
+     * @return success data or null if the payment failed
+     */
+    public PaymentSuccess getSuccess() {
+        return success;
+    }
+
+    /**
+     * Payment error
+     * @return error or null if the payment succeeded
+     */
+    public PaymentError getError() {
+        return error;
+    }
+}
@@ -0,0 +1,792 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.pay360.sdk.library.ThreeDSActivity;
+import com.pay360.sdk.library.exception.InvalidCredentialsException;
+import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.exception.TransactionInProgressException;
+import com.pay360.sdk.library.exception.TransactionSuspendedFor3DSException;
+import com.pay360.sdk.library.network.Pay360Service;
+import com.pay360.sdk.library.network.StatusEventSource;
+import com.pay360.sdk.library.payment.PaymentStateMachine.Event;
+import com.pay360.sdk.library.payment.PaymentStateMachine.State;
+import com.pay360.sdk.library.security.Credentials;
+import com.pay360.sdk.library.utils.Timer;
+
+import java.lang.ref.WeakReference;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.RetrofitError;
+import rx.Observer;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * A single payment operation with its own state machine, timers and subscriptions.
+ *
+ * <p>Sessions created with {@link PaymentManager#createSession()} run independently of each other
+ * so several payments or status checks can be in flight at once, all sharing the
+ * {@link PaymentManager}'s URL, credentials and HTTP client. A session handles one operation at a
+ * time - create a session per concurrent payment.
+ */
+public class PaymentSession {
+
+    private static final int TIMEOUT_RESPONSE_PAYMENT               = 30; // 30s
+    private static final int TIMEOUT_RESPONSE_RESUME                = 30; // 30s
+    private static final int TIMEOUT_RESPONSE_STATUS                = 5; // 5s
+    private static final int TIMEOUT_STATUS_PUSH                    = 30; // 30s
+
+    static final int REASON_SUSPENDED_FOR_3D_SECURE                 = 7;
+    private static final int REASON_SUSPENDED_FOR_CLIENT_REDIRECT   = 8;
+
+    private static final int HTTP_SERVER_ERROR                      = 500;
+    private static final int HTTP_SERVICE_UNAVAILABLE              = 503;
+
+    private static final long DEFAULT_STATUS_BACKOFF                = 5000L;
+
+    private final PaymentManager paymentManager;
+    private final Context context;
+
+    // use a WeakReference to ensure calling activity can be GC'ed
+    private WeakReference<PaymentManager.MakePaymentCallback> callback;
+    private boolean callbackLocked = false;
+    private CallbackPending callbackPending;
+    private Pay360Service service;
+    private Credentials credentials;
+    private boolean isCustomUrl;
+    private String transactionId;
+    private String operationId;
+    private MakePaymentRequest makePaymentRequest;
+    private ThreeDSResumeRequest threeDSResumeRequest;
+    private Timer sessionTimer;
+    private Timer retryDelayTimer;
+    private final PaymentStateMachine stateMachine = new PaymentStateMachine();
+    private CompositeSubscription subscriptions = new CompositeSubscription();
+    private int retryCount;
+    private long retryDelay;
+    private BackoffPolicy backoffPolicy;
+    private StatusEventSource statusEventSource;
+    private boolean statusPushAttempted;
+
+    private class CallbackPending {
+        private boolean isError;
+        private PaymentSuccess paymentSuccess;
+        private PaymentError paymentError;
+    }
+
+    PaymentSession(PaymentManager paymentManager) {
+        this.paymentManager = paymentManager;
+        this.context = paymentManager.getContext();
+
+        retryDelayTimer = new Timer(new RetryDelayTimeoutHandler(), DEFAULT_STATUS_BACKOFF, false);
+    }
+
+    /**
+     * Register the payment callback. Call this prior to {@link #makePayment(PaymentRequest)}
+     * @param callback callback when payment completed (success or fail)
+     */
+    public void registerPaymentCallback(PaymentManager.MakePaymentCallback callback) {
+        this.callback = new WeakReference<PaymentManager.MakePaymentCallback>(callback);
+    }
+
+    /**
+     * Unregister the payment callback
+     */
+    public void unregisterPaymentCallback() {
+        this.callback = null;
+    }
+
+    /**
+     * Locks the callback mechanism during screen orientation change. Call this BEFORE
+     * {@link #unregisterPaymentCallback()}
+     */
+    public void lockCallback() {
+        this.callbackLocked = true;
+    }
+
+    /**
+     * Unlocks the callback mechanism during screen orientation change. Call this AFTER
+     * {@link #registerPaymentCallback(com.pay360.sdk.library.payment.PaymentManager.MakePaymentCallback)}
+     */
+    public void unlockCallback() {
+        this.callbackLocked = false;
+
+        // send back pending response
+        if (callback != null &&
+            callback.get() != null) {
+            if (callbackPending != null) {
+                if (callbackPending.isError) {
+                    callback.get().paymentFailed(callbackPending.paymentError);
+                } else {
+                    callback.get().paymentSucceeded(callbackPending.paymentSuccess);
+                }
+                callbackPending = null;
+            }
+        }
+    }
+
+    /**
+     * Checks if the session is free to start a new operation
+     * @return true if no payment or status request is in progress
+     */
+    public boolean isIdle() {
+        return stateMachine.isIdle();
+    }
+
+    /**
+     * The most recent state transitions of this session, oldest first. Use the timestamps to
+     * measure the latency of each phase of a payment
+     * @return recent transitions
+     */
+    public List<StateTransition> getTransitionLog() {
+        return stateMachine.getTransitions();
+    }
+
+    /**
+     * Asynchronously make the payment using the values specified in the request
+     *
+     * @param request payment details
+     * @throws PaymentValidationException incorrect payment details in the request.
+     * Use {@link com.pay360.sdk.library.exception.PaymentValidationException#getErrorCode()} to determine error
+     * @throws InvalidCredentialsException missing token, installation id or server url
+     * @throws TransactionInProgressException a transaction is in flight in this session, please
+     * wait for the callback
+     * @return unique identifier - use this to query transaction status in {@link #getTransactionStatus(String)}
+     */
+    public String makePayment(final PaymentRequest request)
+            throws PaymentValidationException, InvalidCredentialsException, TransactionInProgressException {
+
+        // claim the session before touching its fields - fails if an operation is in progress
+        if (stateMachine.fire(Event.EVENT_PAYMENT_STARTED) == null) {
+            throw new TransactionInProgressException();
+        }
+
+        boolean prepared = false;
+
+        try {
+            // ensure last payment is forgotten
+            callbackPending = null;
+
+            // validate request data
+            paymentManager.validatePaymentDetails(request);
+
+            createService();
+
+            // call REST endpoint
+            makePaymentRequest = paymentManager.buildMakePaymentRequest(request);
+
+            // create a unique identifier for the payment operation which can be used by the app to
+            // query the status
+            operationId = UUID.randomUUID().toString();
+
+            prepared = true;
+        } finally {
+            if (!prepared) {
+                // nothing has been sent - release the session
+                stateMachine.fire(Event.EVENT_SESSION_ENDED);
+            }
+        }
+
+        // journal the payment so its outcome can be recovered if the app is killed
+        paymentManager.recordOperation(OperationJournal.TYPE_STARTED, operationId);
+
+        onSessionStart();
+
+        // wait for network connection - this returns straightaway
+        waitForNetworkConnection();
+
+        return operationId;
+    }
+
+    /**
+     * Get the status of a transaction
+     * @param operationId - identifier returned from {@link #makePayment(PaymentRequest)}
+     * @throws InvalidCredentialsException missing token, installation id or server url
+     * @throws TransactionInProgressException if a transaction is currently in progress in this
+     * session - try again when the SDK has executed the callback
+     * @throws TransactionSuspendedFor3DSException the SDK is waiting for the user to complete 3D
+     * Secure authentication - tey again when the SDK has executed the callback
+     */
+    public void getTransactionStatus(String operationId) throws InvalidCredentialsException,
+            TransactionInProgressException, TransactionSuspendedFor3DSException {
+
+        switch (stateMachine.getState()) {
+            case STATE_IDLE:
+
+                // answer a finished payment from memory - the session stays idle
+                final PaymentOutcome outcome = paymentManager.getOutcomeCache().get(operationId);
+
+                if (outcome != null) {
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (outcome.isSuccessful()) {
+                                executeCallback(outcome.getSuccess(), false);
+                            } else {
+                                executeCallback(outcome.getError(), false);
+                            }
+                        }
+                    });
+                    break;
+                }
+
+                // claim the session - fails if another operation started since the check above
+                if (stateMachine.fire(Event.EVENT_STATUS_STARTED) == null) {
+                    throw new TransactionInProgressException();
+                }
+
+                // call server endpoint to get transaction status
+                boolean prepared = false;
+
+                try {
+                    createService();
+                    prepared = true;
+                } finally {
+                    if (!prepared) {
+                        stateMachine.fire(Event.EVENT_SESSION_ENDED);
+                    }
+                }
+
+                this.operationId = operationId;
+
+                onSessionStart();
+
+                // wait for network connection - this returns straightaway
+                waitForNetworkConnection();
+                break;
+            case STATE_SUSPENDED_FOR_3DS:
+               throw new TransactionSuspendedFor3DSException();
+            default:
+               throw new TransactionInProgressException();
+        }
+    }
+
+    private void createService() throws InvalidCredentialsException {
+        // take a snapshot of the shared service and credentials - these are fixed for the
+        // lifetime of the operation
+        service = paymentManager.createService();
+        credentials = paymentManager.getCredentials();
+        isCustomUrl = paymentManager.isCustomUrl();
+        statusEventSource = paymentManager.getStatusEventSource();
+    }
+
+    /*
+    * State machine - the transition table decides whether the event applies to the current
+    * state, the handler then performs the action for the state the machine moved from
+    */
+    private void onEvent(Event event) {
+
+        if (event != null) {
+
+            State from = stateMachine.fire(event);
+
+            // event not allowed in the current state - ignore it
+            if (from == null) {
+                return;
+            }
+
+            switch (event) {
+                case EVENT_NETWORK_CONNECTED:
+                    onEventNetworkConnected(from);
+                    break;
+
+                case EVENT_RESPONSE_NOT_RECEIVED:
+                    onEventResponseNotReceived();
+                    break;
+
+                case EVENT_GET_STATUS:
+                    onEventRetryStatus();
+                    break;
+
+                case EVENT_STATUS_PUSH:
+                    onEventStatusPush();
+                    break;
+
+                case EVENT_SESSION_TIMEOUT:
+                    onEventSessionTimeout();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Timeout or socket error while waiting for a payment, resume or status response
+     */
+    private void onEventResponseNotReceived() {
+        // wait for the server to push the outcome if enabled - only poll if the channel fails
+        if (statusEventSource != null && !statusPushAttempted) {
+            statusPushAttempted = true;
+            onEvent(Event.EVENT_STATUS_PUSH);
+            return;
+        }
+
+        // back off for the period suggested by the server, otherwise as the policy decides
+        long delay = paymentManager.takeRetryAfterMillis(operationId);
+
+        if (delay < 0) {
+            delay = backoffPolicy.getDelayMillis(retryCount, retryDelay);
+        }
+
+        retryCount++;
+        retryDelay = delay;
+
+        retryDelayTimer.start(delay);
+    }
+
+    /**
+     * Callback for retry timer expiration
+     */
+    private class RetryDelayTimeoutHandler implements Runnable {
+        @Override
+        public void run() {
+            onEvent(Event.EVENT_GET_STATUS);
+        }
+    }
+
+    private void onEventStatusPush() {
+        // a stream which stays open without the outcome falls back to polling too
+        subscriptions.add(statusEventSource.observeOutcome("Bearer " + credentials.getToken(),
+                credentials.getInstallationId(), operationId)
+                .timeout(TIMEOUT_STATUS_PUSH, TimeUnit.SECONDS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new StatusPushObserver()));
+    }
+
+    private void onEventRetryStatus() {
+        subscriptions.add(service.paymentStatus("Bearer " + credentials.getToken(),
+                credentials.getInstallationId(), operationId)
+                .timeout(TIMEOUT_RESPONSE_STATUS, TimeUnit.SECONDS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new ResponseObserver()));
+    }
+
+    /**
+     * Network connection made
+     * @param state state waiting for the network
+     */
+    private void onEventNetworkConnected(State state) {
+
+        // network connected - send request
+        if (state == State.STATE_PAYMENT_WAITING_NETWORK) {
+            subscriptions.add(service.makePayment(makePaymentRequest, "Bearer " + credentials.getToken(),
+                    operationId, credentials.getInstallationId())
+                    .timeout(TIMEOUT_RESPONSE_PAYMENT, TimeUnit.SECONDS)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new ResponseObserver()));
+        } else if (state == State.STATE_RESUME_WAITING_NETWORK) {
+            subscriptions.add(service.resume3DS(threeDSResumeRequest, "Bearer " + credentials.getToken(),
+                    operationId, credentials.getInstallationId(), transactionId)
+                    .timeout(TIMEOUT_RESPONSE_RESUME, TimeUnit.SECONDS)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new ResponseObserver()));
+        } else if (state == State.STATE_STATUS_WAITING_NETWORK) {
+            subscriptions.add(service.paymentStatus("Bearer " + credentials.getToken(),
+                    credentials.getInstallationId(), operationId)
+                    .timeout(TIMEOUT_RESPONSE_STATUS, TimeUnit.SECONDS)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new ResponseObserver()));
+        }
+    }
+
+    /**
+     * Session timeout
+     */
+    private void onEventSessionTimeout() {
+        PaymentError error = new PaymentError();
+        error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
+        executeCallback(error);
+    }
+
+    private void onSessionStart() {
+        subscriptions = new CompositeSubscription();
+
+        // reset retry count and pick up the current backoff policy
+        retryCount = 0;
+        retryDelay = 0;
+        backoffPolicy = paymentManager.getBackoffPolicy();
+        statusPushAttempted = false;
+
+        // cancel any existing timers
+        if (sessionTimer != null) {
+            sessionTimer.cancel();
+        }
+
+        // start a new timer
+        sessionTimer = new Timer(new SessionTimeoutHandler(),
+                paymentManager.getSessionTimeoutSeconds() * 1000, false);
+        sessionTimer.start();
+
+        // receive network and 3DS events while the operation is in flight
+        paymentManager.attachSession(this);
+    }
+
+    private void onSessionEnd() {
+        // unsubscribe so that any pending REST callbacks are ignored - once unsubscribed the composite
+        // subscription is unusable so need to recreate it
+        if (subscriptions != null) {
+            subscriptions.unsubscribe();
+        }
+
+        // reset state
+        stateMachine.fire(Event.EVENT_SESSION_ENDED);
+
+        // cancel timers
+        if (sessionTimer != null) {
+            sessionTimer.cancel();
+        }
+
+        if (retryDelayTimer != null) {
+            retryDelayTimer.cancel();
+        }
+
+        paymentManager.detachSession(this);
+
+        // drop any Retry-After hint which arrived after the last retry
+        paymentManager.takeRetryAfterMillis(operationId);
+
+        // the request is not sent again - don't keep the card data on the heap
+        if (makePaymentRequest != null) {
+            makePaymentRequest.wipeCardData();
+            makePaymentRequest = null;
+        }
+    }
+
+    private class ResponseObserver implements Observer<MakePaymentResponse> {
+
+        /**
+         * Callback when REST call succeeds i.e. HTTP 200
+         * @param paymentResponse
+         */
+        @Override
+        public void onNext(MakePaymentResponse paymentResponse) {
+
+            if (paymentResponse != null &&
+               !paymentResponse.isFailed()) {
+
+                // check if 3D secure redirect
+                if (paymentResponse.getReasonCode() == REASON_SUSPENDED_FOR_3D_SECURE) {
+                    on3DSecure(paymentResponse);
+                } else {
+                    if (paymentResponse.isProcessing()) {
+                        onPaymentProcessing(paymentResponse);
+                    } else {
+                        onPaymentSuccess(paymentResponse);
+                    }
+                }
+            } else {
+                onPaymentFailed(paymentResponse);
+            }
+        }
+
+        /**
+         * Callback when REST call fails i.e. no connection or HTTP != 200
+         * @param e
+         */
+        @Override
+        public void onError(Throwable e) {
+
+            PaymentError error = new PaymentError();
+
+            // an HTTP error body has already been decoded on the I/O thread
+            MakePaymentResponse errorResponse = ErrorResponseDecoder.getResponse(e);
+            e = ErrorResponseDecoder.unwrap(e);
+
+            if (e instanceof RetrofitError) {
+
+                RetrofitError retrofitError = (RetrofitError)e;
+
+                switch (retrofitError.getKind()) {
+                    // An IOException occurred while communicating to the server.
+                    case NETWORK:
+                        // if failed to connect when making payment or resume then return straight away,
+                        // no point in attempting to read state of payment as we know the request
+                        // never made it to the server
+                        State state = stateMachine.getState();
+
+                        if ((state == State.STATE_PAYMENT_WAITING_RESPONSE ||
+                             state == State.STATE_RESUME_WAITING_RESPONSE) &&
+                            (retrofitError.getCause() instanceof ConnectException ||
+                             retrofitError.getCause() instanceof UnknownHostException)) {
+
+                            // the request never reached the server so the outcome is known
+                            paymentManager.recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+
+                            error.setReasonCode(PaymentError.ReasonCode.NETWORK_NO_CONNECTION);
+                            executeCallback(error);
+                        } else {
+                            // attempt to get status of transaction
+                            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+                        }
+                        break;
+
+                    // A non-200 HTTP status code was received from the server
+                    case HTTP:
+
+                        // server overloaded or down for maintenance - retry the status after the
+                        // Retry-After period rather than fail as the outcome is unknown
+                        if (retrofitError.getResponse() != null &&
+                            retrofitError.getResponse().getStatus() == HTTP_SERVICE_UNAVAILABLE) {
+                            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+                            break;
+                        }
+
+                        if (retrofitError.getResponse() != null) {
+
+                            if (errorResponse != null) {
+                                error = PaymentError.fromResponse(errorResponse);
+                            }
+
+                            // request rejected - a server error leaves the outcome unknown
+                            if (retrofitError.getResponse().getStatus() < HTTP_SERVER_ERROR) {
+                                paymentManager.recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+                            }
+                        }
+                        executeCallback(error);
+
+                        break;
+
+                    // An exception was thrown while (de)serializing a body
+                    case CONVERSION:
+                        // An internal error occurred while attempting to execute a request
+                    case UNEXPECTED:
+                    default:
+                        executeCallback(error);
+                        break;
+                }
+            } else {
+                // something other than a Retrofit exception - not expecting this but need to handle
+                onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            // nothing to do
+        }
+
+        private void onPaymentProcessing(MakePaymentResponse paymentResponse) {
+            // payment is in flight, retry status to wait until success\failure
+            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+        }
+
+        private void onPaymentSuccess(MakePaymentResponse paymentResponse) {
+            paymentManager.recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+
+            // payment successful - build success object
+            executeCallback(PaymentSuccess.fromResponse(paymentResponse));
+        }
+
+        private void onPaymentFailed(MakePaymentResponse paymentResponse) {
+            paymentManager.recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+
+            // payment failed
+            executeCallback(PaymentError.fromResponse(paymentResponse));
+        }
+
+        private void on3DSecure(MakePaymentResponse paymentResponse) {
+            // ensure response contains valid 3DS credentials
+            MakePaymentResponse.ThreeDSecure threeDSecure = paymentResponse.getThreeDSecure();
+
+            if (threeDSecure == null ||
+                !threeDSecure.validateData()) {
+                PaymentError error = new PaymentError();
+                error.setReasonCode(PaymentError.ReasonCode.SERVER_ERROR);
+                error.setReasonMessage("Missing 3D Secure credentials");
+
+                executeCallback(error);
+            } else {
+
+                // only a payment or resume can continue with 3DS - if this is in response to a
+                // get status then pass back error
+                if (stateMachine.fire(Event.EVENT_3DS_REQUIRED) == null) {
+                    PaymentError error = new PaymentError();
+                    error.setReasonCode(PaymentError.ReasonCode.NETWORK_ERROR_DURING_PROCESSING);
+
+                    executeCallback(error);
+                } else {
+                    // otherwise continue with 3DS
+                    transactionId = paymentResponse.getTransactionId();
+
+                    // show 3D secure in separate activity
+                    Intent intent = new Intent(context, ThreeDSActivity.class);
+                    intent.putExtra(ThreeDSActivity.EXTRA_ACS_URL, threeDSecure.getAcsUrl());
+                    intent.putExtra(ThreeDSActivity.EXTRA_TERM_URL, threeDSecure.getTermUrl());
+                    intent.putExtra(ThreeDSActivity.EXTRA_PAREQ, threeDSecure.getPareq());
+                    intent.putExtra(ThreeDSActivity.EXTRA_MD, threeDSecure.getMd());
+                    intent.putExtra(ThreeDSActivity.EXTRA_TRANSACTION_ID, paymentResponse.getTransactionId());
+                    intent.putExtra(ThreeDSActivity.EXTRA_SESSION_TIMEOUT, threeDSecure.getSessionTimeout());
+                    intent.putExtra(ThreeDSActivity.EXTRA_ALLOW_SELF_SIGNED_CERTS, isCustomUrl);
+                    intent.putExtra(ThreeDSActivity.EXTRA_REDIRECT_TIMEOUT, threeDSecure.getPassiveTimeout());
+
+                    // required as starting the activity from an application context
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+                    // cancel the session timer
+                    sessionTimer.cancel();
+
+                    paymentManager.recordOperation(OperationJournal.TYPE_SUSPENDED, operationId);
+
+                    context.startActivity(intent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the outcome pushed by the server, falling back to polling the status if the push
+     * channel fails
+     */
+    private class StatusPushObserver extends ResponseObserver {
+
+        @Override
+        public void onError(Throwable e) {
+            onEvent(Event.EVENT_RESPONSE_NOT_RECEIVED);
+        }
+    }
+
+    private void executeCallback(PaymentError error) {
+        executeCallback(error, true);
+    }
+
+    private void executeCallback(PaymentSuccess success) {
+        executeCallback(success, true);
+    }
+
+    private void executeCallback(PaymentError error,  boolean endSession) {
+
+        if (endSession && OutcomeCache.isFinal(error)) {
+            paymentManager.getOutcomeCache().put(operationId, new PaymentOutcome(error));
+        }
+
+        if (endSession) {
+            onSessionEnd();
+        }
+
+        if (callbackLocked) {
+            // store callback for when the callee re-registers the callback
+            callbackPending = new CallbackPending();
+            callbackPending.isError = true;
+            callbackPending.paymentError = error;
+        } else {
+            if (callback != null &&
+                callback.get() != null) {
+                callbackPending = null;
+                callback.get().paymentFailed(error);
+            }
+        }
+    }
+
+    private void executeCallback(PaymentSuccess success, boolean endSession) {
+
+        if (endSession) {
+            paymentManager.getOutcomeCache().put(operationId, new PaymentOutcome(success));
+            onSessionEnd();
+        }
+
+        if (callbackLocked) {
+            // store callback for when the callee re-registers the callback
+            callbackPending = new CallbackPending();
+            callbackPending.isError = false;
+            callbackPending.paymentSuccess = success;
+        } else {
+            if (callback != null &&
+                callback.get() != null) {
+                callbackPending = null;
+                callback.get().paymentSucceeded(success);
+            }
+        }
+    }
+
+    /**
+     * Checks if this session is suspended waiting for the given 3D Secure transaction
+     * @param transactionId transaction id broadcast by ThreeDSActivity, null if not known
+     * @return true if the 3D Secure result belongs to this session
+     */
+    boolean isWaitingFor3DS(String transactionId) {
+        return stateMachine.getState() == State.STATE_SUSPENDED_FOR_3DS &&
+               (transactionId == null || transactionId.equals(this.transactionId));
+    }
+
+    /**
+     * 3D Secure completed in ThreeDSActivity
+     * @param intent broadcast from ThreeDSActivity
+     */
+    void on3DSecureCompleted(Intent intent) {
+
+        if (intent.getBooleanExtra(ThreeDSActivity.EXTRA_SUCCESS, false)) {
+            // 3DS successful - post to resume endpoint
+            String pares = intent.getStringExtra(ThreeDSActivity.EXTRA_PARES);
+
+            if (stateMachine.fire(Event.EVENT_3DS_COMPLETED) == null) {
+                // no longer suspended e.g. the result has already been handled - keep its request
+                return;
+            }
+
+            // set before the network event which sends it, both are delivered on the main thread
+            threeDSResumeRequest = new ThreeDSResumeRequest(pares);
+
+            // restart the session timer
+            sessionTimer.reset();
+
+            // wait for network connection - this returns straightaway
+            waitForNetworkConnection();
+        } else {
+            // 3DS failure
+            PaymentError error = new PaymentError();
+
+            boolean cancelled = intent.getBooleanExtra(ThreeDSActivity.EXTRA_CANCELLED, false);
+            boolean timeout = intent.getBooleanExtra(ThreeDSActivity.EXTRA_HAS_TIMED_OUT, false);
+
+            if (cancelled) {
+                // payment not taken
+                paymentManager.recordOperation(OperationJournal.TYPE_COMPLETED, operationId);
+
+                error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_CANCELLED_BY_USER);
+            } else if (timeout) {
+                error.setReasonCode(PaymentError.ReasonCode.TRANSACTION_TIMED_OUT);
+            } else {
+                error.setReasonCode(PaymentError.ReasonCode.NETWORK_NO_CONNECTION);
+            }
+
+            executeCallback(error);
+        }
+    }
+
+    /**
+     * Network connectivity restored
+     */
+    void onNetworkConnected() {
+        onEvent(Event.EVENT_NETWORK_CONNECTED);
+    }
+
+    private void waitForNetworkConnection() {
+        // return straightaway if network already connected
+        if (paymentManager.hasNetworkConnection()) {
+            onEvent(Event.EVENT_NETWORK_CONNECTED);
+        }
+
+        // otherwise wait for the PaymentManager's connectivity receiver to notify this session
+    }
+
+    /**
+     * Callback for session timer expiration
+     */
+    private class SessionTimeoutHandler implements Runnable {
+        @Override
+        public void run() {
+            onEvent(Event.EVENT_SESSION_TIMEOUT);
+        }
+    }
+}
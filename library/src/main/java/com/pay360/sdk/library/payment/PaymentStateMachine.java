@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table driven state machine for a {@link PaymentSession}.
+ *
+ * <p>Events arrive from Rx observers, broadcast receivers and timers so the state is held in an
+ * {@link AtomicReference} and only moved by compare-and-swap along a transition in the table.
+ * An event which has no transition from the current state is rejected, so e.g. a second network
+ * connected event can never send the payment twice.
+ */
+class PaymentStateMachine {
+
+    private static final int LOG_CAPACITY = 32;
+
+    enum State {
+        STATE_IDLE,
+        STATE_PAYMENT_WAITING_NETWORK,
+        STATE_PAYMENT_WAITING_RESPONSE,
+        STATE_RESUME_WAITING_NETWORK,
+        STATE_RESUME_WAITING_RESPONSE,
+        STATE_STATUS_WAITING_NETWORK,
+        STATE_STATUS_WAITING_RESPONSE,
+        STATE_SUSPENDED_FOR_3DS
+    }
+
+    enum Event {
+        EVENT_PAYMENT_STARTED,
+        EVENT_STATUS_STARTED,
+        EVENT_NETWORK_CONNECTED,
+        EVENT_RESPONSE_NOT_RECEIVED,
+        EVENT_GET_STATUS,
+        EVENT_STATUS_PUSH,
+        EVENT_3DS_REQUIRED,
+        EVENT_3DS_COMPLETED,
+        EVENT_SESSION_TIMEOUT,
+        EVENT_SESSION_ENDED
+    }
+
+    private static final State[] STATES = State.values();
+    private static final Event[] EVENTS = Event.values();
+
+    // next state indexed by [current state][event], null if the event is not allowed
+    private static final State[][] TRANSITIONS = new State[STATES.length][EVENTS.length];
+
+    static {
+        allow(State.STATE_IDLE, Event.EVENT_PAYMENT_STARTED, State.STATE_PAYMENT_WAITING_NETWORK);
+        allow(State.STATE_IDLE, Event.EVENT_STATUS_STARTED, State.STATE_STATUS_WAITING_NETWORK);
+
+        // network available - send the request
+        allow(State.STATE_PAYMENT_WAITING_NETWORK, Event.EVENT_NETWORK_CONNECTED, State.STATE_PAYMENT_WAITING_RESPONSE);
+        allow(State.STATE_RESUME_WAITING_NETWORK, Event.EVENT_NETWORK_CONNECTED, State.STATE_RESUME_WAITING_RESPONSE);
+        allow(State.STATE_STATUS_WAITING_NETWORK, Event.EVENT_NETWORK_CONNECTED, State.STATE_STATUS_WAITING_RESPONSE);
+
+        // timeout or socket error - stay put while waiting to retry the status
+        allow(State.STATE_PAYMENT_WAITING_RESPONSE, Event.EVENT_RESPONSE_NOT_RECEIVED, State.STATE_PAYMENT_WAITING_RESPONSE);
+        allow(State.STATE_RESUME_WAITING_RESPONSE, Event.EVENT_RESPONSE_NOT_RECEIVED, State.STATE_RESUME_WAITING_RESPONSE);
+        allow(State.STATE_STATUS_WAITING_RESPONSE, Event.EVENT_RESPONSE_NOT_RECEIVED, State.STATE_STATUS_WAITING_RESPONSE);
+
+        // retry timer expired - get the status
+        allow(State.STATE_PAYMENT_WAITING_RESPONSE, Event.EVENT_GET_STATUS, State.STATE_STATUS_WAITING_RESPONSE);
+        allow(State.STATE_RESUME_WAITING_RESPONSE, Event.EVENT_GET_STATUS, State.STATE_STATUS_WAITING_RESPONSE);
+        allow(State.STATE_STATUS_WAITING_RESPONSE, Event.EVENT_GET_STATUS, State.STATE_STATUS_WAITING_RESPONSE);
+
+        // wait for the server to push the status - a status, so 3D Secure can't continue from it
+        allow(State.STATE_PAYMENT_WAITING_RESPONSE, Event.EVENT_STATUS_PUSH, State.STATE_STATUS_WAITING_RESPONSE);
+        allow(State.STATE_RESUME_WAITING_RESPONSE, Event.EVENT_STATUS_PUSH, State.STATE_STATUS_WAITING_RESPONSE);
+        allow(State.STATE_STATUS_WAITING_RESPONSE, Event.EVENT_STATUS_PUSH, State.STATE_STATUS_WAITING_RESPONSE);
+
+        // 3D Secure only continues from a payment or resume, not from a status request
+        allow(State.STATE_PAYMENT_WAITING_RESPONSE, Event.EVENT_3DS_REQUIRED, State.STATE_SUSPENDED_FOR_3DS);
+        allow(State.STATE_RESUME_WAITING_RESPONSE, Event.EVENT_3DS_REQUIRED, State.STATE_SUSPENDED_FOR_3DS);
+        allow(State.STATE_SUSPENDED_FOR_3DS, Event.EVENT_3DS_COMPLETED, State.STATE_RESUME_WAITING_NETWORK);
+
+        for (State state : STATES) {
+            if (state != State.STATE_IDLE) {
+                allow(state, Event.EVENT_SESSION_TIMEOUT, State.STATE_IDLE);
+            }
+            allow(state, Event.EVENT_SESSION_ENDED, State.STATE_IDLE);
+        }
+    }
+
+    private static void allow(State from, Event event, State to) {
+        TRANSITIONS[from.ordinal()][event.ordinal()] = to;
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.STATE_IDLE);
+
+    // ring buffer of the most recent transitions - slots are claimed by incrementing the sequence
+    // and each holds an immutable entry so a reader never sees one transition torn by another
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<LogEntry> log = new AtomicReferenceArray<LogEntry>(LOG_CAPACITY);
+
+    private static class LogEntry {
+        private final long sequence;
+        private final StateTransition transition;
+
+        private LogEntry(long sequence, StateTransition transition) {
+            this.sequence = sequence;
+            this.transition = transition;
+        }
+    }
+
+    State getState() {
+        return state.get();
+    }
+
+    boolean isIdle() {
+        return state.get() == State.STATE_IDLE;
+    }
+
+    /**
+     * Apply the event to the current state
+     * @param event event to apply
+     * @return state the machine moved from, null if the event is not allowed in the current state
+     */
+    State fire(Event event) {
+        while (true) {
+            State from = state.get();
+            State to = TRANSITIONS[from.ordinal()][event.ordinal()];
+
+            if (to == null) {
+                return null;
+            }
+
+            if (state.compareAndSet(from, to)) {
+                record(from, event, to);
+                return from;
+            }
+
+            // lost the race with another event - re-evaluate against the new state
+        }
+    }
+
+    private void record(State from, Event event, State to) {
+        long next = sequence.getAndIncrement();
+
+        log.set((int) (next % LOG_CAPACITY), new LogEntry(next, new StateTransition(from.name(),
+                event.name(), to.name(), System.nanoTime())));
+    }
+
+    /**
+     * Snapshot of the most recent transitions, oldest first. A transition still being recorded by
+     * another thread, or whose slot has since been reused, is left out
+     * @return transitions
+     */
+    List<StateTransition> getTransitions() {
+        long end = sequence.get();
+        long start = Math.max(0, end - LOG_CAPACITY);
+
+        List<StateTransition> transitions = new ArrayList<StateTransition>((int) (end - start));
+
+        for (long i = start; i < end; i++) {
+            LogEntry entry = log.get((int) (i % LOG_CAPACITY));
+
+            if (entry != null && entry.sequence == i) {
+                transitions.add(entry.transition);
+            }
+        }
+
+        return transitions;
+    }
+}
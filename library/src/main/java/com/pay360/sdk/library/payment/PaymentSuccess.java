@@ -26,6 +26,25 @@ public class PaymentSuccess implements Serializable {
 
     private List<CustomField> customFields;
 
+    /**
+     * Build from a successful response
+     * @param response payment response
+     * @return payment success
+     */
+    static PaymentSuccess fromResponse(MakePaymentResponse response) {
+        PaymentSuccess success = new PaymentSuccess();
+
+        success.setAmount(response.getAmount());
+        success.setCurrency(response.getCurrency());
+        success.setTransactionId(response.getTransactionId());
+        success.setMerchantReference(response.getMerchantRef());
+        success.setLastFourPan(response.getLastFourDigits());
+        success.setMaskedPan(response.getMaskedPan());
+        success.setCustomFields(response.getCustomFields());
+
+        return success;
+    }
+
     protected void setTransactionId(String transactionId) {
         this.transactionId = transactionId;
     }
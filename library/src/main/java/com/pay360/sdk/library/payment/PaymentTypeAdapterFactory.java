@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Supplies hand written streaming Gson adapters for the payment request and response models so
+ * they are encoded and decoded without reflection. The JSON produced is identical to Gson's
+ * reflective output for the same {@link com.google.gson.annotations.SerializedName} mappings
+ */
+public class PaymentTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+
+        TypeAdapter<?> adapter = null;
+
+        if (rawType == MakePaymentRequest.class) {
+            adapter = MakePaymentRequest.GSON_ADAPTER;
+        } else if (rawType == MakePaymentResponse.class) {
+            adapter = MakePaymentResponse.GSON_ADAPTER;
+        } else if (rawType == ThreeDSResumeRequest.class) {
+            adapter = ThreeDSResumeRequest.GSON_ADAPTER;
+        } else if (rawType == DeviceInfo.class) {
+            adapter = DeviceInfo.GSON_ADAPTER;
+        } else if (rawType == Transaction.class) {
+            adapter = Transaction.GSON_ADAPTER;
+        } else if (rawType == PaymentMethod.class) {
+            adapter = PaymentMethod.GSON_ADAPTER;
+        } else if (rawType == PaymentCard.class) {
+            adapter = PaymentCard.GSON_ADAPTER;
+        } else if (rawType == BillingAddress.class) {
+            adapter = BillingAddress.GSON_ADAPTER;
+        } else if (rawType == FinancialServices.class) {
+            adapter = FinancialServices.GSON_ADAPTER;
+        } else if (rawType == CustomerDetails.class) {
+            adapter = CustomerDetails.GSON_ADAPTER;
+        } else if (rawType == CustomField.class) {
+            adapter = CustomField.GSON_ADAPTER;
+        }
+
+        // null tells Gson to fall back to its other factories
+        return (TypeAdapter<T>) adapter;
+    }
+}
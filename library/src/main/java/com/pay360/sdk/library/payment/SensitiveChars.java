@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.pay360.sdk.library.utils.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * Card data held in a char array which can be wiped, rather than an immutable String which stays
+ * on the heap until collected. The characters are only ever copied into other arrays we own, or
+ * encoded straight into the request body by {@link PaymentConverter}.
+ */
+final class SensitiveChars implements CharSequence {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final char[] chars;
+    private int length;
+
+    private SensitiveChars(char[] chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    /**
+     * Copy characters dropping whitespace and separators
+     * @param source characters, may be null
+     * @param separators characters to drop as well as whitespace
+     * @return copy or null if source is null
+     */
+    static SensitiveChars copyOf(CharSequence source, String separators) {
+        if (source == null) {
+            return null;
+        }
+
+        char[] chars = new char[source.length()];
+        int length = 0;
+
+        for (int i = 0; i < chars.length; i++) {
+            char c = source.charAt(i);
+
+            if (!isSeparator(c, separators)) {
+                chars[length++] = c;
+            }
+        }
+
+        return new SensitiveChars(chars, length);
+    }
+
+    /**
+     * Copy characters dropping whitespace and separators, the copy is normalised in place
+     * @param source characters, may be null
+     * @param separators characters to drop as well as whitespace
+     * @return copy or null if source is null
+     */
+    static SensitiveChars copyOf(char[] source, String separators) {
+        if (source == null) {
+            return null;
+        }
+
+        char[] chars = source.clone();
+        int length = 0;
+
+        for (int i = 0; i < chars.length; i++) {
+            if (!isSeparator(chars[i], separators)) {
+                chars[length++] = chars[i];
+            }
+        }
+
+        // clear the tail left by compacting
+        Arrays.fill(chars, length, chars.length, '\0');
+
+        return new SensitiveChars(chars, length);
+    }
+
+    private static boolean isSeparator(char c, String separators) {
+        // as the whitespace deleted from card details before they were held as chars
+        return StringUtils.isWhitespace(c) || separators.indexOf(c) >= 0;
+    }
+
+    static SensitiveChars copyOf(SensitiveChars source) {
+        return source != null ? new SensitiveChars(Arrays.copyOf(source.chars, source.length), source.length) : null;
+    }
+
+    /**
+     * Overwrite the characters, the value is empty afterwards
+     */
+    void wipe() {
+        Arrays.fill(chars, '\0');
+        length = 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", length " + length);
+        }
+
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range " + start + "-" + end + ", length " + length);
+        }
+
+        return new SensitiveChars(Arrays.copyOfRange(chars, start, end), end - start);
+    }
+
+    /**
+     * Copies the characters into a String, avoid outside of tests
+     */
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Number of bytes {@link #writeJson(byte[], int)} writes
+     * @return length of the quoted JSON string
+     */
+    int jsonLength() {
+        int jsonLength = 2;
+
+        for (int i = 0; i < length; i++) {
+            jsonLength += isPlain(chars[i]) ? 1 : 6;
+        }
+
+        return jsonLength;
+    }
+
+    /**
+     * Write as a quoted JSON string of ASCII bytes, escaping as Gson does with HTML safe output
+     * @param out destination
+     * @param offset offset to write at
+     * @return offset after the string
+     */
+    int writeJson(byte[] out, int offset) {
+        out[offset++] = '"';
+
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+
+            if (isPlain(c)) {
+                out[offset++] = (byte) c;
+            } else {
+                out[offset++] = '\\';
+                out[offset++] = 'u';
+                out[offset++] = (byte) HEX_DIGITS[(c >> 12) & 0xf];
+                out[offset++] = (byte) HEX_DIGITS[(c >> 8) & 0xf];
+                out[offset++] = (byte) HEX_DIGITS[(c >> 4) & 0xf];
+                out[offset++] = (byte) HEX_DIGITS[c & 0xf];
+            }
+        }
+
+        out[offset++] = '"';
+        return offset;
+    }
+
+    private static boolean isPlain(char c) {
+        return c >= 0x20 && c < 0x7f &&
+               c != '"' && c != '\\' && c != '<' && c != '>' && c != '&' && c != '=' && c != '\'';
+    }
+}
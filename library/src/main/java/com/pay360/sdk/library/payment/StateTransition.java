@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+/**
+ * A recorded change of state of a {@link PaymentSession}. Consecutive transitions give the time
+ * spent in each phase of a payment e.g. waiting for network, waiting for response, 3D Secure
+ */
+public class StateTransition {
+
+    private final String fromState;
+    private final String event;
+    private final String toState;
+    private final long timestampNanos;
+
+    StateTransition(String fromState, String event, String toState, long timestampNanos) {
+        this.fromState = fromState;
+        this.event = event;
+        this.toState = toState;
+        this.timestampNanos = timestampNanos;
+    }
+
+    /**
+     * State before the transition
+     * @return state name
+     */
+    public String getFromState() {
+        return fromState;
+    }
+
+    /**
+     * Event which caused the transition
+     * @return event name
+     */
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * State after the transition
+     * @return state name
+     */
+    public String getToState() {
+        return toState;
+    }
+
+    /**
+     * Time of the transition from {@link System#nanoTime()} - only meaningful relative to other
+     * transitions
+     * @return timestamp in ns
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public String toString() {
+        return fromState + " -[" + event + "]-> " + toState + " @" + timestampNanos;
+    }
+}
@@ -4,7 +4,13 @@
 
 package com.pay360.sdk.library.payment;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 public class ThreeDSResumeRequest {
 
@@ -12,6 +18,9 @@ public class ThreeDSResumeRequest {
         response = new threeDSResponse(pares);
     }
 
+    private ThreeDSResumeRequest() {
+    }
+
     @SerializedName("threeDSecureResponse")
     private threeDSResponse response;
 
@@ -23,4 +32,56 @@ public class ThreeDSResumeRequest {
             this.pares = pares;
         }
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<ThreeDSResumeRequest> GSON_ADAPTER = new TypeAdapter<ThreeDSResumeRequest>() {
+        @Override
+        public void write(JsonWriter out, ThreeDSResumeRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if (value.response != null) {
+                out.name("threeDSecureResponse").beginObject();
+                JsonUtils.writeString(out, "pares", value.response.pares);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ThreeDSResumeRequest read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            ThreeDSResumeRequest request = new ThreeDSResumeRequest();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!"threeDSecureResponse".equals(in.nextName())) {
+                    in.skipValue();
+                } else if (!JsonUtils.nextNull(in)) {
+                    request.response = new threeDSResponse(null);
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if ("pares".equals(in.nextName())) {
+                            request.response.pares = JsonUtils.nextString(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                }
+            }
+            in.endObject();
+
+            return request;
+        }
+    };
 }
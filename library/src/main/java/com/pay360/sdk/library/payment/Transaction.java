@@ -6,8 +6,14 @@ package com.pay360.sdk.library.payment;
 
 import android.text.TextUtils;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.utils.JsonUtils;
+
+import java.io.IOException;
 
 /**
  * Mandatory payment transaction details
@@ -101,15 +107,83 @@ public class Transaction {
     }
 
     protected void validateData() throws PaymentValidationException {
+        ValidationResult result = new ValidationResult();
+        validateData(result);
+        result.throwIfInvalid();
+    }
+
+    /**
+     * Check every transaction field, adding the errors found
+     * @param result validation result
+     */
+    void validateData(ValidationResult result) {
         // check amount present
         if (getAmount() <= 0) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_AMOUNT);
+            result.add(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_AMOUNT);
         }
 
         // check currency present
         // TODO need to do any sanity check on the value?
         if (TextUtils.isEmpty(getCurrency())) {
-            throw new PaymentValidationException(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_CURRENCY);
+            result.add(PaymentValidationException.ErrorCode.TRANSACTION_INVALID_CURRENCY);
         }
     }
+
+    /**
+     * Reflection free Gson adapter, see {@link PaymentTypeAdapterFactory}
+     */
+    static final TypeAdapter<Transaction> GSON_ADAPTER = new TypeAdapter<Transaction>() {
+        @Override
+        public void write(JsonWriter out, Transaction value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            JsonUtils.writeString(out, "currency", value.currency);
+
+            // written as a Number to match Gson's float formatting e.g. 10.54 not 10.539999961853027
+            out.name("amount").value(Float.valueOf(value.amount));
+
+            JsonUtils.writeString(out, "description", value.description);
+            JsonUtils.writeString(out, "merchantRef", value.merchantReference);
+            out.name("deferred").value(value.deferred);
+            out.name("recurring").value(value.recurring);
+            out.endObject();
+        }
+
+        @Override
+        public Transaction read(JsonReader in) throws IOException {
+            if (JsonUtils.nextNull(in)) {
+                return null;
+            }
+
+            Transaction transaction = new Transaction();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+
+                if ("currency".equals(name)) {
+                    transaction.currency = JsonUtils.nextString(in);
+                } else if ("amount".equals(name)) {
+                    transaction.amount = JsonUtils.nextFloat(in);
+                } else if ("description".equals(name)) {
+                    transaction.description = JsonUtils.nextString(in);
+                } else if ("merchantRef".equals(name)) {
+                    transaction.merchantReference = JsonUtils.nextString(in);
+                } else if ("deferred".equals(name)) {
+                    transaction.deferred = JsonUtils.nextBoolean(in);
+                } else if ("recurring".equals(name)) {
+                    transaction.recurring = JsonUtils.nextBoolean(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return transaction;
+        }
+    };
 }
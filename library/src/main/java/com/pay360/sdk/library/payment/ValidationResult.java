@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.payment;
+
+import com.pay360.sdk.library.exception.PaymentValidationException;
+import com.pay360.sdk.library.exception.PaymentValidationException.ErrorCode;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Every problem found validating a payment request, see
+ * {@link PaymentManager#checkPaymentDetails(PaymentRequest)}
+ */
+public class ValidationResult {
+
+    private final EnumSet<ErrorCode> errors = EnumSet.noneOf(ErrorCode.class);
+
+    private ErrorCode firstError;
+
+    ValidationResult() {
+    }
+
+    /**
+     * Whether the request is valid
+     * @return true if no errors were found
+     */
+    public boolean isValid() {
+        return firstError == null;
+    }
+
+    /**
+     * Whether a particular error was found e.g. to highlight the field
+     * @param errorCode error code
+     * @return true if found
+     */
+    public boolean hasError(ErrorCode errorCode) {
+        return errors.contains(errorCode);
+    }
+
+    /**
+     * All errors found
+     * @return error codes, empty if valid
+     */
+    public Set<ErrorCode> getErrors() {
+        return Collections.unmodifiableSet(errors);
+    }
+
+    /**
+     * The error {@link PaymentManager#validatePaymentDetails(PaymentRequest)} throws, the first in
+     * the order the request is checked
+     * @return error code or null if valid
+     */
+    public ErrorCode getFirstError() {
+        return firstError;
+    }
+
+    void add(ErrorCode errorCode) {
+        if (errorCode == null) {
+            return;
+        }
+
+        if (firstError == null) {
+            firstError = errorCode;
+        }
+
+        errors.add(errorCode);
+    }
+
+    void throwIfInvalid() throws PaymentValidationException {
+        if (firstError != null) {
+            throw new PaymentValidationException(firstError);
+        }
+    }
+}
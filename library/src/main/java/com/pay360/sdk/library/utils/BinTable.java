@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.utils;
+
+import android.util.Log;
+
+import com.pay360.sdk.library.log.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable index of card scheme BIN/IIN ranges for detecting the scheme from the leading digits
+ * of a PAN and applying the scheme's PAN and CV2 length rules.
+ *
+ * <p>Ranges are held as 6 digit bounds in sorted int arrays and found by binary search, so a
+ * lookup is a handful of comparisons and allocates nothing. The default table is loaded from the
+ * bin_ranges.txt resource bundled with the SDK; apps can load their own with
+ * {@link #load(Reader)} and install it with {@link #setDefault(BinTable)}.
+ *
+ * <p>Each line of a table is a prefix or prefix range, the scheme, the allowed PAN lengths and
+ * the CV2 length e.g. <code>51-55 MASTERCARD 16 3</code> or <code>4 VISA 13,16,19 3</code>.
+ * Blank lines and lines starting with # are ignored.
+ */
+public class BinTable {
+
+    /**
+     * Number of digits the ranges are resolved to
+     */
+    public static final int PREFIX_LENGTH = 6;
+
+    private static final String RESOURCE = "bin_ranges.txt";
+
+    private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+    private static volatile BinTable defaultTable;
+
+    // parallel arrays sorted by range start, ranges don't overlap so the ends are sorted too
+    private final int[] starts;
+    private final int[] ends;
+    private final Range[] ranges;
+
+    /**
+     * Scheme rules for a BIN range
+     */
+    public static final class Range {
+
+        private final CardScheme scheme;
+        private final int panLengths; // bit per allowed length
+        private final int panLengthMax;
+        private final int cv2Length;
+
+        private Range(CardScheme scheme, int panLengths, int cv2Length) {
+            this.scheme = scheme;
+            this.panLengths = panLengths;
+            this.panLengthMax = 31 - Integer.numberOfLeadingZeros(panLengths);
+            this.cv2Length = cv2Length;
+        }
+
+        public CardScheme getScheme() {
+            return scheme;
+        }
+
+        public boolean isValidPanLength(int length) {
+            return length >= 0 && length < 32 && (panLengths & (1 << length)) != 0;
+        }
+
+        public int getPanLengthMax() {
+            return panLengthMax;
+        }
+
+        public int getCv2Length() {
+            return cv2Length;
+        }
+    }
+
+    private BinTable(int[] starts, int[] ends, Range[] ranges) {
+        this.starts = starts;
+        this.ends = ends;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Table bundled with the SDK unless replaced by {@link #setDefault(BinTable)}
+     * @return table, empty if the bundled table failed to load
+     */
+    public static BinTable getDefault() {
+        BinTable table = defaultTable;
+
+        if (table == null) {
+            synchronized (BinTable.class) {
+                table = defaultTable;
+
+                if (table == null) {
+                    table = loadDefault();
+                    defaultTable = table;
+                }
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Replace the default table e.g. with one downloaded by the app
+     * @param table table or null to reload the bundled table
+     */
+    public static void setDefault(BinTable table) {
+        defaultTable = table;
+    }
+
+    /**
+     * Load a table
+     * @param reader table text
+     * @return table
+     * @throws IOException error reading
+     * @throws IllegalArgumentException malformed line or overlapping ranges
+     */
+    public static BinTable load(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        List<int[]> bounds = new ArrayList<int[]>();
+        final List<Range> ranges = new ArrayList<Range>();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Invalid BIN range: " + line);
+            }
+
+            try {
+                String[] prefixes = fields[0].split("-");
+                String first = prefixes[0];
+                String last = prefixes.length > 1 ? prefixes[1] : first;
+
+                if (prefixes.length > 2 ||
+                    first.length() != last.length() ||
+                    first.length() > PREFIX_LENGTH) {
+                    throw new IllegalArgumentException("Invalid BIN range: " + line);
+                }
+
+                int scale = POWERS_OF_TEN[PREFIX_LENGTH - first.length()];
+                int start = Integer.parseInt(first) * scale;
+                int end = (Integer.parseInt(last) + 1) * scale - 1;
+
+                if (end < start) {
+                    throw new IllegalArgumentException("Invalid BIN range: " + line);
+                }
+
+                bounds.add(new int[] { start, end, ranges.size() });
+                ranges.add(new Range(CardScheme.valueOf(fields[1]), parseLengths(fields[2]),
+                        Integer.parseInt(fields[3])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid BIN range: " + line);
+            }
+        }
+
+        Collections.sort(bounds, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] lhs, int[] rhs) {
+                return lhs[0] < rhs[0] ? -1 : (lhs[0] == rhs[0] ? 0 : 1);
+            }
+        });
+
+        int[] starts = new int[bounds.size()];
+        int[] ends = new int[bounds.size()];
+        Range[] sorted = new Range[bounds.size()];
+
+        for (int i = 0; i < bounds.size(); i++) {
+            int[] range = bounds.get(i);
+
+            if (i > 0 && range[0] <= ends[i - 1]) {
+                throw new IllegalArgumentException("Overlapping BIN ranges at " + range[0]);
+            }
+
+            starts[i] = range[0];
+            ends[i] = range[1];
+            sorted[i] = ranges.get(range[2]);
+        }
+
+        return new BinTable(starts, ends, sorted);
+    }
+
+    /**
+     * Look up the range of a PAN from its leading digits
+     * @param pan card number or the start of one, may contain separators
+     * @return range or null if unknown or the digits so far match more than one scheme
+     */
+    public Range lookup(CharSequence pan) {
+        if (pan == null) {
+            return null;
+        }
+
+        int prefix = 0;
+        int length = 0;
+
+        for (int i = 0; i < pan.length() && length < PREFIX_LENGTH; i++) {
+            char c = pan.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                prefix = prefix * 10 + (c - '0');
+                length++;
+            } else if (!PanUtils.isSeparator(c)) {
+                return null;
+            }
+        }
+
+        return lookup(prefix, length);
+    }
+
+    /**
+     * Look up the range of a PAN from its leading digits
+     * @param prefix value of the leading digits
+     * @param length number of leading digits, at most {@link #PREFIX_LENGTH}
+     * @return range or null if unknown or the digits so far match more than one scheme
+     */
+    public Range lookup(int prefix, int length) {
+        if (length <= 0 || length > PREFIX_LENGTH) {
+            return null;
+        }
+
+        // every 6 digit prefix starting with the digits so far
+        int scale = POWERS_OF_TEN[PREFIX_LENGTH - length];
+        int low = prefix * scale;
+        int high = low + scale - 1;
+
+        // first range ending at or after low
+        int min = 0;
+        int max = ends.length;
+        while (min < max) {
+            int mid = (min + max) >>> 1;
+
+            if (ends[mid] < low) {
+                min = mid + 1;
+            } else {
+                max = mid;
+            }
+        }
+
+        if (min == ends.length || starts[min] > high) {
+            return null;
+        }
+
+        Range range = ranges[min];
+
+        // a short prefix may span ranges, only report it once they agree on the scheme
+        for (int i = min + 1; i < starts.length && starts[i] <= high; i++) {
+            if (ranges[i].scheme != range.scheme) {
+                return null;
+            }
+        }
+
+        return range;
+    }
+
+    private static int parseLengths(String lengths) {
+        int mask = 0;
+
+        for (String length : lengths.split(",")) {
+            String[] bounds = length.split("-");
+            int min = Integer.parseInt(bounds[0]);
+            int max = bounds.length > 1 ? Integer.parseInt(bounds[1]) : min;
+
+            if (bounds.length > 2 || min < 1 || max > 31 || max < min) {
+                throw new IllegalArgumentException("Invalid PAN lengths: " + lengths);
+            }
+
+            for (int i = min; i <= max; i++) {
+                mask |= 1 << i;
+            }
+        }
+
+        return mask;
+    }
+
+    private static BinTable loadDefault() {
+        InputStream in = BinTable.class.getResourceAsStream(RESOURCE);
+
+        try {
+            if (in == null) {
+                throw new IOException("Missing " + RESOURCE);
+            }
+
+            return load(new InputStreamReader(in, "UTF-8"));
+        } catch (IOException e) {
+            Log.w(Logger.TAG, "Failed to load BIN table, using generic card rules", e);
+        } catch (IllegalArgumentException e) {
+            Log.w(Logger.TAG, "Failed to load BIN table, using generic card rules", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        return new BinTable(new int[0], new int[0], new Range[0]);
+    }
+}
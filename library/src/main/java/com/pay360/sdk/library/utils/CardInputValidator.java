@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.utils;
+
+import com.pay360.sdk.library.exception.PaymentValidationException.ErrorCode;
+
+/**
+ * Incremental validation of the card fields as they are typed.
+ *
+ * <p>Feed each edit of the PAN, expiry and CV2 fields, typically from
+ * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}, and read the
+ * state back. The validator keeps its own copy of each field in a fixed size buffer along with
+ * the digit count and the Luhn sums for both digit parities, so typing or deleting at the end of
+ * a field is constant work and nothing is allocated. Edits in the middle of the PAN rescan it,
+ * bounded by the buffer size.
+ *
+ * <p>The card scheme is looked up in the {@link BinTable} as the first digits are typed and its
+ * PAN and CV2 lengths used in place of the generic rules.
+ *
+ * <p>Not thread safe, use from the UI thread.
+ */
+public class CardInputValidator {
+
+    /**
+     * More input needed, nothing wrong so far
+     */
+    public static final int STATE_INCOMPLETE    = 0;
+
+    /**
+     * Complete and valid
+     */
+    public static final int STATE_VALID         = 1;
+
+    /**
+     * Invalid whatever else is typed, other than by deleting
+     */
+    public static final int STATE_INVALID       = 2;
+
+    private static final int PAN_CAPACITY       = 40; // digits plus separators
+    private static final int EXPIRY_CAPACITY    = 8;
+    private static final int CV2_CAPACITY       = 8;
+
+    private static final int LENGTH_EXPIRY_DATE = 4;
+    private static final int CV2_LENGTH_MIN     = 3;
+    private static final int CV2_LENGTH_MAX     = 4;
+
+    // the separators the final validation skips, so a field valid as typed stays valid when
+    // submitted
+    private final Field pan = new Field(PAN_CAPACITY, "") {
+        @Override
+        boolean isSeparator(char c) {
+            return PanUtils.isSeparator(c);
+        }
+    };
+    private final Field expiry = new Field(EXPIRY_CAPACITY, "/");
+    private final Field cv2 = new Field(CV2_CAPACITY, "");
+
+    // Luhn sums over the PAN with the digits at odd and at even indexes from the left doubled,
+    // which one applies depends on whether the digit count is even
+    private int luhnOddDoubled;
+    private int luhnEvenDoubled;
+
+    // scheme rules from the leading digits, null if unknown
+    private BinTable.Range panRange;
+
+    /**
+     * Insert a character into the PAN
+     * @param index index in the field
+     * @param c character typed
+     * @return PAN state
+     */
+    public int insertPan(int index, char c) {
+        if (pan.insert(index, c) && isDigit(c)) {
+            if (index == pan.length - 1) {
+                // appended - the new digit is the last one
+                addLuhnDigit(c - '0', pan.digits - 1, 1);
+
+                if (pan.digits <= BinTable.PREFIX_LENGTH) {
+                    lookupRange();
+                }
+            } else {
+                computeLuhn();
+                lookupRange();
+            }
+        }
+
+        return getPanState();
+    }
+
+    /**
+     * Delete a character from the PAN
+     * @param index index in the field
+     * @return PAN state
+     */
+    public int deletePan(int index) {
+        char c = pan.delete(index);
+
+        if (isDigit(c)) {
+            if (index == pan.length) {
+                addLuhnDigit(c - '0', pan.digits, -1);
+
+                if (pan.digits < BinTable.PREFIX_LENGTH) {
+                    lookupRange();
+                }
+            } else {
+                computeLuhn();
+                lookupRange();
+            }
+        }
+
+        return getPanState();
+    }
+
+    /**
+     * Apply an edit of the PAN field, arguments as passed to
+     * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}. If more was
+     * typed than the validator holds the field is rescanned from the text
+     * @param s field text after the edit
+     * @param start start of the edit
+     * @param before number of characters replaced
+     * @param count number of characters inserted
+     * @return PAN state
+     */
+    public int onPanTextChanged(CharSequence s, int start, int before, int count) {
+        if (pan.overflow) {
+            // lost track of the text - invalid until it fits again
+            return setPan(s);
+        }
+
+        for (int i = before - 1; i >= 0; i--) {
+            deletePan(start + i);
+        }
+
+        for (int i = 0; i < count; i++) {
+            insertPan(start + i, s.charAt(start + i));
+        }
+
+        return getPanState();
+    }
+
+    /**
+     * Replace the PAN
+     * @param s card number, may contain separators
+     * @return PAN state
+     */
+    public int setPan(CharSequence s) {
+        pan.clear();
+        luhnOddDoubled = 0;
+        luhnEvenDoubled = 0;
+        panRange = null;
+
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                insertPan(i, s.charAt(i));
+            }
+        }
+
+        return getPanState();
+    }
+
+    /**
+     * Card scheme from the digits typed so far
+     * @return scheme or null if not known yet
+     */
+    public CardScheme getScheme() {
+        return panRange != null ? panRange.getScheme() : null;
+    }
+
+    /**
+     * PAN state. A PAN of the wrong length or failing the Luhn check is incomplete rather than
+     * invalid while it is shorter than the maximum length as more digits may still make it valid
+     * @return {@link #STATE_INCOMPLETE}, {@link #STATE_VALID} or {@link #STATE_INVALID}
+     */
+    public int getPanState() {
+        int lengthMax = getPanLengthMax();
+
+        if (pan.isMalformed() ||
+            pan.digits > lengthMax) {
+            return STATE_INVALID;
+        }
+
+        if (pan.digits < PanUtils.PAN_LENGTH_MIN) {
+            return STATE_INCOMPLETE;
+        }
+
+        if (isValidPanLength() && isLuhnValid()) {
+            return STATE_VALID;
+        }
+
+        return pan.digits < lengthMax ? STATE_INCOMPLETE : STATE_INVALID;
+    }
+
+    /**
+     * Error submitting the PAN as it is now would give
+     * @return error code or null if valid
+     */
+    public ErrorCode getPanError() {
+        if (pan.isMalformed() ||
+            pan.digits < PanUtils.PAN_LENGTH_MIN ||
+            pan.digits > PanUtils.PAN_LENGTH_MAX ||
+            !isValidPanLength()) {
+            return ErrorCode.CARD_PAN_INVALID;
+        }
+
+        return isLuhnValid() ? null : ErrorCode.CARD_PAN_INVALID_LUHN;
+    }
+
+    /**
+     * Insert a character into the expiry date
+     * @param index index in the field
+     * @param c character typed
+     * @return expiry state
+     */
+    public int insertExpiry(int index, char c) {
+        expiry.insert(index, c);
+        return getExpiryState();
+    }
+
+    /**
+     * Delete a character from the expiry date
+     * @param index index in the field
+     * @return expiry state
+     */
+    public int deleteExpiry(int index) {
+        expiry.delete(index);
+        return getExpiryState();
+    }
+
+    /**
+     * Apply an edit of the expiry field, see {@link #onPanTextChanged(CharSequence, int, int, int)}
+     */
+    public int onExpiryTextChanged(CharSequence s, int start, int before, int count) {
+        expiry.replace(s, start, before, count);
+        return getExpiryState();
+    }
+
+    /**
+     * Replace the expiry date
+     * @param s expiry MMYY, may contain a '/' separator
+     * @return expiry state
+     */
+    public int setExpiry(CharSequence s) {
+        expiry.set(s);
+        return getExpiryState();
+    }
+
+    /**
+     * Expiry state, invalid as soon as the month can't be valid
+     * @return {@link #STATE_INCOMPLETE}, {@link #STATE_VALID} or {@link #STATE_INVALID}
+     */
+    public int getExpiryState() {
+        ErrorCode error = getExpiryError();
+
+        if (error == null) {
+            return STATE_VALID;
+        }
+
+        if (error == ErrorCode.CARD_EXPIRY_INVALID &&
+            !expiry.isMalformed() &&
+            expiry.digits < LENGTH_EXPIRY_DATE) {
+
+            // check the month so far
+            if (expiry.digits < 2) {
+                return expiry.digits == 0 || expiry.digit(0) <= 1 ? STATE_INCOMPLETE : STATE_INVALID;
+            }
+
+            int month = expiry.digit(0) * 10 + expiry.digit(1);
+            if (month >= 1 && month <= 12) {
+                return STATE_INCOMPLETE;
+            }
+        }
+
+        return STATE_INVALID;
+    }
+
+    /**
+     * Error submitting the expiry date as it is now would give
+     * @return error code or null if valid
+     */
+    public ErrorCode getExpiryError() {
+        if (expiry.isMalformed() ||
+            expiry.digits != LENGTH_EXPIRY_DATE) {
+            return ErrorCode.CARD_EXPIRY_INVALID;
+        }
+
+        int month = expiry.digit(0) * 10 + expiry.digit(1);
+        int year = 2000 + expiry.digit(2) * 10 + expiry.digit(3);
+
+        switch (ExpiryValidator.getDefault().validate(month, year)) {
+            case ExpiryValidator.EXPIRY_INVALID:
+                return ErrorCode.CARD_EXPIRY_INVALID;
+            case ExpiryValidator.EXPIRY_EXPIRED:
+                return ErrorCode.CARD_EXPIRED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Insert a character into the CV2
+     * @param index index in the field
+     * @param c character typed
+     * @return CV2 state
+     */
+    public int insertCv2(int index, char c) {
+        cv2.insert(index, c);
+        return getCv2State();
+    }
+
+    /**
+     * Delete a character from the CV2
+     * @param index index in the field
+     * @return CV2 state
+     */
+    public int deleteCv2(int index) {
+        cv2.delete(index);
+        return getCv2State();
+    }
+
+    /**
+     * Apply an edit of the CV2 field, see {@link #onPanTextChanged(CharSequence, int, int, int)}
+     */
+    public int onCv2TextChanged(CharSequence s, int start, int before, int count) {
+        cv2.replace(s, start, before, count);
+        return getCv2State();
+    }
+
+    /**
+     * Replace the CV2
+     * @param s card CV2
+     * @return CV2 state
+     */
+    public int setCv2(CharSequence s) {
+        cv2.set(s);
+        return getCv2State();
+    }
+
+    /**
+     * CV2 state
+     * @return {@link #STATE_INCOMPLETE}, {@link #STATE_VALID} or {@link #STATE_INVALID}
+     */
+    public int getCv2State() {
+        int lengthMin = panRange != null ? panRange.getCv2Length() : CV2_LENGTH_MIN;
+        int lengthMax = panRange != null ? panRange.getCv2Length() : CV2_LENGTH_MAX;
+
+        if (cv2.isMalformed() ||
+            cv2.digits > lengthMax) {
+            return STATE_INVALID;
+        }
+
+        return cv2.digits < lengthMin ? STATE_INCOMPLETE : STATE_VALID;
+    }
+
+    /**
+     * Error submitting the CV2 as it is now would give
+     * @return error code or null if valid
+     */
+    public ErrorCode getCv2Error() {
+        return getCv2State() == STATE_VALID ? null : ErrorCode.CARD_CV2_INVALID;
+    }
+
+    /**
+     * Combined state of the card fields
+     * @return {@link #STATE_INVALID} if any field is invalid, {@link #STATE_VALID} if all are
+     * valid otherwise {@link #STATE_INCOMPLETE}
+     */
+    public int getState() {
+        int panState = getPanState();
+        int expiryState = getExpiryState();
+        int cv2State = getCv2State();
+
+        if (panState == STATE_INVALID ||
+            expiryState == STATE_INVALID ||
+            cv2State == STATE_INVALID) {
+            return STATE_INVALID;
+        }
+
+        if (panState == STATE_VALID &&
+            expiryState == STATE_VALID &&
+            cv2State == STATE_VALID) {
+            return STATE_VALID;
+        }
+
+        return STATE_INCOMPLETE;
+    }
+
+    /**
+     * Error submitting the card fields as they are now would give, in the order
+     * {@link com.pay360.sdk.library.payment.PaymentManager#validatePaymentDetails} checks them
+     * @return error code or null if valid
+     */
+    public ErrorCode getError() {
+        ErrorCode error = getPanError();
+
+        if (error == null) {
+            error = getExpiryError();
+        }
+
+        if (error == null) {
+            error = getCv2Error();
+        }
+
+        return error;
+    }
+
+    private int getPanLengthMax() {
+        return panRange != null ?
+                Math.min(panRange.getPanLengthMax(), PanUtils.PAN_LENGTH_MAX) : PanUtils.PAN_LENGTH_MAX;
+    }
+
+    private boolean isValidPanLength() {
+        return panRange == null || panRange.isValidPanLength(pan.digits);
+    }
+
+    private void lookupRange() {
+        int prefix = 0;
+        int length = 0;
+
+        for (int i = 0; i < pan.length && length < BinTable.PREFIX_LENGTH; i++) {
+            char c = pan.text[i];
+
+            if (isDigit(c)) {
+                prefix = prefix * 10 + (c - '0');
+                length++;
+            }
+        }
+
+        panRange = BinTable.getDefault().lookup(prefix, length);
+    }
+
+    private boolean isLuhnValid() {
+        // the check digit is never doubled, so with an even digit count the digits at even
+        // indexes from the left are doubled
+        int sum = (pan.digits & 1) == 0 ? luhnEvenDoubled : luhnOddDoubled;
+        return sum % 10 == 0;
+    }
+
+    private void addLuhnDigit(int digit, int index, int sign) {
+        luhnOddDoubled += sign * PanUtils.luhnDigit(digit, index);
+        luhnEvenDoubled += sign * PanUtils.luhnDigit(digit, index + 1);
+    }
+
+    private void computeLuhn() {
+        luhnOddDoubled = 0;
+        luhnEvenDoubled = 0;
+
+        int index = 0;
+        for (int i = 0; i < pan.length; i++) {
+            char c = pan.text[i];
+
+            if (isDigit(c)) {
+                addLuhnDigit(c - '0', index++, 1);
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Fixed size copy of a field with running character counts
+     */
+    private static class Field {
+
+        private final char[] text;
+        private final String separators;
+
+        private int length;
+        private int digits;
+        private int invalid;
+
+        // more typed than fits, the field is invalid until cleared or rescanned from the text
+        private boolean overflow;
+
+        /**
+         * @param separators characters ignored as well as whitespace
+         */
+        private Field(int capacity, String separators) {
+            this.text = new char[capacity];
+            this.separators = separators;
+        }
+
+        /**
+         * @return true if the character was stored
+         */
+        private boolean insert(int index, char c) {
+            if (overflow) {
+                // lost track of the text
+                return false;
+            }
+
+            if (index < 0 || index > length) {
+                throw new IndexOutOfBoundsException("Invalid index " + index + ", length " + length);
+            }
+
+            if (length == text.length) {
+                overflow = true;
+                return false;
+            }
+
+            System.arraycopy(text, index, text, index + 1, length - index);
+            text[index] = c;
+            length++;
+
+            count(c, 1);
+            return true;
+        }
+
+        /**
+         * @return character deleted or 0 if none
+         */
+        private char delete(int index) {
+            if (overflow) {
+                // lost track of the text
+                return 0;
+            }
+
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Invalid index " + index + ", length " + length);
+            }
+
+            char c = text[index];
+            System.arraycopy(text, index + 1, text, index, length - index - 1);
+            length--;
+
+            count(c, -1);
+            return c;
+        }
+
+        private void replace(CharSequence s, int start, int before, int count) {
+            if (overflow) {
+                // lost track of the text - invalid until it fits again
+                set(s);
+                return;
+            }
+
+            for (int i = before - 1; i >= 0; i--) {
+                delete(start + i);
+            }
+
+            for (int i = 0; i < count; i++) {
+                insert(start + i, s.charAt(start + i));
+            }
+        }
+
+        private void set(CharSequence s) {
+            clear();
+
+            if (s != null) {
+                for (int i = 0; i < s.length(); i++) {
+                    insert(i, s.charAt(i));
+                }
+            }
+        }
+
+        private void clear() {
+            length = 0;
+            digits = 0;
+            invalid = 0;
+            overflow = false;
+        }
+
+        private boolean isMalformed() {
+            return overflow || invalid > 0;
+        }
+
+        /**
+         * Value of the nth digit ignoring separators, the field is short so this is a bounded scan
+         */
+        private int digit(int n) {
+            for (int i = 0; i < length; i++) {
+                if (isDigit(text[i]) && n-- == 0) {
+                    return text[i] - '0';
+                }
+            }
+
+            return 0;
+        }
+
+        boolean isSeparator(char c) {
+            return StringUtils.isWhitespace(c) || separators.indexOf(c) >= 0;
+        }
+
+        private void count(char c, int sign) {
+            if (isDigit(c)) {
+                digits += sign;
+            } else if (!isSeparator(c)) {
+                invalid += sign;
+            }
+        }
+    }
+}
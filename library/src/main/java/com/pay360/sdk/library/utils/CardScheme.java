@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.utils;
+
+/**
+ * Card scheme detected from the leading digits of the PAN, see {@link BinTable}
+ */
+public enum CardScheme {
+    VISA,
+    MASTERCARD,
+    MAESTRO,
+    AMEX,
+    DINERS,
+    DISCOVER,
+    JCB,
+    UNIONPAY
+}
@@ -31,4 +31,38 @@ public class Cv2Utils {
 
         return true;
     }
+
+    /**
+     * Check the CV2 against the length used by the card scheme, ignoring whitespace
+     * @param cv2 card CV2
+     * @param range BIN range of the card or null if unknown to use the generic rules
+     * @return true if valid
+     */
+    public static boolean isValidCv2Number(CharSequence cv2, BinTable.Range range) {
+        if (cv2 == null) {
+            return false;
+        }
+
+        int digits = 0;
+
+        for (int i = 0; i < cv2.length(); i++) {
+            char c = cv2.charAt(i);
+
+            if (StringUtils.isWhitespace(c)) {
+                continue;
+            }
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+
+            digits++;
+        }
+
+        if (range != null) {
+            return digits == range.getCv2Length();
+        }
+
+        return digits >= CV2_LENGTH_MIN && digits <= CV2_LENGTH_MAX;
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.utils;
+
+import java.util.Calendar;
+
+/**
+ * Card expiry date validation without allocation.
+ *
+ * <p>The MMYY digits are parsed straight from the characters into a month index (year * 12 +
+ * month) and compared against the current month index. The current month is cached with the
+ * time it ends, so the clock is only converted to a calendar month when the month rolls over.
+ */
+public class ExpiryValidator {
+
+    /**
+     * Expiry date is valid and not expired
+     */
+    public static final int EXPIRY_VALID    = 0;
+
+    /**
+     * Expiry date is not 4 digits MMYY or the month is out of range
+     */
+    public static final int EXPIRY_INVALID  = 1;
+
+    /**
+     * Card has expired
+     */
+    public static final int EXPIRY_EXPIRED  = 2;
+
+    private static final int LENGTH_EXPIRY_DATE = 4;
+
+    private static final ExpiryValidator DEFAULT = new ExpiryValidator(Clock.SYSTEM);
+
+    /**
+     * Source of the current time
+     */
+    public interface Clock {
+
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        long currentTimeMillis();
+    }
+
+    /**
+     * Current month and the time range it covers, replaced as a whole on rollover
+     */
+    private static final class Month {
+        private final int index;
+        private final long start;
+        private final long end;
+
+        private Month(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final Clock clock;
+
+    private volatile Month month;
+
+    public ExpiryValidator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Validator using the system clock
+     * @return shared validator
+     */
+    public static ExpiryValidator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Validate an expiry date
+     * @param expiry MMYY, whitespace is ignored
+     * @return {@link #EXPIRY_VALID}, {@link #EXPIRY_INVALID} or {@link #EXPIRY_EXPIRED}
+     */
+    public int validate(CharSequence expiry) {
+        if (expiry == null) {
+            return EXPIRY_INVALID;
+        }
+
+        int digits = 0;
+        int value = 0;
+
+        for (int i = 0; i < expiry.length(); i++) {
+            char c = expiry.charAt(i);
+
+            if (StringUtils.isWhitespace(c)) {
+                continue;
+            }
+
+            if (c < '0' || c > '9' || ++digits > LENGTH_EXPIRY_DATE) {
+                return EXPIRY_INVALID;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        if (digits != LENGTH_EXPIRY_DATE) {
+            return EXPIRY_INVALID;
+        }
+
+        return validate(value / 100, 2000 + value % 100);
+    }
+
+    /**
+     * Validate an expiry month
+     * @param month month 1-12
+     * @param year year e.g. 2016
+     * @return {@link #EXPIRY_VALID}, {@link #EXPIRY_INVALID} or {@link #EXPIRY_EXPIRED}
+     */
+    public int validate(int month, int year) {
+        if (month < 1 ||
+            month > 12) {
+            return EXPIRY_INVALID;
+        }
+
+        // valid to the end of the expiry month
+        return monthIndex(year, month - 1) < getCurrentMonthIndex() ? EXPIRY_EXPIRED : EXPIRY_VALID;
+    }
+
+    /**
+     * Current month as year * 12 + month from 0
+     * @return month index
+     */
+    int getCurrentMonthIndex() {
+        long now = clock.currentTimeMillis();
+        Month current = month;
+
+        if (current == null || now < current.start || now >= current.end) {
+            current = computeMonth(now);
+            month = current;
+        }
+
+        return current.index;
+    }
+
+    private static Month computeMonth(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+
+        int index = monthIndex(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH));
+
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        calendar.add(Calendar.MONTH, 1);
+        long end = calendar.getTimeInMillis();
+
+        return new Month(index, start, end);
+    }
+
+    private static int monthIndex(int year, int month) {
+        return year * 12 + month;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 Capita plc
+ */
+
+package com.pay360.sdk.library.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON helpers for the hand written Gson type adapters. Mirrors Gson's reflective
+ * behaviour - null fields are not written and JSON nulls leave primitives at their default value
+ */
+public class JsonUtils {
+
+    public static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    public static boolean nextNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+
+        return false;
+    }
+
+    public static String nextString(JsonReader in) throws IOException {
+        return nextNull(in) ? null : in.nextString();
+    }
+
+    /**
+     * Read a string from a small set of values e.g. a currency code, interned so every response
+     * shares one instance
+     */
+    public static String nextInternedString(JsonReader in) throws IOException {
+        String value = nextString(in);
+        return value != null ? value.intern() : null;
+    }
+
+    public static int nextInt(JsonReader in) throws IOException {
+        return nextNull(in) ? 0 : in.nextInt();
+    }
+
+    public static long nextLong(JsonReader in) throws IOException {
+        return nextNull(in) ? 0L : in.nextLong();
+    }
+
+    public static float nextFloat(JsonReader in) throws IOException {
+        return nextNull(in) ? 0f : (float) in.nextDouble();
+    }
+
+    public static boolean nextBoolean(JsonReader in) throws IOException {
+        return !nextNull(in) && in.nextBoolean();
+    }
+}
@@ -4,49 +4,203 @@
 
 package com.pay360.sdk.library.utils;
 
-import android.text.TextUtils;
-
 /**
  * PAN utility functions
+ *
+ * <p>Validation is a single pass over the characters with no allocation so it is cheap enough to
+ * run on every keystroke. Whitespace and dashes are treated as separators and ignored. PANs of a
+ * scheme known to {@link BinTable} must also have one of the scheme's lengths.
  */
 public class PanUtils {
 
-    private static final int PAN_LENGTH_MIN = 13;
-    private static final int PAN_LENGTH_MAX = 19;
+    public static final int PAN_LENGTH_MIN = 13;
+    public static final int PAN_LENGTH_MAX = 19;
+
+    /**
+     * PAN is valid
+     */
+    public static final int PAN_VALID           = 0;
+
+    /**
+     * PAN is empty, too short, too long or contains a character other than a digit or separator,
+     * or the length isn't valid for the card scheme
+     */
+    public static final int PAN_INVALID         = 1;
+
+    /**
+     * PAN fails the Luhn check
+     */
+    public static final int PAN_INVALID_LUHN    = 2;
+
+    private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000 };
+
+    /**
+     * Validate length, characters and Luhn check digit
+     * @param pan card number, may contain separators
+     * @return {@link #PAN_VALID}, {@link #PAN_INVALID} or {@link #PAN_INVALID_LUHN}
+     */
+    public static int validate(CharSequence pan) {
+        if (pan == null) {
+            return PAN_INVALID;
+        }
 
-    public static boolean checkLuhn(String pan) {
+        int digits = 0;
         int sum = 0;
-        int length = pan.length();
-        for (int i = 0; i < length; i++) {
+        int prefix = 0;
 
+        // from the right so every 2nd digit from the check digit is doubled
+        for (int i = pan.length() - 1; i >= 0; i--) {
+            char c = pan.charAt(i);
 
-            // get digits in reverse order
-            int digit = Integer.parseInt(pan.substring(length - i - 1, length -i));
+            if (isSeparator(c)) {
+                continue;
+            }
 
-            // every 2nd number multiply with 2
-            if (i % 2 == 1) {
-                digit *= 2;
+            if (c < '0' || c > '9') {
+                return PAN_INVALID;
             }
-            sum += digit > 9 ? digit - 9 : digit;
+
+            prefix = prefix(prefix, c - '0', digits);
+            sum += luhnDigit(c - '0', digits++);
         }
+
+        return result(digits, sum, prefix);
+    }
+
+    /**
+     * Validate length, characters and Luhn check digit
+     * @param pan card number, may contain separators
+     * @param offset index of the first character
+     * @param length number of characters
+     * @return {@link #PAN_VALID}, {@link #PAN_INVALID} or {@link #PAN_INVALID_LUHN}
+     */
+    public static int validate(char[] pan, int offset, int length) {
+        if (pan == null) {
+            return PAN_INVALID;
+        }
+
+        int digits = 0;
+        int sum = 0;
+        int prefix = 0;
+
+        for (int i = offset + length - 1; i >= offset; i--) {
+            char c = pan[i];
+
+            if (isSeparator(c)) {
+                continue;
+            }
+
+            if (c < '0' || c > '9') {
+                return PAN_INVALID;
+            }
+
+            prefix = prefix(prefix, c - '0', digits);
+            sum += luhnDigit(c - '0', digits++);
+        }
+
+        return result(digits, sum, prefix);
+    }
+
+    public static int validate(char[] pan) {
+        return pan == null ? PAN_INVALID : validate(pan, 0, pan.length);
+    }
+
+    public static boolean checkLuhn(CharSequence pan) {
+        int sum = 0;
+        int digits = 0;
+
+        for (int i = pan.length() - 1; i >= 0; i--) {
+            char c = pan.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+
+            sum += luhnDigit(c - '0', digits++);
+        }
+
         return sum % 10 == 0;
     }
 
-    public static boolean isValidCardNumber(String pan) {
-        if (TextUtils.isEmpty(pan)) {
-            return false;
+    public static boolean isValidCardNumber(CharSequence pan) {
+        return validate(pan) != PAN_INVALID;
+    }
+
+    /**
+     * Remove the separators validation ignores
+     * @param pan card number
+     * @return card number without separators
+     */
+    public static String deleteSeparators(String pan) {
+        if (pan == null) {
+            return null;
+        }
+
+        StringBuilder builder = null;
+
+        for (int i = 0; i < pan.length(); i++) {
+            char c = pan.charAt(i);
+
+            if (isSeparator(c)) {
+                if (builder == null) {
+                    builder = new StringBuilder(pan.length());
+                    builder.append(pan, 0, i);
+                }
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+
+        // no copy if there is nothing to remove
+        return builder != null ? builder.toString() : pan;
+    }
+
+    /**
+     * Luhn contribution of a digit
+     * @param digit digit value
+     * @param position position from the right, 0 for the check digit
+     * @return value to add to the Luhn sum
+     */
+    static int luhnDigit(int digit, int position) {
+        // every 2nd number multiply with 2
+        if ((position & 1) == 1) {
+            digit *= 2;
         }
+        return digit > 9 ? digit - 9 : digit;
+    }
 
-        if (pan.length() < PAN_LENGTH_MIN ||
-            pan.length() > PAN_LENGTH_MAX) {
-           return false;
+    static boolean isSeparator(char c) {
+        return StringUtils.isWhitespace(c) || c == '-';
+    }
+
+    /**
+     * Leading digits so far when reading from the right
+     * @param prefix leading digits before this one
+     * @param digit digit value
+     * @param position position from the right
+     * @return up to {@link BinTable#PREFIX_LENGTH} leading digits
+     */
+    private static int prefix(int prefix, int digit, int position) {
+        if (position < BinTable.PREFIX_LENGTH) {
+            return digit * POWERS_OF_TEN[position] + prefix;
+        }
+
+        // drop the rightmost digit
+        return digit * POWERS_OF_TEN[BinTable.PREFIX_LENGTH - 1] + prefix / 10;
+    }
+
+    private static int result(int digits, int sum, int prefix) {
+        if (digits < PAN_LENGTH_MIN ||
+            digits > PAN_LENGTH_MAX) {
+            return PAN_INVALID;
         }
 
-        // check all numeric
-        if (!TextUtils.isDigitsOnly(pan)) {
-            return false;
+        BinTable.Range range = BinTable.getDefault().lookup(prefix, BinTable.PREFIX_LENGTH);
+
+        if (range != null && !range.isValidPanLength(digits)) {
+            return PAN_INVALID;
         }
 
-        return true;
+        return sum % 10 == 0 ? PAN_VALID : PAN_INVALID_LUHN;
     }
 }
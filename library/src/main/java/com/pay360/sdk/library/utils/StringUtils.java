@@ -14,6 +14,30 @@ public class StringUtils {
             return null;
         }
 
-        return str.replace(" ", "");
+        StringBuilder builder = null;
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            if (isWhitespace(c)) {
+                if (builder == null) {
+                    builder = new StringBuilder(str.length()).append(str, 0, i);
+                }
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+
+        return builder != null ? builder.toString() : str;
+    }
+
+    /**
+     * Whitespace in card details, including the no-break spaces text pasted into a field can
+     * contain, which {@link Character#isWhitespace(char)} excludes
+     * @param c character
+     * @return true if whitespace
+     */
+    public static boolean isWhitespace(char c) {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c);
     }
 }